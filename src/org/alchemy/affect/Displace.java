@@ -20,9 +20,7 @@ package org.alchemy.affect;
 
 import java.awt.Point;
 import java.awt.event.MouseEvent;
-import java.awt.geom.*;
-import java.awt.geom.Point2D.Float;
-import java.util.ArrayList;
+import java.awt.geom.PathIterator;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import org.alchemy.core.*;
@@ -38,6 +36,7 @@ public class Displace extends AlcModule implements AlcConstants {
     private int speed;
     private int displacement = 7;
     private boolean mouseDown = false;
+    private final Displacer displacer = new Displacer();
 
     @Override
     protected void setup() {
@@ -77,59 +76,17 @@ public class Displace extends AlcModule implements AlcConstants {
         if (mouseDown) {
             for (int i = 0; i < canvas.createShapes.size(); i++) {
                 AlcShape shape = canvas.createShapes.get(i);
-                GeneralPath originalPath = shape.getPath();
-                Point2D.Float lastPt = (Float) originalPath.getCurrentPoint();
-                //Point2D.Float lastPt = new Point2D.Float(oldP.x, oldP.y);
-
+                AlcGeometry path = shape.getGeometry();
+                // Push the points away from the last point
+                displacer.set(path.getCurrentX(), path.getCurrentY(), speed);
 
                 if (shape.hasSpine()) {
-                    ArrayList<Point2D.Float> spine = shape.getSpine();
-                    if (spine.size() > 1) {
-                        for (int j = 0; j < spine.size(); j++) {
-                            Point2D.Float p = spine.get(j);
-                            float[] displacedMove = getAngle(p, lastPt, speed);
-                            spine.set(j, new Point2D.Float(displacedMove[0], displacedMove[1]));
-
-                        }
+                    if (shape.getSpineSize() > 1) {
+                        shape.mapSpine(displacer);
                         shape.createSpine();
                     }
                 } else {
-
-                    GeneralPath newPath = new GeneralPath();
-                    PathIterator iterator = originalPath.getPathIterator(null);
-                    float[] currentPoints = new float[6];
-                    int currentPointType;
-
-                    while (!iterator.isDone()) {
-                        currentPointType = iterator.currentSegment(currentPoints);
-
-                        switch (currentPointType) {
-                            case PathIterator.SEG_MOVETO:
-                                float[] displacedMove = getAngle(new Point2D.Float(currentPoints[0], currentPoints[1]), lastPt, speed);
-                                //System.out.println("MOVE");
-                                newPath.moveTo(displacedMove[0], displacedMove[1]);
-                                break;
-                            case PathIterator.SEG_LINETO:
-                                //System.out.println("LINE");
-                                float[] displacedLine = getAngle(new Point2D.Float(currentPoints[0], currentPoints[1]), lastPt, speed);
-                                newPath.lineTo(displacedLine[0], displacedLine[1]);
-                                break;
-                            case PathIterator.SEG_QUADTO:
-                                //System.out.println("QUAD");
-                                float[] displacedQuad1 = getAngle(new Point2D.Float(currentPoints[0], currentPoints[1]), lastPt, speed);
-                                float[] displacedQuad2 = getAngle(new Point2D.Float(currentPoints[2], currentPoints[3]), lastPt, speed);
-                                newPath.quadTo(displacedQuad1[0], displacedQuad1[1], displacedQuad2[0], displacedQuad2[1]);
-                                break;
-                            case PathIterator.SEG_CUBICTO:
-                                newPath.curveTo(currentPoints[0], currentPoints[1], currentPoints[2], currentPoints[3], currentPoints[4], currentPoints[5]);
-                                break;
-                            case PathIterator.SEG_CLOSE:
-                                newPath.closePath();
-                                break;
-                        }
-                        iterator.next();
-                    }
-                    shape.setPath(newPath);
+                    shape.mapPoints(displacer);
                 }
             }
         }
@@ -162,13 +119,30 @@ public class Displace extends AlcModule implements AlcConstants {
         return diffX + diffY;
     }
 
-    private float[] getAngle(Point2D.Float p1, Point2D.Float p2, double distance) {
-        // Calculate the angle between the last point and the new point
-        double angle = Math.atan2(p1.y - p2.y, p1.x - p2.x);
-        // Convert the polar coordinates to cartesian
-        double x = p1.getX() + (distance * Math.cos(angle));
-        double y = p1.getY() + (distance * Math.sin(angle));
-        float[] points = {(float) x, (float) y};
-        return points;
+    /** Moves points away from a centre point, reused for every shape */
+    private static class Displacer implements AlcGeometry.PointMapper {
+
+        private float centreX,  centreY;
+        private double distance;
+
+        void set(float centreX, float centreY, double distance) {
+            this.centreX = centreX;
+            this.centreY = centreY;
+            this.distance = distance;
+        }
+
+        public void mapPoints(int type, float[] coords, int offset, int points) {
+            // Curves are left as they are
+            if (type == PathIterator.SEG_CUBICTO) {
+                return;
+            }
+            for (int i = offset; i < offset + points * 2; i += 2) {
+                // Calculate the angle between the centre and the point
+                double angle = Math.atan2(coords[i + 1] - centreY, coords[i] - centreX);
+                // Convert the polar coordinates to cartesian
+                coords[i] = (float) (coords[i] + distance * Math.cos(angle));
+                coords[i + 1] = (float) (coords[i + 1] + distance * Math.sin(angle));
+            }
+        }
     }
 }
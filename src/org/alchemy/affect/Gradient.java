@@ -24,7 +24,6 @@ import java.awt.Rectangle;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
 import org.alchemy.core.*;
 
 /**
@@ -58,10 +57,10 @@ public class Gradient extends AlcModule {
         // If the shape has been created with pen strokes
         if (shape.isPenShape()) {
             if (shape.hasSpine()) {
-                ArrayList<Point2D.Float> spine = shape.getSpine();
-                if (spine.size() > 0) {
-                    p1 = spine.get(0);
-                    p2 = spine.get(spine.size() / 2);
+                int spineSize = shape.getSpineSize();
+                if (spineSize > 0) {
+                    p1 = new Point2D.Float(shape.getSpineX(0), shape.getSpineY(0));
+                    p2 = new Point2D.Float(shape.getSpineX(spineSize / 2), shape.getSpineY(spineSize / 2));
                 }
 
             } else {
@@ -92,9 +91,6 @@ public class Gradient extends AlcModule {
                 p2 = getRandomPoint(bounds);
             }
         }
-        
-//        p1.setLocation((float)canvas.calculateZoomedX(p1.getX()),(float)canvas.calculateZoomedY(p1.getY()));
-//        p2.setLocation((float)canvas.calculateZoomedX(p2.getX()),(float)canvas.calculateZoomedY(p2.getY()));
 
         if (p1 != null && p2 != null) {
             Color color = shape.getColor();
@@ -59,42 +59,15 @@ public class Limit extends AlcModule {
     }
 
     @Override
-    protected void affect() {
-
-        // We only limit the main shapes list
-        // so if that is empty then return
-        if(canvas.shapes.size() == 0){
-            return;
-        }
-
-        // The total number of shapes
-        int totalShapes = canvas.shapes.size() + canvas.createShapes.size() + canvas.affectShapes.size();
-
-        // If there are more shapes than the limit
-        if (totalShapes > limit) {
-
-//            System.out.println("Shapes: " + canvas.shapes.size() + " Create: " + canvas.createShapes.size() + " Affect: " + canvas.affectShapes.size());
-
-            // The number of shapes to remove
-            int shapesToRemove = totalShapes - limit;
-//            System.out.println("Total: " + totalShapes + " Remove: " + shapesToRemove);
-
-            // The end of the range to remove from the shapes list
-            int end = shapesToRemove;
-            // If there are not enough shapes in the shapes list
-            if (shapesToRemove > canvas.shapes.size()) {
-                end = canvas.shapes.size() - 1;
-            }
-            if(end == 0){
-                canvas.shapes.remove(0);
-                shapesToRemove--;
-            } else if (end > 0) {
-                canvas.shapes.subList(0, end).clear();
-                shapesToRemove -= end + 1;
-            }
-
-            canvas.redraw(true);
-        }
+    protected void deselect() {
+        canvas.setShapeLimit(-1);
+    }
 
+    @Override
+    protected void affect() {
+        // The canvas drops the oldest committed shapes,
+        // leaving room for the shapes still being drawn
+        int activeShapes = canvas.createShapes.size() + canvas.affectShapes.size();
+        canvas.setShapeLimit(Math.max(0, limit - activeShapes));
     }
 }
@@ -22,9 +22,8 @@ package org.alchemy.affect;
 import org.alchemy.core.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.GeneralPath;
 import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -36,11 +35,12 @@ public class MicExpand extends AlcModule implements AlcMicInterface {
 
     private AlcMicrophone micIn;
     private AlcShape currentShape;
-    private int activeShape = -1;
+    private AlcShape activeShape;
     //private int centreX,  centreY;
-    private Point currentPt;
+    private Point2D.Float currentPt;
     //private byte[] buffer;
     private int[] samples;
+    private final Expander expander = new Expander();
     private boolean running = false;
     // Timing
     // Have decent gap here to allow the shapes to be drawn before the next call
@@ -122,7 +122,7 @@ public class MicExpand extends AlcModule implements AlcMicInterface {
     }
 
     private void captureSound() {
-        currentShape = canvas.shapes.get(activeShape);
+        currentShape = activeShape;
         if (currentShape != null) {
             // Calculate the centre of the shape
 //            Rectangle size = currentShape.getShape().getBounds();
@@ -162,16 +162,16 @@ public class MicExpand extends AlcModule implements AlcMicInterface {
         //System.out.println("Alter Shape Called");
         if (currentShape != null) {
 
-            GeneralPath currentPath = currentShape.getPath();
-            Rectangle rect = currentPath.getBounds();
+            Rectangle rect = currentShape.getBounds();
             Dimension windowSize = canvas.getSize();
             // If the shape is out of the window, remove it
             if (rect.contains(0, 0, windowSize.width, windowSize.height)) {
-                if (activeShape >= 0) {
+                if (activeShape != null) {
+                    Rectangle dirtyArea = currentShape.getPaintBounds();
                     canvas.shapes.remove(activeShape);
-                    activeShape = -1;
+                    activeShape = null;
                     currentShape = null;
-                    canvas.redraw(true);
+                    canvas.redraw(dirtyArea);
 
                 }
                 stopExpand();
@@ -179,121 +179,63 @@ public class MicExpand extends AlcModule implements AlcMicInterface {
 
             } else {
 
-                GeneralPath expandedPath = null;
+                Rectangle dirtyArea = currentShape.getPaintBounds();
+                canvas.recordShapeChange(currentShape);
                 if (wave) {
-                    expandedPath = expand(currentShape.getPath());
+                    expand();
                 } else {
                     double adjustedLevel = 0.9 + (micIn.getMicLevel() * levelVolume);
                     //System.out.println(adjustedLevel);
 
-                    expandedPath = (GeneralPath) currentPath.createTransformedShape(getScaleTransform(adjustedLevel, rect));
+                    // Scale around the centre of the shape
+                    double offsetX = rect.x + (rect.width / 2);
+                    double offsetY = rect.y + (rect.height / 2);
+                    currentShape.move(-offsetX, -offsetY);
+                    currentShape.scale(adjustedLevel, adjustedLevel);
+                    currentShape.move(offsetX, offsetY);
                 }
-                currentShape.setPath(expandedPath);
+                dirtyArea.add(currentShape.getPaintBounds());
                 //canvas.setCurrentCreateShape(currentShape);
-                canvas.redraw(true);
+                canvas.redraw(dirtyArea);
             }
         }
     }
 
-    /* Gets a scale transform based on the sound level */
-    private AffineTransform getScaleTransform(double level, Rectangle rect) {
-        AffineTransform scaleTransform = new AffineTransform();
-
-        double offsetX = rect.x + (rect.width / 2);
-        double offsetY = rect.y + (rect.height / 2);
-
-        scaleTransform.translate(offsetX, offsetY);
-        scaleTransform.scale(level, level);
-        scaleTransform.translate(-offsetX, -offsetY);
-
-        return scaleTransform;
-    }
-
-    private GeneralPath expand(GeneralPath shape) {
+    private void expand() {
         //if (wave) {
         //buffer = micIn.getBuffer();
         samples = micIn.getSamples();
         //} else {
         //  dist = (float) micIn.getMicLevel();
         //}
-        //float distance = buffer[(int) root.math.random(0, buffer.length)];
-        //float distance = (float) micIn.getMicLevel();
-        //System.out.println(distance);
-        //System.out.println("Buffer Length : " + buffer.length);
-
-        GeneralPath newShape = new GeneralPath();
-        PathIterator path = shape.getPathIterator(null);
-        float[] pathPts = new float[6];
-        int pathType;
-        int pathCount = 0;
-
-        while (!path.isDone()) {
-
-            float dist = samples[pathCount];
-            //System.out.println(dist);
-
-            pathType = path.currentSegment(pathPts);
-            switch (pathType) {
-                case PathIterator.SEG_MOVETO:
-                    float[] expandMove = expandPoint(pathPts, dist);
-                    newShape.moveTo(expandMove[0], expandMove[1]);
-                    break;
-                case PathIterator.SEG_LINETO:
-                    float[] expandLine = expandPoint(pathPts, dist);
-                    newShape.lineTo(expandLine[0], expandLine[1]);
-                    break;
-                case PathIterator.SEG_QUADTO:
-                    float[] expandQuad = expandPoint(pathPts, dist);
-                    newShape.quadTo(expandQuad[0], expandQuad[1], expandQuad[2], expandQuad[3]);
-                    //newShape.quadTo(pathPts[0], pathPts[1], pathPts[2], pathPts[3]);
-                    break;
-                case PathIterator.SEG_CUBICTO:
-                    // Curves tend to go crazy when processed so leave em out
-                    newShape.curveTo(pathPts[0], pathPts[1], pathPts[2], pathPts[3], pathPts[4], pathPts[5]);
-                    //float[] expandCubic = expandPoint(pathPts, buffer[pathCount]);
-                    //newShape.curveTo(expandCubic[0], expandCubic[1], expandCubic[2], expandCubic[3], expandCubic[4], expandCubic[5]);
-
-                    break;
-                case PathIterator.SEG_CLOSE:
-                    newShape.closePath();
-                    break;
-            }
-            pathCount++;
-            path.next();
-        }
-        return newShape;
+        expander.segment = 0;
+        currentShape.mapPoints(expander);
     }
 
-    private float[] expandPoint(float[] pts, float distance) {
-        float[] expandedPts = new float[pts.length];
-        float adjustedDistance = distance * waveVolume;
+    /** Moves the points of each segment towards or away from the current point by the sample for that segment */
+    private class Expander implements AlcGeometry.PointMapper {
 
-        //System.out.println(distance);
-        //distance = distance/10;
-        // Points come in multiples of 2, either 2, 4 or 6
-        for (int i = 0; i < pts.length / 2; i += 2) {
+        private int segment;
 
-            float p1 = pts[i];
-            float p2 = pts[i + 1];
-
-            // Calculate the angle in radians between the centre and the point
-            //double angle = Math.atan2(centreX - pts[i], centreY - pts[i + 1]);
-            //double angle = Math.atan2(centreY - p2, centreX - p1);
-            double angle = Math.atan2(currentPt.y - p2, currentPt.x - p1);
-            // Convert the polar coordinates to cartesian
-            double offsetX = adjustedDistance * Math.cos(angle);
-            double offsetY = adjustedDistance * Math.sin(angle);
-
-            //System.out.println("Offsets: "+ offsetX + " " + offsetY);
-
-            expandedPts[i] = (float) (p1 + offsetX);
-            expandedPts[i + 1] = (float) (p2 + offsetY);
+        public void mapPoints(int type, float[] coords, int offset, int points) {
+            float distance = samples[segment++];
+            // Curves tend to go crazy when processed so leave em out
+            if (type == PathIterator.SEG_CUBICTO) {
+                return;
+            }
+            float adjustedDistance = distance * waveVolume;
+            for (int i = offset; i < offset + points * 2; i += 2) {
+                // Calculate the angle in radians between the centre and the point
+                double angle = Math.atan2(currentPt.y - coords[i + 1], currentPt.x - coords[i]);
+                // Convert the polar coordinates to cartesian
+                coords[i] = (float) (coords[i] + adjustedDistance * Math.cos(angle));
+                coords[i + 1] = (float) (coords[i + 1] + adjustedDistance * Math.sin(angle));
+            }
         }
-        return expandedPts;
     }
 
     private void stopExpand() {
-        activeShape = -1;
+        activeShape = null;
         if (running) {
             micIn.stop();
             running = false;
@@ -304,17 +246,11 @@ public class MicExpand extends AlcModule implements AlcMicInterface {
     @Override
     public void mouseMoved(MouseEvent e) {
         if (!mouseDown) {
-            int firstShape = -1;
-            // Loop through from the newest shape and find the first one the mouse is over
-            for (int i = canvas.shapes.size() - 1; i >= 0; i--) {
-                AlcShape thisShape = canvas.shapes.get(i);
-                if (thisShape.getPath().contains(e.getPoint())) {
-                    firstShape = i;
-                    currentPt = e.getPoint();
-                    break;
-                }
-            }
-            if (firstShape >= 0) {
+            // Find the newest shape the mouse is over
+            Point2D.Float p = canvas.getMouseLocation();
+            AlcShape firstShape = canvas.getShapeAt(p);
+            if (firstShape != null) {
+                currentPt = p;
                 if (firstShape != activeShape) {
                     activeShape = firstShape;
                     captureSound();
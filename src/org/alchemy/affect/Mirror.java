@@ -135,15 +135,9 @@ public class Mirror extends AlcModule implements AlcConstants {
     @Override
     protected void affect() {
         
-        //If the canvas is zoomed, calculate the "zoomed" axis location
-        if(canvas.isCanvasZoomed()){
-            horizontalAxis = (int)canvas.calculateZoomedX(baseHorizontalAxis);
-            verticalAxis = (int)canvas.calculateZoomedY(baseVerticalAxis);
-        //Canvas is not zoomed, use the base axis location
-        }else{
-            horizontalAxis = baseHorizontalAxis;
-            verticalAxis = baseVerticalAxis;
-        }
+        // Shapes are in document coordinates so the axis is unaffected by zoom
+        horizontalAxis = baseHorizontalAxis;
+        verticalAxis = baseVerticalAxis;
         
         if (!selectAxis) {
 
@@ -153,12 +147,12 @@ public class Mirror extends AlcModule implements AlcConstants {
 
             for (int i = 0; i < numOfCreateShapes; i++) {
                 AlcShape shape = canvas.createShapes.get(i);
-                // Original Path with which we reflect
-                GeneralPath originalPath = shape.getPath();
                 ArrayList<Point2D.Float> spine = shape.getSpine();
+                // The reflected shapes share the original path and reflect it as they are drawn
+                AffineTransform hReflection = getHorizontalReflection(horizontalAxis);
+                AffineTransform vReflection = getVerticalReflection(verticalAxis);
 
                 if (horizontal) {
-                    GeneralPath hPath = makeHorizontalReflectedShape(originalPath);
                     int index = i * shapeCount;
 
                     // ADD
@@ -168,7 +162,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                             // Create a flipped spine and use a shallow copy the spine width
                             cloneShape = shape.customClone(makeHorizontalReflectedSpine(spine), shape.getSpineWidth());
                         } else {
-                            cloneShape = shape.customClone(hPath);
+                            cloneShape = shape.customClone(hReflection);
                         }
 
                         // Make sure there is no transparency when the background is on
@@ -186,7 +180,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                     // REPLACE
                     } else {
                         AlcShape thisShape = (canvas.affectShapes.get(index));
-                        thisShape.setPath(hPath);
+                        thisShape.setPath(shape, hReflection);
                         cloneAttributes(shape, thisShape);
                         
                         
@@ -199,11 +193,9 @@ public class Mirror extends AlcModule implements AlcConstants {
                 }
 
                 // Keep these handy incase we need to do another flip
-                GeneralPath vPath = null;
                 ArrayList<Point2D.Float> vSpine = null;
                 GradientPaint vPaint = null;
                 if (vertical) {
-                    vPath = makeVerticalReflectedShape(originalPath);
                     int index = i * shapeCount;
                     // Add 1 on if horizontal is also on
                     index += horizontal ? 1 : 0;
@@ -217,7 +209,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                             // Create a flipped spine and use a shallow copy the spine width
                             cloneShape = shape.customClone(vSpine, shape.getSpineWidth());
                         } else {
-                            cloneShape = shape.customClone(vPath);
+                            cloneShape = shape.customClone(vReflection);
                         }
 
                         // Make sure there is no transparency when the background is on
@@ -237,7 +229,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                     // REPLACE    
                     } else {
                         AlcShape thisShape = (canvas.affectShapes.get(index));
-                        thisShape.setPath(vPath);
+                        thisShape.setPath(shape, vReflection);
                         cloneAttributes(shape, thisShape);
 
                         if (thisShape.hasSpine()) {
@@ -249,7 +241,8 @@ public class Mirror extends AlcModule implements AlcConstants {
                     }
                 }
                 if (horizontal && vertical) {
-                    GeneralPath hvPath = makeHorizontalReflectedShape(vPath);
+                    AffineTransform hvReflection = new AffineTransform(hReflection);
+                    hvReflection.concatenate(vReflection);
                     int index = i * shapeCount + 2;
 
                     // ADD
@@ -259,7 +252,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                             // Create a flipped spine and use a shallow copy the spine width
                             cloneShape = shape.customClone(makeHorizontalReflectedSpine(vSpine), shape.getSpineWidth());
                         } else {
-                            cloneShape = shape.customClone(hvPath);
+                            cloneShape = shape.customClone(hvReflection);
                         }
 
                         // Make sure there is no transparency when the background is on
@@ -277,7 +270,7 @@ public class Mirror extends AlcModule implements AlcConstants {
                     // REPLACE    
                     } else {
                         AlcShape thisShape = (canvas.affectShapes.get(index));
-                        thisShape.setPath(hvPath);
+                        thisShape.setPath(shape, hvReflection);
                         cloneAttributes(shape, thisShape);
 
                         if (thisShape.hasSpine() && vSpine != null) {
@@ -292,13 +285,6 @@ public class Mirror extends AlcModule implements AlcConstants {
         }
     }
 
-    /** Make a shape reflected through the horizontal axis */
-    private GeneralPath makeHorizontalReflectedShape(GeneralPath original) {
-        AffineTransform horizontalReflection = getHorizontalReflection(horizontalAxis);
-        GeneralPath reflectedPath = (GeneralPath) original.createTransformedShape(horizontalReflection);
-        return reflectedPath;
-    }
-
     /** Make a spine reflected through the horizontal axis */
     private ArrayList<Point2D.Float> makeHorizontalReflectedSpine(ArrayList<Point2D.Float> spine) {
         // Create a new array of flipped points
@@ -338,13 +324,6 @@ public class Mirror extends AlcModule implements AlcConstants {
         return horizontalReflection;
     }
 
-    /** Make a shape reflected through the vertical axis */
-    private GeneralPath makeVerticalReflectedShape(GeneralPath original) {
-        AffineTransform verticalReflection = getVerticalReflection(verticalAxis);
-        GeneralPath reflectedPath = (GeneralPath) original.createTransformedShape(verticalReflection);
-        return reflectedPath;
-    }
-
     /** Make a spine reflected through the vertical axis */
     private ArrayList<Point2D.Float> makeVerticalReflectedSpine(ArrayList<Point2D.Float> spine) {
         // Create a new array of flipped points
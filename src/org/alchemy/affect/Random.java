@@ -21,8 +21,8 @@ package org.alchemy.affect;
 
 import org.alchemy.core.*;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
-import java.awt.geom.GeneralPath;
 import java.awt.geom.PathIterator;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -45,6 +45,7 @@ public class Random extends AlcModule {
     private float bottomEnd = (initialDistortion * distortionScaler) * -1;
     private float topEnd = initialDistortion * distortionScaler;
     private boolean mouseDown = false;
+    private final Randomiser randomiser = new Randomiser();
 //
 //    private int activeShape = -1;
     private int proximity = 5;
@@ -88,57 +89,33 @@ public class Random extends AlcModule {
 
     }
 
-    private void randomiseShape(Point currentLoc, int shapeNumber) {
-        AlcShape shape = canvas.shapes.get(shapeNumber);
-        GeneralPath randomisedShape = randomise(shape.getPath(), currentLoc);
-        shape.setPath(randomisedShape);
-        canvas.redraw(true);
+    private void randomiseShape(Point currentLoc, AlcShape shape) {
+        Rectangle dirtyArea = shape.getPaintBounds();
+        canvas.recordShapeChange(shape);
+        randomiser.x = currentLoc.x;
+        randomiser.y = currentLoc.y;
+        shape.mapPoints(randomiser);
+        dirtyArea.add(shape.getPaintBounds());
+        canvas.redraw(dirtyArea);
     }
 
-    private GeneralPath randomise(GeneralPath shape, Point p) {
-
-        GeneralPath newShape = new GeneralPath();
-        PathIterator cut = shape.getPathIterator(null);
-        float[] cutPts = new float[6];
-        int cutType;
-
-        while (!cut.isDone()) {
-            cutType = cut.currentSegment(cutPts);
-
-            switch (cutType) {
-                case PathIterator.SEG_MOVETO:
-                    newShape.moveTo(cutPts[0], cutPts[1]);
-                    break;
-                case PathIterator.SEG_LINETO:
-                    if (closeBy(p.x, p.y, (int) cutPts[0], (int) cutPts[1])) {
-                        newShape.lineTo(mess(cutPts[0]), mess(cutPts[1]));
-                    } else {
-                        newShape.lineTo(cutPts[0], cutPts[1]);
-                    }
-                    break;
-                case PathIterator.SEG_QUADTO:
-                    if (closeBy(p.x, p.y, (int) cutPts[2], (int) cutPts[3])) {
-                        newShape.quadTo(mess(cutPts[0]), mess(cutPts[1]), mess(cutPts[2]), mess(cutPts[3]));
-                    } else {
-                        newShape.quadTo(cutPts[0], cutPts[1], cutPts[2], cutPts[3]);
-                    }
-                    break;
-                case PathIterator.SEG_CUBICTO:
-                    if (closeBy(p.x, p.y, (int) cutPts[2], (int) cutPts[3])) {
-                        newShape.curveTo(mess(cutPts[0]), mess(cutPts[1]), mess(cutPts[2]), mess(cutPts[3]), mess(cutPts[4]), mess(cutPts[5]));
-                    } else {
-                        newShape.curveTo(cutPts[0], cutPts[1], cutPts[2], cutPts[3], cutPts[4], cutPts[5]);
-                    }
-                    break;
-                case PathIterator.SEG_CLOSE:
-                    newShape.closePath();
-                    break;
-            }
-            cut.next();
-        }
+    /** Randomises the points of the segments close to a point, reused for every shape */
+    private class Randomiser implements AlcGeometry.PointMapper {
 
-        return newShape;
+        private int x,  y;
 
+        public void mapPoints(int type, float[] coords, int offset, int points) {
+            if (type == PathIterator.SEG_MOVETO || points == 0) {
+                return;
+            }
+            // Lines are tested by their point, curves by their second point
+            int test = (type == PathIterator.SEG_LINETO) ? offset : offset + 2;
+            if (closeBy(x, y, (int) coords[test], (int) coords[test + 1])) {
+                for (int i = offset; i < offset + points * 2; i++) {
+                    coords[i] = mess(coords[i]);
+                }
+            }
+        }
     }
 
     /** Find out if the two points are closeby */
@@ -176,17 +153,10 @@ public class Random extends AlcModule {
     @Override
     public void mouseMoved(MouseEvent e) {
         if (!mouseDown) {
-            int firstShape = -1;
             Point pt = e.getPoint();
-            // Loop through from the newest shape and find the first one the mouse is over
-            for (int i = canvas.shapes.size()-1; i >= 0; i--) {
-                AlcShape thisShape = canvas.shapes.get(i);
-                if (thisShape.getPath().contains(pt)) {
-                    firstShape = i;
-                     break;
-                }
-            }
-            if (firstShape >= 0) {
+            // Find the newest shape the mouse is over
+            AlcShape firstShape = canvas.getShapeAt(pt);
+            if (firstShape != null) {
                randomiseShape(pt, firstShape);
             }
         }
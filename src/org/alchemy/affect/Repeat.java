@@ -22,7 +22,7 @@ import org.alchemy.core.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.GeneralPath;
+import java.util.ArrayList;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -107,12 +107,8 @@ public class Repeat extends AlcModule {
 
     }
 
-    private void repeatShape(Point pt, int activeShape) {
-        AlcShape originalShape = canvas.shapes.get(activeShape);
-        // Make a completely new shape
-        AlcShape shape = (AlcShape) originalShape.clone();
-        GeneralPath path = shape.getPath();
-        Rectangle bounds = path.getBounds();
+    private void repeatShape(Point pt, AlcShape originalShape) {
+        Rectangle bounds = originalShape.getBounds();
 
         // If null or a different sized shape - reset the offset
         if (shapeSize == null || !similarSize(bounds.getSize()) || update) {
@@ -137,8 +133,8 @@ public class Repeat extends AlcModule {
 
         AffineTransform moveTransform = new AffineTransform();
         moveTransform.translate(offset.x, offset.y);
-        GeneralPath movedPath = (GeneralPath) path.createTransformedShape(moveTransform);
-        shape.setPath(movedPath);
+        // Each repeat is an instance sharing the path of the original
+        AlcShape shape = new AlcShapeInstance(originalShape, moveTransform);
         canvas.affectShapes.add(shape);
 
         //GeneralPath randomisedShape = randomise(shape.getShape(), currentLoc);
@@ -158,11 +154,13 @@ public class Repeat extends AlcModule {
     }
 
     private void mouseInside(Point p) {
-        int currentActiveShape = -1;
-        for (int i = canvas.shapes.size() - 1; i >= 0; i--) {
-            AlcShape thisShape = canvas.shapes.get(i);
-            GeneralPath currentPath = thisShape.getPath();
-            Rectangle bounds = new Rectangle(currentPath.getBounds());
+        AlcShape currentActiveShape = null;
+        // Only the shapes near the point can contain it
+        int grow = (outside == 0) ? margin : 0;
+        ArrayList<AlcShape> nearShapes = canvas.getShapesIn(new Rectangle(p.x - grow, p.y - grow, grow * 2 + 1, grow * 2 + 1));
+        for (int i = nearShapes.size() - 1; i >= 0; i--) {
+            AlcShape thisShape = nearShapes.get(i);
+            Rectangle bounds = thisShape.getBounds();
             // If already repeating a shape
             if (outside == 0) {
                 // Check that it is still within X pixels of the original
@@ -170,13 +168,13 @@ public class Repeat extends AlcModule {
             //System.out.println("GROW");
             }
             if (bounds.contains(p)) {
-                currentActiveShape = i;
+                currentActiveShape = thisShape;
                 // Break once we find the first matching shape
                 break;
             }
         }
         // Inside a shape
-        if (currentActiveShape >= 0) {
+        if (currentActiveShape != null) {
             outside = 0;
 
             if (repeat) {
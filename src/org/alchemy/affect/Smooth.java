@@ -19,6 +19,7 @@
 package org.alchemy.affect;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.*;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
@@ -68,15 +69,18 @@ public class Smooth extends AlcModule {
 
     }
 
-    private void smoothShape(Point currentLoc, int index) {
-        AlcShape shape = canvas.shapes.get(index);
+    private void smoothShape(Point currentLoc, AlcShape shape) {
+        Rectangle dirtyArea = shape.getPaintBounds();
         AlcShape smoothedShape = smoothShape(shape.getPoints(), currentLoc);
         if (repeat) {
             canvas.shapes.add(smoothedShape);
+            dirtyArea = smoothedShape.getPaintBounds();
         } else {
+            canvas.recordShapeChange(shape);
             shape.setPath(smoothedShape.getPath());
+            dirtyArea.add(shape.getPaintBounds());
         }
-        canvas.redraw(true);
+        canvas.redraw(dirtyArea);
     }
 
     private AlcShape smoothShape(ArrayList<Point2D.Float> points, Point currentLoc) {
@@ -125,17 +129,10 @@ public class Smooth extends AlcModule {
     public void mouseMoved(MouseEvent e) {
         if (!canvas.isPenDown()) {
             if (System.currentTimeMillis() - time >= spacing) {
-                int firstShape = -1;
                 Point pt = e.getPoint();
-                // Loop through from the newest shape and find the first one the mouse is over
-                for (int i = canvas.shapes.size() - 1; i >= 0; i--) {
-                    AlcShape thisShape = canvas.shapes.get(i);
-                    if (thisShape.getPath().contains(pt)) {
-                        firstShape = i;
-                        break;
-                    }
-                }
-                if (firstShape >= 0) {
+                // Find the newest shape the mouse is over
+                AlcShape firstShape = canvas.getShapeAt(pt);
+                if (firstShape != null) {
                     smoothShape(pt, firstShape);
                 }
                 time = System.currentTimeMillis();
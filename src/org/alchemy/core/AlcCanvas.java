@@ -32,6 +32,7 @@ import java.awt.geom.*;
 import java.awt.image.BufferedImage;
 import java.awt.print.Printable;
 import java.util.ArrayList;
+import java.util.List;
 import javax.imageio.ImageIO;
 import java.io.*;
 
@@ -69,8 +70,10 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     
     // 0-Disabled, 1-Single, 2-Unlimited
     private int undoDepth;
-    // remember the size of the shapes array
-    private int lastShapesSize;
+    /** Changes to the committed shapes, for undo and redo */
+    private AlcUndoLog undoLog;
+    /** Changes to the committed shapes, to recover from a crash - null until started */
+    private AlcJournal journal;
     
     // Swatch stored here
     public ArrayList<Color> swatch;
@@ -95,11 +98,63 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     private boolean drawUnder = false;
     /** Boolean used to indicate if the user is picking a zoom location with the mouse */
     private boolean zoomMousing = false;
-    /** Zoom data */
+    /** Zoom amount used when toggling the zoom */
     private double zoomAmount = 4.0;
-    private double currentZoom = 1/zoomAmount;
-    private double lastZoomX = 0.0;
-    private double lastZoomY = 0.0;
+    //////////////////////////////////////////////////////////////
+    // VIEW TRANSFORM
+    //////////////////////////////////////////////////////////////
+    /** Zoom and pan of the view */
+    private AffineTransform zoomTransform = new AffineTransform();
+    /** Horizontal and vertical flips of the view */
+    private AffineTransform flipTransform = new AffineTransform();
+    /** Document to view transform - the flip followed by the zoom */
+    private AffineTransform viewTransform = new AffineTransform();
+    //////////////////////////////////////////////////////////////
+    // FRAME SCHEDULER
+    //////////////////////////////////////////////////////////////
+    /** Target number of frames painted per second */
+    private int frameRate;
+    /** Fires once per frame while a redraw is pending */
+    private Timer frameTimer;
+    /** Guards the pending frame state, redraws can be requested from any thread */
+    private final Object frameLock = new Object();
+    /** A redraw has been requested since the last frame */
+    private boolean framePending = false;
+    /** A full redraw has been requested since the last frame */
+    private boolean fullRedrawPending = false;
+    /** Union of the partial redraw areas requested since the last frame, in document coordinates */
+    private Rectangle pendingDirtyArea;
+    /** A frame is being delivered, stops affects that commit shapes from delivering another */
+    private boolean deliveringFrame = false;
+    /** Time the last frame was delivered */
+    private long lastFrameTime = 0;
+    /** Number of redraws requested */
+    private long requestedFrames = 0;
+    /** Number of frames delivered */
+    private long deliveredFrames = 0;
+    //////////////////////////////////////////////////////////////
+    // RENDERING QUALITY
+    //////////////////////////////////////////////////////////////
+    /** Delay in milliseconds after the last frame before draft areas are re-rendered at full quality */
+    private static final int REFINE_DELAY = 300;
+    /** Drop to a faster draft quality while drawing */
+    private boolean interactiveQuality;
+    /** Rendering at draft quality right now */
+    boolean draftQuality = false;
+    //////////////////////////////////////////////////////////////
+    // PATH SIMPLIFICATION
+    //////////////////////////////////////////////////////////////
+    /** Largest distance in pixels that simplifying may move a committed shape, 0 to keep shapes as drawn */
+    private float simplifyTolerance = 0;
+    /** Number of segments in the committed shapes before and after simplifying */
+    private long segmentsBeforeSimplify = 0,  segmentsAfterSimplify = 0;
+    //////////////////////////////////////////////////////////////
+    // SHAPE LIMIT
+    //////////////////////////////////////////////////////////////
+    /** Largest number of committed shapes kept, -1 for no limit */
+    private int shapeLimit = -1;
+    /** Re-renders draft quality areas once drawing has paused */
+    private Timer refineTimer;
     
     //////////////////////////////////////////////////////////////
     // PEN SETTINGS
@@ -112,6 +167,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     private PenManager pm;
     /** Pen down or up */
     private boolean penDown = false;
+    /** The modules are still finishing a press after the pen went up */
+    private boolean penReleasing = false;
     /** The type of pen - PEN_STYLUS / PEN_ERASER / PEN_CURSOR */
     private int penType = PEN_CURSOR;
     /** Pen Pressure if available */
@@ -122,41 +179,37 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     private Point2D.Float penLocation = new Point2D.Float();
     /** Pen location has changed or not */
     private boolean penLocationChanged = true;
+    /** Location of the mouse event being passed to the modules, in document coordinates */
+    private Point2D.Float mouseLocation = new Point2D.Float();
     //////////////////////////////////////////////////////////////
     // SHAPES
     //////////////////////////////////////////////////////////////
-    /** Array list containing shapes that have been commited.
+    /** List containing shapes that have been commited.
      *  Shapes in this list are generally rendered to the image buffer
-     *  to improve performance */
-    public ArrayList<AlcShape> shapes;
+     *  to improve performance.
+     *  The list keeps an index of where each shape is, see {@link #getShapeAt(Point2D)} */
+    public List<AlcShape> shapes;
     /** Array list containing shapes currently in use by create modules */
     public ArrayList<AlcShape> createShapes;
     /** Array list containing shapes currently in use by affect modules */
     public ArrayList<AlcShape> affectShapes;
     /** Array list containing shapes used as visual guides - not actual geometry */
     public ArrayList<AlcShape> guideShapes;
-    /** Keeps track of the shape number of the first shape in a group for undo
-        new numbers are entered on mouse presses. Correspondes to "shapes" array */
-    public ArrayList<Integer> shapeGroups;
-    public ArrayList<Integer> shapeGroupsSize;
     /** Full shape array of each array list */
-    ArrayList[] fullShapeList = new ArrayList[3];
+    ArrayList<List<AlcShape>> fullShapeList = new ArrayList<List<AlcShape>>(3);
     /** Active shape list plus guides */
     ArrayList[] activeShapeList = new ArrayList[2];
     //////////////////////////////////////////////////////////////
     // IMAGE
     //////////////////////////////////////////////////////////////
-    /** An image of the canvas drawn behind active shapes */
+    /** An image of the committed shapes drawn behind active shapes */
     private Image canvasImage;
     /** Image than can be drawn on the canvas */
     private BufferedImage image;
-    private BufferedImage zoomedImage;
     /** Display the Image or not */
     private boolean imageDisplay = false;
     /** Position to display the image */
     private Point imageLocation = new Point(0, 0);
-     /** Position to display the zoomed image */
-    private Point zoomedImageLocation = new Point(0, 0);
     /** An image used to fake transparency in fullscreen mode */
     private Image transparentImage;
     //////////////////////////////////////////////////////////////
@@ -172,6 +225,12 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     private GraphicsConfiguration gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
     /** A Vector based canvas for full redrawing */
     VectorCanvas vectorCanvas;
+    /** The cached layers composited to draw the canvas */
+    private AlcCanvasLayers layers;
+    /** Tiled backing store used to render only the changed areas of the canvas image */
+    private AlcCanvasTiles canvasTiles;
+    /** Sprites used to draw shape instances on screen */
+    final AlcSpriteCache spriteCache = new AlcSpriteCache();
     /** Previous cursor */
     Cursor oldCursor;
     /** Automatic toggling of the toolbar */
@@ -190,6 +249,25 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
         this.autoToggleToolBar = !Alchemy.preferences.paletteAttached;
         this.undoDepth = Alchemy.preferences.undoDepth;
+
+        frameTimer = new Timer(0, new ActionListener() {
+
+            public void actionPerformed(ActionEvent e) {
+                deliverFrame();
+            }
+        });
+        frameTimer.setRepeats(false);
+        setFrameRate(Alchemy.preferences.frameRate);
+
+        refineTimer = new Timer(REFINE_DELAY, new ActionListener() {
+
+            public void actionPerformed(ActionEvent e) {
+                refine();
+            }
+        });
+        refineTimer.setRepeats(false);
+        this.interactiveQuality = Alchemy.preferences.interactiveQuality;
+        setSimplifyTolerance(Alchemy.preferences.simplifyTolerance);
         
         /** Holds saved swatch colors */
         swatch = new ArrayList<Color>();
@@ -199,8 +277,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         this.addMouseListener(this);
         this.addMouseMotionListener(this);
 
-        shapes = new ArrayList<AlcShape>(100);
-        shapes.ensureCapacity(100);
+        shapes = new AlcShapeList(100);
         createShapes = new ArrayList<AlcShape>(25);
         createShapes.ensureCapacity(25);
         affectShapes = new ArrayList<AlcShape>(25);
@@ -208,19 +285,20 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         guideShapes = new ArrayList<AlcShape>(25);
         guideShapes.ensureCapacity(25);
 
-        fullShapeList[0] = shapes;
-        fullShapeList[1] = createShapes;
-        fullShapeList[2] = affectShapes;
-        
-        /** Keeps track of which shapes in "shapes" array were laid down
-         *  in a single mouse/pen click                                   */
-        shapeGroups = new ArrayList<Integer>();
-        shapeGroupsSize = new ArrayList<Integer>();
+        fullShapeList.add(shapes);
+        fullShapeList.add(createShapes);
+        fullShapeList.add(affectShapes);
+
+        // Record the changes to the committed shapes in groups for undo
+        undoLog = new AlcUndoLog((AlcShapeList) shapes, undoDepth);
+        ((AlcShapeList) shapes).undoLog = undoLog;
         
         activeShapeList[0] = createShapes;
         activeShapeList[1] = affectShapes;
 
         vectorCanvas = new VectorCanvas();
+        layers = new AlcCanvasLayers(this);
+        canvasTiles = layers.getShapeTiles();
 
         pm = new PenManager(this);
         pm.pen.addListener(this);
@@ -241,59 +319,61 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         int w = visibleRect.width;
         int h = visibleRect.height;
 
+        // Remember the view space transform
+        AffineTransform viewSpace = g2.getTransform();
+
         // Draw the 'fake' Transparent Image
         if (Alchemy.window.isTransparent() && transparentImage != null) {
             g2.drawImage(transparentImage, 0, 0, null);
-
-            // Draw the image if present
-            if (imageDisplay && image != null) {
-                Point p = getImageLocation();
-               g2.drawImage(getImage(), (int)p.getX(), (int)p.getY(), null);
-            }
         } else {
-            // Draw the image if present
-            if (imageDisplay && image != null) {
-                Point p = getImageLocation();
-                g2.drawImage(getImage(), (int)p.getX(), (int)p.getY(), null);
-            }
             // Paint background.
             g2.setColor(new Color(bgColor.getRed(), bgColor.getGreen(), bgColor.getBlue()));
             g2.fillRect(0, 0, w, h);
         }
 
-
-        if (smoothing) {
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        } else {
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        // Draw the session and background image layers
+        layers.drawUnderlay(g2, viewTransform, w, h);
+        Image imageLayer = layers.getImageLayer(viewTransform, w, h);
+        if (imageLayer != null) {
+            g2.drawImage(imageLayer, 0, 0, null);
         }
 
-        // Draw the flattened buffImage
+        setScreenRenderingHints(g2);
+
+        // Draw the committed shapes below the active shapes
         if (canvasImage != null && !drawUnder) {
             g2.drawImage(canvasImage, 0, 0, null);
         }
         if (redraw) {
             // Draw the create, affect, and guide lists
+            g2.transform(viewTransform);
+            // The visible area in document coordinates
+            Rectangle clip = g2.getClipBounds();
             for (int j = 0; j < activeShapeList.length; j++) {
                 for (int i = 0; i < activeShapeList[j].size(); i++) {
                     AlcShape currentShape = (AlcShape) activeShapeList[j].get(i);
+                    // Skip shapes outside of the visible area
+                    if (clip != null && !currentShape.intersectsPaintBounds(clip)) {
+                        continue;
+                    }
                     // LINE
                     if (currentShape.style == STYLE_STROKE) {
                         //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
-                        g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
-                        g2.setPaint(currentShape.getPaint());
-                        g2.draw(currentShape.path);
+                        g2.setStroke(getScreenStroke(currentShape));
+                        g2.setPaint(getScreenPaint(currentShape));
+                        g2.draw(currentShape.getPaintShape());
                     // SOLID
                     } else {
-                        g2.setPaint(currentShape.getPaint());
-                        g2.fill(currentShape.path);
+                        g2.setPaint(getScreenPaint(currentShape));
+                        g2.fill(currentShape.getPaintShape());
                     }
                 }
             }
+            g2.setTransform(viewSpace);
         }
 
-        // Draw the image on top of the current shapes
-        if (drawUnder) {
+        // Or on top of the active shapes when drawing under
+        if (canvasImage != null && drawUnder) {
             g2.drawImage(canvasImage, 0, 0, null);
         }
 
@@ -307,20 +387,26 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
         // Draw the guides as required
         if (guides) {
+            g2.transform(viewTransform);
+            Rectangle clip = g2.getClipBounds();
             for (int i = 0; i < guideShapes.size(); i++) {
                 AlcShape currentShape = guideShapes.get(i);
+                if (clip != null && !currentShape.intersectsPaintBounds(clip)) {
+                    continue;
+                }
                 // LINE
                 if (currentShape.style == STYLE_STROKE) {
                     //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
                     g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
                     g2.setColor(currentShape.color);
-                    g2.draw(currentShape.path);
+                    g2.draw(currentShape.getPaintShape());
                 // SOLID
                 } else {
                     g2.setColor(currentShape.color);
-                    g2.fill(currentShape.path);
+                    g2.fill(currentShape.getPaintShape());
                 }
             }
+            g2.setTransform(viewSpace);
         }
 
         g2.dispose();
@@ -338,31 +424,280 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         redraw(false);
     }
 
-    /** Redraw the canvas
+    /** Redraw the canvas <br>
+     *  Requests are merged and delivered once per frame,
+     *  so the affects are applied and the canvas painted at most once per frame.
      *  @param fullRedraw   Specify if the full set of vector shapes should be redrawn
      *                  or just add the new shape to the existing buffer image
      */
     public void redraw(boolean fullRedraw) {
-        applyAffects();
-        if (redraw) {
+        requestFrame(fullRedraw, null);
+    }
+
+    /** Redraw part of the canvas <br>
+     *  Only the area given is re-rendered from the vector shapes,
+     *  the rest of the buffer image is left as is.
+     *  When a shape is changed, pass the union of the 
+     *  {@link AlcShape#getPaintBounds()} before and after the change.
+     * @param dirtyArea     The area of the canvas that has changed
+     */
+    public void redraw(Rectangle dirtyArea) {
+        requestFrame(false, dirtyArea);
+    }
+
+    /** Deliver any pending redraw straight away rather than waiting for the next frame. <br>
+     *  Call this when the result of the affects is needed before the frame is due.
+     */
+    public void flushRedraw() {
+        deliverFrame();
+    }
+
+    /** Record a redraw request and schedule the next frame if not already scheduled
+     * @param fullRedraw    Redraw the full set of vector shapes
+     * @param dirtyArea     The changed area to re-render, or null
+     */
+    private void requestFrame(boolean fullRedraw, Rectangle dirtyArea) {
+        synchronized (frameLock) {
+            requestedFrames++;
+            framePending = true;
             if (fullRedraw) {
-                // If the window is transparent
-                if (Alchemy.window.isTransparent()) {
-                    canvasImage = renderCanvas(true, true);
+                fullRedrawPending = true;
+                pendingDirtyArea = null;
+            } else if (dirtyArea != null && !fullRedrawPending) {
+                if (pendingDirtyArea == null) {
+                    pendingDirtyArea = new Rectangle(dirtyArea);
                 } else {
-                    canvasImage = renderCanvas(true);
+                    pendingDirtyArea.add(dirtyArea);
                 }
             }
+        }
+        if (!frameTimer.isRunning()) {
+            // Deliver straight after the frame interval since the last frame has passed
+            long elapsed = System.currentTimeMillis() - lastFrameTime;
+            frameTimer.setInitialDelay((int) Math.max(0, frameTimer.getDelay() - elapsed));
+            frameTimer.start();
+        }
+    }
+
+    /** Apply the affects and paint the canvas for all requests since the last frame */
+    private void deliverFrame() {
+        boolean fullRedraw;
+        Rectangle dirtyArea;
+        synchronized (frameLock) {
+            if (!framePending || deliveringFrame) {
+                return;
+            }
+            fullRedraw = fullRedrawPending;
+            dirtyArea = pendingDirtyArea;
+            framePending = false;
+            fullRedrawPending = false;
+            pendingDirtyArea = null;
+        }
+        frameTimer.stop();
+        // Draw at draft quality while the pen is down or affects are busy
+        draftQuality = interactiveQuality && (penDown || Alchemy.plugins.hasCurrentAffects());
+        if (draftQuality) {
+            refineTimer.restart();
+        }
+        deliveringFrame = true;
+        try {
+            applyAffects();
+        } finally {
+            deliveringFrame = false;
+        }
+        // Changes made with the pen up, by hovering or on a timer, are undone a frame at a time
+        // A press being finished keeps its group open until the release is done
+        if (!penDown && !penReleasing && undoLog.isGroupOpen()) {
+            finishUndoGroup();
+        }
+        if (redraw) {
+            if (fullRedraw) {
+                // Render on the background thread, the current image stays up until it is ready
+                java.awt.Rectangle visibleRect = this.getVisibleRect();
+                canvasImage = canvasTiles.renderInBackground(visibleRect.width, visibleRect.height, viewTransform);
+            } else if (dirtyArea != null) {
+                canvasTiles.markDirty(documentToView(dirtyArea));
+                canvasImage = renderTiles();
+            }
             this.repaint();
             // Something has happened on the canvas and the user is still active
             canvasChanged = true;
         }
+        deliveredFrames++;
+        lastFrameTime = System.currentTimeMillis();
+    }
+
+    /** Return to full quality and re-render anything drawn at draft quality */
+    private void refine() {
+        // Stay at draft quality until the pen is lifted
+        if (penDown) {
+            return;
+        }
+        draftQuality = false;
+        if (canvasTiles.refine() && redraw) {
+            canvasImage = renderTiles();
+        }
+        this.repaint();
+    }
+
+    /** Set interactive quality on or off <br>
+     *  When on the canvas is drawn without smoothing or gradients while drawing,
+     *  then re-rendered at full quality once drawing pauses
+     * @param interactiveQuality    Interactive quality on or off
+     */
+    public void setInteractiveQuality(boolean interactiveQuality) {
+        this.interactiveQuality = interactiveQuality;
+        if (!interactiveQuality && draftQuality) {
+            refineTimer.stop();
+            refine();
+        }
+    }
+
+    /** Get the interactive quality state
+     * @return  Interactive quality on or off
+     */
+    public boolean isInteractiveQuality() {
+        return interactiveQuality;
+    }
+
+    /** Set the rendering hints used to draw shapes on screen at the current quality
+     * @param g2    The graphics to set the hints on
+     */
+    void setScreenRenderingHints(Graphics2D g2) {
+        if (smoothing && !draftQuality) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        } else {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        }
+        if (draftQuality) {
+            g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+        }
+    }
+
+    /** Get the stroke used to draw a line shape on screen at the current quality
+     * @param shape     The shape to draw
+     * @return          The stroke
+     */
+    BasicStroke getScreenStroke(AlcShape shape) {
+        if (draftQuality) {
+            return new BasicStroke(shape.lineWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+        }
+        return new BasicStroke(shape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL);
+    }
+
+    /** Get the paint used to draw a shape on screen at the current quality.
+     *  Gradients are drawn as a solid color at draft quality
+     * @param shape     The shape to draw
+     * @return          The paint
+     */
+    Paint getScreenPaint(AlcShape shape) {
+        Paint paint = shape.getPaint();
+        if (draftQuality && paint instanceof GradientPaint) {
+            return ((GradientPaint) paint).getColor1();
+        }
+        return paint;
+    }
+
+    /** Set the target number of frames painted per second
+     * @param frameRate     Frames per second
+     */
+    public void setFrameRate(int frameRate) {
+        this.frameRate = Math.max(1, Math.min(frameRate, 240));
+        frameTimer.setDelay(1000 / this.frameRate);
+    }
+
+    /** Get the target number of frames painted per second
+     * @return  Frames per second
+     */
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    /** Get the number of redraws requested, several requests may be merged into a single frame
+     * @return  The number of redraw requests
+     */
+    public long getRequestedFrames() {
+        return requestedFrames;
+    }
+
+    /** Get the number of frames actually delivered
+     * @return  The number of frames
+     */
+    public long getDeliveredFrames() {
+        return deliveredFrames;
+    }
+
+    /** Set how far committed shapes may be moved by simplifying their paths.
+     *  Simplified shapes have far fewer segments, so are quicker to redraw and export
+     * @param simplifyTolerance     Largest distance in pixels, 0 to keep shapes as drawn
+     */
+    public void setSimplifyTolerance(float simplifyTolerance) {
+        this.simplifyTolerance = Math.max(0, simplifyTolerance);
+    }
+
+    /** Get how far committed shapes may be moved by simplifying their paths
+     * @return  Largest distance in pixels, 0 when shapes are kept as drawn
+     */
+    public float getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    /** Get the number of segments committed shapes had before they were simplified
+     * @return  The number of segments
+     */
+    public long getSegmentsBeforeSimplify() {
+        return segmentsBeforeSimplify;
+    }
+
+    /** Get the number of segments committed shapes have after they were simplified
+     * @return  The number of segments
+     */
+    public long getSegmentsAfterSimplify() {
+        return segmentsAfterSimplify;
+    }
+
+    /** Keep only the newest committed shapes, the oldest are removed as others are committed.
+     *  Removing the oldest shapes does not move the others and only the area they covered is redrawn,
+     *  so the canvas can be limited indefinitely at a steady cost
+     * @param shapeLimit    The number of shapes to keep, -1 for no limit
+     */
+    public void setShapeLimit(int shapeLimit) {
+        this.shapeLimit = shapeLimit;
+        limitShapes();
+    }
+
+    /** Get the number of committed shapes kept
+     * @return  The number of shapes, -1 when there is no limit
+     */
+    public int getShapeLimit() {
+        return shapeLimit;
+    }
+
+    /** Remove the oldest committed shapes over the limit and redraw the area they covered */
+    private void limitShapes() {
+        if (shapeLimit < 0 || shapes.size() <= shapeLimit) {
+            return;
+        }
+        int count = shapes.size() - shapeLimit;
+        Rectangle dirtyArea = null;
+        for (int i = 0; i < count; i++) {
+            Rectangle bounds = shapes.get(i).getPaintBounds();
+            if (dirtyArea == null) {
+                dirtyArea = bounds;
+            } else {
+                dirtyArea.add(bounds);
+            }
+        }
+        ((AlcShapeList) shapes).removeOldest(count);
+        redraw(dirtyArea);
     }
 
     /** Force the canvas to redraw regardless of the current redraw setting */
     public void forceRedraw() {
         this.setRedraw(true);
         this.redraw(true);
+        this.flushRedraw();
         this.setRedraw(false);
     }
 
@@ -385,7 +720,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     void setDrawUnder(boolean drawUnder) {
         this.drawUnder = drawUnder;
-        updateCanvasImage(true);
+        // The committed shape layer just moves above or below the active shapes
+        this.repaint();
     }
 
     /** Get the draw under state
@@ -395,12 +731,39 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         return this.drawUnder;
     }
 
-    /** Update the canvasImage with transparency if required 
-     * 
-     * @param transparency
+    /** Render any dirty tiles of the committed shapes into the canvas image
+     * @return  The updated canvas image
+     */
+    private Image renderTiles() {
+        java.awt.Rectangle visibleRect = this.getVisibleRect();
+        return canvasTiles.render(visibleRect.width, visibleRect.height);
+    }
+
+    /** Called when a background render of the canvas image has finished */
+    void canvasImageRendered() {
+        canvasImage = renderTiles();
+        this.repaint();
+    }
+
+    /** Add the given shapes to the canvas image. 
+     *  Shapes on top of the canvas are drawn straight onto the image,
+     *  otherwise the area they cover is marked to be re-rendered
+     * @param newShapes     The shapes that have been added to {@link #shapes}
+     * @param onTop         If the shapes have been added to the top of the shapes list or not
      */
-    void updateCanvasImage(boolean transparency) {
-        canvasImage = renderCanvas(true, true);
+    private void addToCanvasImage(ArrayList<AlcShape> newShapes, boolean onTop) {
+        // When redraw is off the shapes should stay hidden until the next full redraw
+        if (onTop && redraw) {
+            java.awt.Rectangle visibleRect = this.getVisibleRect();
+            canvasImage = canvasTiles.append(newShapes, viewTransform, visibleRect.width, visibleRect.height);
+        } else {
+            for (int i = 0; i < newShapes.size(); i++) {
+                canvasTiles.markDirty(documentToView(newShapes.get(i).getPaintBounds()));
+            }
+            if (redraw) {
+                canvasImage = renderTiles();
+            }
+        }
     }
 
     /** Set Smoothing (AntiAliasing) on or off
@@ -412,7 +775,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             this.redraw(true);
         // If redraw is off, just update the canvas image
         } else {
-            canvasImage = renderCanvas(true);
+            canvasTiles.markAllDirty();
+            canvasImage = renderTiles();
         }
     }
 
@@ -486,11 +850,30 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     /** Pen Location as a new Point2D.Float object. <br>
      *  If a pen tablet is available, this method will return more accurate
-     *  information on the pen location than the standard {@link MouseEvent}
+     *  information on the pen location than the standard {@link MouseEvent}.
+     *  The location is given in document coordinates, taking into account any zoom or flip of the view.
      * @return  Point2D.Float with pen location information
      */
     public Point2D.Float getPenLocation() {
-        return new Point2D.Float(penLocation.x, penLocation.y);
+        Point2D.Float location = new Point2D.Float(penLocation.x, penLocation.y);
+        if (!viewTransform.isIdentity()) {
+            try {
+                viewTransform.inverseTransform(location, location);
+            } catch (NoninvertibleTransformException ex) {
+                // Leave the location in view coordinates
+            }
+        }
+        return location;
+    }
+
+    /** Mouse Location as a new Point2D.Float object. <br>
+     *  The location of the mouse event being passed to the modules, in document coordinates.
+     *  Unlike the location of the {@link MouseEvent} itself, it is not rounded to a whole pixel
+     *  when the view is zoomed or flipped.
+     * @return  Point2D.Float with the mouse location
+     */
+    public Point2D.Float getMouseLocation() {
+        return new Point2D.Float(mouseLocation.x, mouseLocation.y);
     }
 
     /** Set the pen location - set internally by mouse events */
@@ -584,9 +967,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         guideShapes.clear();
 
         this.canvasImage = null;
-        if (imageDisplay && image != null) {
-            canvasImage = renderCanvas(true);
-        }
+        canvasTiles.markAllDirty();
 
         if (redraw) {
             // If a session is loaded then make sure to redraw it below
@@ -609,6 +990,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                 }
             }
         }
+        commitJournal();
         // Now is a good time to clean up memory
         System.gc();
     }
@@ -644,30 +1026,32 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     /** Commit all shapes to the main {@link #shapes} array and render the image buffer */
     public void commitShapes() {
+        // Bring the affect shapes up to date with the last redraw request
+        flushRedraw();
         // Add the createShapes and affectShapes to the main array
         // Add to the bottom if drawUnder is on
+        ArrayList<AlcShape> newShapes = new ArrayList<AlcShape>(createShapes.size() + affectShapes.size());
         if (drawUnder) {
             shapes.addAll(0, createShapes);
             shapes.addAll(0, affectShapes);
-            // Refresh the canvasImage after the shapes have been added
-            // to keep the ordering correct
-            createShapes.clear();
-            affectShapes.clear();
-            canvasImage = renderCanvas(true, true);
+            newShapes.addAll(affectShapes);
+            newShapes.addAll(createShapes);
 
         // Otherwise add to the top
         } else {
-            // If the window is transparent
-            if (Alchemy.window.isTransparent()) {
-                canvasImage = renderCanvas(true, true);
-            } else {
-                canvasImage = renderCanvas(false);
-            }
             shapes.addAll(createShapes);
             shapes.addAll(affectShapes);
-            createShapes.clear();
-            affectShapes.clear();
+            newShapes.addAll(createShapes);
+            newShapes.addAll(affectShapes);
         }
+        createShapes.clear();
+        affectShapes.clear();
+        finishShapes(newShapes);
+        // Refresh the canvasImage after the shapes have been added
+        // to keep the ordering correct
+        addToCanvasImage(newShapes, !drawUnder);
+        limitShapes();
+        commitJournal();
 
         // Tell the modules the shapes have been commited
         if (Alchemy.plugins.currentCreate >= 0) {
@@ -682,6 +1066,23 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         }
     }
 
+    /** Simplify newly committed shapes if turned on,
+     *  then release the unused room in them as they will not grow any further
+     * @param newShapes     The shapes that have been committed
+     */
+    private void finishShapes(ArrayList<AlcShape> newShapes) {
+        AlcPathSimplifier simplifier = simplifyTolerance > 0 ? new AlcPathSimplifier(simplifyTolerance) : null;
+        for (int i = 0; i < newShapes.size(); i++) {
+            AlcShape shape = newShapes.get(i);
+            if (simplifier != null) {
+                segmentsBeforeSimplify += shape.getUntransformedGeometry().getSegmentCount();
+                shape.simplify(simplifier);
+                segmentsAfterSimplify += shape.getUntransformedGeometry().getSegmentCount();
+            }
+            shape.trimToSize();
+        }
+    }
+
     /** Get a normalized array of shapes with the top-left corner set to 0,0
      *  and the size set to the given value
      *
@@ -689,7 +1090,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      * @param size          The size to scale the shapes to
      * @return              The normailzed array list of shapes
      */
-    public ArrayList<AlcShape> normailzeShapes(ArrayList<AlcShape> inputShapes, int size){
+    public ArrayList<AlcShape> normailzeShapes(List<AlcShape> inputShapes, int size){
         ArrayList<AlcShape> outputShapes = new ArrayList<AlcShape>(inputShapes.size());
 
         for (AlcShape shape : inputShapes) {
@@ -726,6 +1127,24 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         return shapes.size() > 0;
     }
 
+    /** Get the top committed shape containing a point.
+     *  Only the shapes near the point are tested, so this is much quicker than
+     *  looping through {@link #shapes}
+     * @param p     The point
+     * @return      The shape, or null if there is no shape at the point
+     */
+    public AlcShape getShapeAt(Point2D p) {
+        return ((AlcShapeList) shapes).getShapeAt(p);
+    }
+
+    /** Get the committed shapes with bounds that intersect an area
+     * @param area  The area
+     * @return      The shapes, from the bottom to the top
+     */
+    public ArrayList<AlcShape> getShapesIn(Rectangle area) {
+        return ((AlcShapeList) shapes).getShapesIn(area);
+    }
+
     /** Returns the most recently added shape
      * @return The current shape
      */
@@ -759,34 +1178,94 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         }
     }
     
-    /** Removes the most recently added group of shapes which were
-     *  laid down in a single mouse/pen event                      */
-    public boolean removeShapeGroup(){
-        
-        if (!shapes.isEmpty()){
-           int i = 0;
-           while(i<shapeGroupsSize.get(shapeGroupsSize.size()-1)){
-              removeShape(shapeGroups.get(shapeGroups.size()-1)); 
-              i++;
-           }
-           i = 0;
-           while(i<shapeGroups.size()){
-               if(shapeGroups.get(i)>shapeGroups.get(shapeGroups.size()-1)){
-               shapeGroups.set(i, shapeGroups.get(i)-shapeGroupsSize.get(shapeGroupsSize.size()-1));
-               }
-               i++;
-           }
-           redraw(true);
-        
-           shapeGroups.remove(shapeGroups.size()-1);
-           shapeGroupsSize.remove(shapeGroupsSize.size()-1);        
+    /** Undo the most recent group of changes to the committed shapes,
+     *  usually those made in a single mouse/pen event.
+     *  Only the area the changes covered is redrawn
+     */
+    public void undo() {
+        Rectangle dirtyArea = undoLog.undo();
+        if (dirtyArea != null) {
+            redraw(dirtyArea);
         }
-        if(shapes.isEmpty()){
-            return(true);
-        }else{
-            return(false);
+        updateUndo();
+        commitJournal();
+    }
+
+    /** Redo the most recently undone group of changes */
+    public void redo() {
+        Rectangle dirtyArea = undoLog.redo();
+        if (dirtyArea != null) {
+            redraw(dirtyArea);
+        }
+        updateUndo();
+        commitJournal();
+    }
+
+    /** Check if there are changes to undo
+     * @return  True if there are changes to undo
+     */
+    public boolean canUndo() {
+        return undoLog.canUndo();
+    }
+
+    /** Check if there are undone changes to redo
+     * @return  True if there are changes to redo
+     */
+    public boolean canRedo() {
+        return undoLog.canRedo();
+    }
+
+    /** Call before changing a committed shape in place so that the change can be undone.
+     *  Adding and removing committed shapes is recorded without this
+     * @param shape     The shape about to be changed
+     */
+    public void recordShapeChange(AlcShape shape) {
+        undoLog.changing(shape);
+        if (journal != null) {
+            journal.changing(shape);
+        }
+    }
+
+    /** Start journaling the committed shapes, first offering to recover
+     *  the shapes journaled when Alchemy last stopped unexpectedly
+     */
+    void startJournal() {
+        AlcJournal started = new AlcJournal(new File(DIR_HOME, AlcJournal.FILE_NAME), shapes);
+        List<AlcShape> recovered = started.replay();
+        if (!recovered.isEmpty() && !AlcUtil.showConfirmDialogFromBundle("recoverDialogTitle", "recoverDialogMessage")) {
+            recovered.clear();
+        }
+        started.start();
+        journal = started;
+        ((AlcShapeList) shapes).journal = started;
+        if (!recovered.isEmpty()) {
+            loadShapes(recovered);
+        }
+    }
+
+    /** Write the changes waiting in the journal then delete it, as nothing needs recovering */
+    void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            ((AlcShapeList) shapes).journal = null;
+        }
+    }
+
+    /** Hand the changes to the committed shapes since the last commit to the journal */
+    private void commitJournal() {
+        if (journal != null) {
+            journal.commit();
+        }
+    }
+
+    /** Enable or disable the undo button to match the log */
+    private void updateUndo() {
+        if (undoDepth > 0 && undoLog.canUndo()) {
+            Alchemy.toolBar.enableUndo();
+        } else {
+            Alchemy.toolBar.disableUndo();
         }
-            
     }
     
     /** Adds the current color, to the swatch array, sets it active */
@@ -838,11 +1317,32 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     /** Commit all create shapes to the main shapes array */
     public void commitCreateShapes() {
-        canvasImage = renderCanvas(false);
-        for (int i = 0; i < createShapes.size(); i++) {
-            shapes.add(createShapes.get(i));
-        }
+        flushRedraw();
+        ArrayList<AlcShape> newShapes = new ArrayList<AlcShape>(createShapes);
+        shapes.addAll(newShapes);
         createShapes.clear();
+        finishShapes(newShapes);
+        addToCanvasImage(newShapes, true);
+        limitShapes();
+        commitJournal();
+    }
+
+    /** Replace all shapes with shapes loaded from a document, undone together as a single change
+     * @param newShapes     The shapes, in the order they are drawn
+     */
+    void loadShapes(List<AlcShape> newShapes) {
+        startUndoGroup();
+        clear();
+        shapes.addAll(newShapes);
+        limitShapes();
+        finishUndoGroup();
+        canvasTiles.markAllDirty();
+        if (redraw) {
+            redraw(true);
+        // Show the document even if redrawing is off
+        } else {
+            forceRedraw();
+        }
     }
 
     //////////////////////////////////////////////////////////////
@@ -886,12 +1386,14 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     /** Commit all affect shapes to the main shapes array */
     public void commitAffectShapes() {
-        canvasImage = renderCanvas(false);
-
-        for (int i = 0; i < affectShapes.size(); i++) {
-            shapes.add(affectShapes.get(i));
-        }
+        flushRedraw();
+        ArrayList<AlcShape> newShapes = new ArrayList<AlcShape>(affectShapes);
+        shapes.addAll(newShapes);
         affectShapes.clear();
+        finishShapes(newShapes);
+        addToCanvasImage(newShapes, true);
+        limitShapes();
+        commitJournal();
     }
 
     //////////////////////////////////////////////////////////////
@@ -970,6 +1472,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setBackgroundColor(Color color) {
         this.bgColor = new Color(color.getRed(), color.getGreen(), color.getBlue());
+        // The session page is rendered with the background color
+        layers.markUnderlayDirty();
         redraw(true);
     }
 
@@ -1006,6 +1510,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     
     public void setUndoDepth(int i){
         undoDepth = i;
+        undoLog.setDepth(i);
+        updateUndo();
     }
     
     public int getUndoDepth(){
@@ -1100,33 +1606,9 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         horizontalReflection.translate(this.getWidth(), 0);
         // Reflect it using a negative scale
         horizontalReflection.scale(-1, 1);
-        // Apply to every shape
-        for(AlcShape shape : shapes){
-            GeneralPath reflectedPath = (GeneralPath) shape.getPath().createTransformedShape(horizontalReflection);
-            shape.setPath(reflectedPath);
-            shape.setGradientPaint(makeHorizontalReflectedGradientPaint(shape.getGradientPaint()));
-        }
-        redraw(true);
+        flipTransform.preConcatenate(horizontalReflection);
+        updateViewTransform();
     }
-    
-    /** Make a GradientPaint reflected through the horizontal axis */
-    private GradientPaint makeHorizontalReflectedGradientPaint(GradientPaint gp) {
-        if(gp == null){
-            return null;
-        }
-        float horizontalAxis = this.getWidth() / 2;
-        float x1 = horizontalAxis - ((float) gp.getPoint1().getX() - horizontalAxis);
-        float x2 = horizontalAxis - ((float) gp.getPoint2().getX() - horizontalAxis);
-        GradientPaint newGp = new GradientPaint(
-                x1,
-                (float) gp.getPoint1().getY(),
-                gp.getColor1(),
-                x2,
-                (float) gp.getPoint2().getY(),
-                gp.getColor2());
-        return newGp;
-    }
-
 
     /** Flip the shapes on the canvas Vertically */
     void flipVertical(){
@@ -1135,76 +1617,25 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         verticalReflection.translate(0, this.getHeight());
         // Reflect it using a negative scale
         verticalReflection.scale(1, -1);
-        // Apply to every shape
-        for(AlcShape shape : shapes){
-            GeneralPath reflectedPath = (GeneralPath) shape.getPath().createTransformedShape(verticalReflection);
-            shape.setPath(reflectedPath);
-            shape.setGradientPaint(makeVerticalReflectedGradientPaint(shape.getGradientPaint()));
-        }
-        redraw(true);
+        flipTransform.preConcatenate(verticalReflection);
+        updateViewTransform();
     }
 
-    /** Make a GradientPaint reflected through the vertical axis */
-    private GradientPaint makeVerticalReflectedGradientPaint(GradientPaint gp) {
-        if(gp == null){
-            return null;
-        }
-        float verticalAxis = this.getHeight() / 2;
-        float y1 = verticalAxis - ((float) gp.getPoint1().getY() - verticalAxis);
-        float y2 = verticalAxis - ((float) gp.getPoint2().getY() - verticalAxis);
-        GradientPaint newGp = new GradientPaint(
-                (float) gp.getPoint1().getX(),
-                y1,
-                gp.getColor1(),
-                (float) gp.getPoint2().getX(),
-                y2,
-                gp.getColor2());
-        return newGp;
-    }
-    
     /** Zoom the Canvas 4x - keep location under mouse, under the mouse */
     public boolean zoomCanvas(boolean keyLaunch){
         
         //things get wacky if you quick-key zoom while over the toolbar...       
         if(this.getMousePosition()!=null||!keyLaunch){
 
-            double x;
-            double y;
-            double imageZoomX;
-            double imageZoomY;
-            AffineTransform zoom = new AffineTransform();
-            
-            // Not Zoomed, lets set data for zooming/
-            if(currentZoom==1/zoomAmount){
-                currentZoom = zoomAmount;
-                Point location = this.getMousePosition();
-                // set the zoom coordinate so that location under mouse remains under the mouse
-                lastZoomX = location.getX()-((this.getWidth()/zoomAmount)*(location.getX()/this.getWidth()));
-                lastZoomY = location.getY()-((this.getHeight()/zoomAmount)*(location.getY()/this.getHeight()));
-                imageZoomX = (location.getX()-imageLocation.getX())-
-                   ( (this.getWidth()/zoomAmount) * ( (location.getX()-imageLocation.getX()) / this.getWidth() ) );
-                imageZoomY = (location.getY()-imageLocation.getY())-
-                   ( (this.getWidth()/zoomAmount) * ( (location.getY()-imageLocation.getY()) / this.getWidth() ) );
-                x = 0 - ((zoomAmount * lastZoomX));
-                y = 0 - ((zoomAmount * lastZoomY));
-                
-                zoomedImageLocation.x = (int)(imageLocation.getX() - (zoomAmount*imageZoomX));
-                zoomedImageLocation.y = (int)(imageLocation.getY() - (zoomAmount*imageZoomY));
-                
-            // Zoomed, lets set data for unzooming
+            // Not Zoomed, zoom in around the mouse
+            if(!isCanvasZoomed()){
+                zoomCanvas(zoomAmount, this.getMousePosition());
+
+            // Zoomed, lets reset the zoom and pan
             }else{
-                currentZoom = 1/zoomAmount;
-                x = lastZoomX;
-                y = lastZoomY;
-            }       
-            zoom = AffineTransform.getTranslateInstance ( x,y );
-            zoom.scale(currentZoom,currentZoom);
-            for(AlcShape shape : shapes){
-                GeneralPath zoomPath = (GeneralPath) shape.getPath().createTransformedShape(zoom);
-                shape.setPath(zoomPath);
-                shape.setGradientPaint(makeHorizontalReflectedGradientPaint(shape.getGradientPaint()));
+                zoomTransform.setToIdentity();
+                updateViewTransform();
             }
-            redraw(true);
             
             // success
             return(true);
@@ -1214,9 +1645,43 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             return(false);
         }       
     }
+
+    /** Zoom the canvas by the given factor 
+     *  keeping the anchor point at the same location in the view
+     * @param factor    The amount to zoom by, values less than 1 zoom out
+     * @param anchor    The point in view coordinates to zoom around
+     */
+    public void zoomCanvas(double factor, Point2D anchor) {
+        AffineTransform zoom = new AffineTransform();
+        if (anchor != null) {
+            zoom.translate(anchor.getX(), anchor.getY());
+            zoom.scale(factor, factor);
+            zoom.translate(-anchor.getX(), -anchor.getY());
+        } else {
+            zoom.scale(factor, factor);
+        }
+        zoomTransform.preConcatenate(zoom);
+        updateViewTransform();
+    }
+
+    /** Pan the canvas by the given distance
+     * @param dx    The distance to move the view horizontally in view coordinates
+     * @param dy    The distance to move the view vertically in view coordinates
+     */
+    public void panCanvas(double dx, double dy) {
+        zoomTransform.preConcatenate(AffineTransform.getTranslateInstance(dx, dy));
+        updateViewTransform();
+    }
+
+    /** Recalculate the document to view transform and redraw the canvas */
+    private void updateViewTransform() {
+        viewTransform = new AffineTransform(zoomTransform);
+        viewTransform.concatenate(flipTransform);
+        redraw(true);
+    }
     
     public void startZoomMousing(){
-        if(currentZoom<1){
+        if(!isCanvasZoomed()){
             zoomMousing = true;
             Alchemy.toolBar.setToolBarVisible(false);
             setTempCursor(CURSOR_ZOOM);
@@ -1230,36 +1695,61 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         restoreCursor();
     }
     public boolean isCanvasZoomed(){
-        if (currentZoom>1){
-            return true;
-        }else{
-            return false;
-        }
+        return !zoomTransform.isIdentity();
     }
-    public Point2D.Double getZoomLocation(){
-        Point2D.Double p = new Point2D.Double();
-        if(isCanvasZoomed()){
-            p.setLocation(lastZoomX,lastZoomY);
-        }else{
-            p.setLocation(0.0,0.0);
+
+    /** Get the current zoom level of the view
+     * @return  The zoom level, where 1 is no zoom
+     */
+    public double getZoom() {
+        return Math.sqrt(Math.abs(zoomTransform.getDeterminant()));
+    }
+
+    /** Get the document to view transform
+     * @return  A copy of the transform applied when drawing shapes to the screen
+     */
+    public AffineTransform getViewTransform() {
+        return new AffineTransform(viewTransform);
+    }
+
+    /** Convert a point in view coordinates, such as a mouse location, to document coordinates
+     * @param p     The point in view coordinates
+     * @return      A new point in document coordinates
+     */
+    public Point2D.Float viewToDocument(Point2D p) {
+        Point2D.Float documentPoint = new Point2D.Float((float) p.getX(), (float) p.getY());
+        try {
+            viewTransform.inverseTransform(documentPoint, documentPoint);
+        } catch (NoninvertibleTransformException ex) {
+            // Leave the point in view coordinates
         }
-        return p;
+        return documentPoint;
     }
-    public double calculateZoomedX(double c){
-        if(isCanvasZoomed()){
-           c = (0 - (4*(int)lastZoomX))+(c*4);
-           return c;
-        }else{
-           return c;
+
+    /** Convert an area in document coordinates to the area it covers in the view
+     * @param area  The area in document coordinates
+     * @return      The bounds of the area in view coordinates
+     */
+    public Rectangle documentToView(Rectangle area) {
+        if (area == null || viewTransform.isIdentity()) {
+            return area;
         }
+        return viewTransform.createTransformedShape(area).getBounds();
     }
-    public double calculateZoomedY(double c){
-        if(isCanvasZoomed()){
-           c = (0 - (4*(int)lastZoomY))+(c*4);
-           return c;
-        }else{
-           return c;
+
+    /** Create a copy of a mouse event with the location in document coordinates.
+     *  The event location is rounded to a whole pixel, the exact location is kept for {@link #getMouseLocation()}
+     */
+    private MouseEvent viewToDocument(MouseEvent event) {
+        if (viewTransform.isIdentity()) {
+            mouseLocation.setLocation(event.getX(), event.getY());
+            return event;
         }
+        Point2D.Float p = viewToDocument(event.getPoint());
+        mouseLocation.setLocation(p);
+        return new MouseEvent(event.getComponent(), event.getID(), event.getWhen(), event.getModifiersEx(),
+                Math.round(p.x), Math.round(p.y), event.getXOnScreen(), event.getYOnScreen(),
+                event.getClickCount(), event.isPopupTrigger(), event.getButton());
     }
 
     //////////////////////////////////////////////////////////////
@@ -1271,12 +1761,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setImage(BufferedImage image) {
         this.image = image;
-        if(this.image!=null){
-           this.zoomedImage = getZoomedImage(this.image);
-        }else{
-            this.zoomedImage =null;
-        }
-        canvasImage = renderCanvas(true);
+        layers.markImageDirty();
+        this.repaint();
         if (image != null) {
             Alchemy.menuBar.unloadBackgroundImageItem.setEnabled(true);
         } else {
@@ -1284,35 +1770,12 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         }
     }
     
-    private BufferedImage getZoomedImage(BufferedImage image){
-        
-        // Create new (blank) image of required (scaled) size
-        BufferedImage scaledImage = new BufferedImage((int)(image.getWidth()*zoomAmount), 
-                                                      (int)(image.getHeight()*zoomAmount), 
-                                                      BufferedImage.TYPE_INT_ARGB);
-
-        // Paint scaled version of image to new image
-        Graphics2D graphics2D = scaledImage.createGraphics();
-        graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        graphics2D.drawImage(image, 0, 0, (int)(image.getWidth()*zoomAmount), (int)(image.getHeight()*zoomAmount), null);
-
-        // clean up
-        graphics2D.dispose();
-        
-        return scaledImage;
-    }
-
     /** Get the current image
      * 
      * @return  The current image
      */
     public Image getImage() {
-        if(isCanvasZoomed()){
-            return this.zoomedImage;
-        }else{
-            return this.image;
-        }
+        return this.image;
     }
 
     /** Check if an Image is defined or not
@@ -1329,7 +1792,8 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setImageDisplay(boolean imageDisplay) {
         this.imageDisplay = imageDisplay;
-        canvasImage = renderCanvas(true);
+        layers.markImageDirty();
+        this.repaint();
     }
 
     /** Check if image display is enabled
@@ -1345,6 +1809,7 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
      */
     public void setImageLocation(Point p) {
         this.imageLocation = p;
+        layers.markImageDirty();
     }
 
     /** Set the location for the image to be displayed on the canvas
@@ -1355,27 +1820,22 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     public void setImageLocation(int x, int y) {
         this.imageLocation.x = x;
         this.imageLocation.y = y;
+        layers.markImageDirty();
     }
-    
-    private void setZoomedImageLocation(){
-        
-    }
+
     /** Get the location where the image is displayed on the canvas
      * 
      * @return  Point - x & y location
      */
     public Point getImageLocation() {
-        if(isCanvasZoomed()){
-         return zoomedImageLocation;   
-        }else{
         return imageLocation;
-        }
     }
 
     /** Reset the image location back to zero */
     public void resetImageLocation() {
         this.imageLocation.x = 0;
         this.imageLocation.y = 0;
+        layers.markImageDirty();
     }
 
     /** Set the transparent image to be drawn behind the canvas
@@ -1600,16 +2060,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             Alchemy.toolBar.toggleToolBar(event.getY());
         }
         if (events) {
+            // Pass the location in document coordinates
+            MouseEvent documentEvent = viewToDocument(event);
             // Pass to the current create module
             if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseMoved(event);
+                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseMoved(documentEvent);
             }
             // Pass to all active affect modules
             if (affectEvents) {
                 if (Alchemy.plugins.hasCurrentAffects()) {
                     for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
                         if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseMoved(event);
+                            Alchemy.plugins.affects[i].mouseMoved(documentEvent);
                         }
                     }
                 }
@@ -1641,16 +2103,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                 
             }else{
                 startUndoGroup();   
+                // Pass the location in document coordinates
+                MouseEvent documentEvent = viewToDocument(event);
                 // Pass to the current create module
                 if (createEvents) {
-                    Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mousePressed(event);
+                    Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mousePressed(documentEvent);
                 }
                 // Pass to all active affect modules
                 if (affectEvents) {
                     if (Alchemy.plugins.hasCurrentAffects()) {
                         for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
                             if (Alchemy.plugins.currentAffects[i]) {
-                                Alchemy.plugins.affects[i].mousePressed(event);
+                                Alchemy.plugins.affects[i].mousePressed(documentEvent);
                             }
                         }
                     }
@@ -1660,45 +2124,32 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
         }
     }
     
+    /** Start a new undo group, the changes until it is finished are undone together */
     public void startUndoGroup(){
-        lastShapesSize = shapes.size();
-        if(drawUnder){//drawUnder){
-            shapeGroups.add(0);
-        }else{
-            shapeGroups.add(shapes.size());         
-        } 
+        undoLog.startGroup();
     }
     
+    /** Finish the current undo group */
     public void finishUndoGroup(){
-        if(undoDepth>0){Alchemy.toolBar.enableUndo();}
-
-        int groupSize = shapes.size() - lastShapesSize;
-        shapeGroupsSize.add(groupSize);
-         
-        //drawunder was enabled - or it was the first shape and doesnt matter
-        if(shapeGroups.get(shapeGroups.size()-1)==0){
-            int i = shapeGroups.size()-2;
-            int test;
-            while(i>=0){
-                test = shapeGroups.get(i)+groupSize;
-                shapeGroups.set(i, shapeGroups.get(i)+groupSize);
-                i--;
-            }
-        }     
+        undoLog.finishGroup();
+        updateUndo();
+        commitJournal();
     }
 
     public void mouseClicked(MouseEvent event) {
         if (events) {
+            // Pass the location in document coordinates
+            MouseEvent documentEvent = viewToDocument(event);
             // Pass to the current create module
             if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseClicked(event);
+                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseClicked(documentEvent);
             }
             // Pass to all active affect modules
             if (affectEvents) {
                 if (Alchemy.plugins.hasCurrentAffects()) {
                     for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
                         if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseClicked(event);
+                            Alchemy.plugins.affects[i].mouseClicked(documentEvent);
                         }
                     }
                 }
@@ -1708,16 +2159,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     public void mouseEntered(MouseEvent event) {
         if (events) {
+            // Pass the location in document coordinates
+            MouseEvent documentEvent = viewToDocument(event);
             // Pass to the current create module
             if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseEntered(event);
+                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseEntered(documentEvent);
             }
             // Pass to all active affect modules
             if (affectEvents) {
                 if (Alchemy.plugins.hasCurrentAffects()) {
                     for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
                         if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseEntered(event);
+                            Alchemy.plugins.affects[i].mouseEntered(documentEvent);
                         }
                     }
                 }
@@ -1727,16 +2180,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     public void mouseExited(MouseEvent event) {
         if (events) {
+            // Pass the location in document coordinates
+            MouseEvent documentEvent = viewToDocument(event);
             // Pass to the current create module
             if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseExited(event);
+                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseExited(documentEvent);
             }
             // Pass to all active affect modules
             if (affectEvents) {
                 if (Alchemy.plugins.hasCurrentAffects()) {
                     for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
                         if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseExited(event);
+                            Alchemy.plugins.affects[i].mouseExited(documentEvent);
                         }
                     }
                 }
@@ -1746,20 +2201,32 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
     public void mouseReleased(MouseEvent event) {
         penDown = false;
+        // Refine anything drawn at draft quality once the stroke has finished
+        if (draftQuality) {
+            refineTimer.restart();
+        }
         if (events) {
-            // Pass to the current create module
-            if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseReleased(event);
-            }
-            // Pass to all active affect modules
-            if (affectEvents) {
-                if (Alchemy.plugins.hasCurrentAffects()) {
-                    for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
-                        if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseReleased(event);
+            // Pass the location in document coordinates
+            MouseEvent documentEvent = viewToDocument(event);
+            // Commits made while releasing belong to the press
+            penReleasing = true;
+            try {
+                // Pass to the current create module
+                if (createEvents) {
+                    Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseReleased(documentEvent);
+                }
+                // Pass to all active affect modules
+                if (affectEvents) {
+                    if (Alchemy.plugins.hasCurrentAffects()) {
+                        for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
+                            if (Alchemy.plugins.currentAffects[i]) {
+                                Alchemy.plugins.affects[i].mouseReleased(documentEvent);
+                            }
                         }
                     }
                 }
+            } finally {
+                penReleasing = false;
             }
             finishUndoGroup();
         }
@@ -1768,16 +2235,18 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     public void mouseDragged(MouseEvent event) {
         setPenLocation(event);
         if (events) {
+            // Pass the location in document coordinates
+            MouseEvent documentEvent = viewToDocument(event);
             // Pass to the current create module
             if (createEvents) {
-                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseDragged(event);
+                Alchemy.plugins.creates[Alchemy.plugins.currentCreate].mouseDragged(documentEvent);
             }
             // Pass to all active affect modules
             if (affectEvents) {
                 if (Alchemy.plugins.hasCurrentAffects()) {
                     for (int i = 0; i < Alchemy.plugins.currentAffects.length; i++) {
                         if (Alchemy.plugins.currentAffects[i]) {
-                            Alchemy.plugins.affects[i].mouseDragged(event);
+                            Alchemy.plugins.affects[i].mouseDragged(documentEvent);
                         }
                     }
                 }
@@ -1833,6 +2302,9 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
     class VectorCanvas extends JPanel implements AlcConstants {
 
         boolean transparent = false;
+        /** Draw only the committed shapes, skipping those outside of the clip - used by the tiled canvas image.
+         *  The background, session page, image and guides are left out as they are drawn on other layers */
+        boolean committedOnly = false;
         private int width,  height;
 
         @Override
@@ -1853,7 +2325,10 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                 cb = g2pdf.getContent();
             }
 
-            if (Alchemy.canvas.smoothing) {
+            // The canvas image follows the screen quality, exports are always full quality
+            if (committedOnly) {
+                Alchemy.canvas.setScreenRenderingHints(g2);
+            } else if (Alchemy.canvas.smoothing) {
                 g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             } else {
                 g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
@@ -1867,51 +2342,54 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
                 g2.fillRect(0, 0, width, height);
             }
 
-            // PDF READER
-            if (Alchemy.session.pdfReadPage != null) {
-
-                // Remember the old transform settings
-                AffineTransform at = g2.getTransform();
-
-                int pageWidth = (int) Alchemy.session.pdfReadPage.getWidth();
-                int pageHeight = (int) Alchemy.session.pdfReadPage.getHeight();
-                PDFRenderer renderer = new PDFRenderer(Alchemy.session.pdfReadPage, g2, new Rectangle(0, 0, pageWidth, pageHeight), null, Alchemy.canvas.getBackgroundColor());
-                try {
-                    Alchemy.session.pdfReadPage.waitForFinish();
-                    renderer.run();
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+            // Everything else is drawn in document coordinates
+            g2.transform(Alchemy.canvas.viewTransform);
 
-                // Revert to the old transform settings
-                g2.setTransform(at);
-
-            }
+            // The session page and image have their own layers on screen
+            if (!committedOnly) {
+                drawSessionPage(g2);
 
-            // Draw Image
-            if (Alchemy.canvas.isImageDisplayEnabled() && Alchemy.canvas.isImageSet()) {
-                Point p = Alchemy.canvas.getImageLocation();
-                g2.drawImage(Alchemy.canvas.getImage(), p.x, p.y, null);
+                // Draw Image
+                if (Alchemy.canvas.isImageDisplayEnabled() && Alchemy.canvas.isImageSet()) {
+                    Point p = Alchemy.canvas.getImageLocation();
+                    g2.drawImage(Alchemy.canvas.getImage(), p.x, p.y, null);
+                }
             }
 
 
             // Draw the shapes, create, and affect lists
-            for (int j = 0; j < Alchemy.canvas.fullShapeList.length; j++) {
-                for (int i = 0; i < Alchemy.canvas.fullShapeList[j].size(); i++) {
-                    AlcShape currentShape = (AlcShape) Alchemy.canvas.fullShapeList[j].get(i);
-                    Paint paint = currentShape.getPaint();
+            // or just the shapes list for the canvas image
+            int lists = committedOnly ? 1 : Alchemy.canvas.fullShapeList.size();
+            // The area being rendered in document coordinates, null when unclipped
+            Rectangle clip = g2.getClipBounds();
+            for (int j = 0; j < lists; j++) {
+                for (int i = 0; i < Alchemy.canvas.fullShapeList.get(j).size(); i++) {
+                    AlcShape currentShape = Alchemy.canvas.fullShapeList.get(j).get(i);
+                    // Skip shapes outside of the area being rendered
+                    if (clip != null && !currentShape.intersectsPaintBounds(clip)) {
+                        continue;
+                    }
+                    // Instances are drawn from a sprite on screen, except at draft quality
+                    if (committedOnly && !Alchemy.canvas.draftQuality && Alchemy.canvas.spriteCache.draw(g2, currentShape)) {
+                        continue;
+                    }
+                    Paint paint = committedOnly ? Alchemy.canvas.getScreenPaint(currentShape) : currentShape.getPaint();
                     
                     // LINE
                     if (currentShape.style == STYLE_STROKE) {
                         //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
-                        g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+                        if (committedOnly) {
+                            g2.setStroke(Alchemy.canvas.getScreenStroke(currentShape));
+                        } else {
+                            g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+                        }
 
                         // If this shape is a gradient and we are making a PDF
                         if (paint instanceof GradientPaint && cb != null) {
-                            drawTransparentGradient(cb, g2, (GradientPaint) paint, currentShape.path, false);
+                            drawTransparentGradient(cb, g2, (GradientPaint) paint, currentShape.getPaintShape(), false);
                         } else {
                             g2.setPaint(paint);
-                            g2.draw(currentShape.path);
+                            g2.draw(currentShape.getPaintShape());
                         }
 
                     // SOLID
@@ -1919,29 +2397,32 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
 
                         // If this shape is a gradient and we are making a PDF
                         if (paint instanceof GradientPaint && cb != null) {
-                            drawTransparentGradient(cb, g2, (GradientPaint) paint, currentShape.path, true);
+                            drawTransparentGradient(cb, g2, (GradientPaint) paint, currentShape.getPaintShape(), true);
                         } else {
                             g2.setPaint(paint);
-                            g2.fill(currentShape.path);
+                            g2.fill(currentShape.getPaintShape());
                         }
 
 
                     }
                 }
             }
-            if (Alchemy.canvas.isGuideEnabled()) {
+            if (Alchemy.canvas.isGuideEnabled() && !committedOnly) {
                 for (int i = 0; i < Alchemy.canvas.guideShapes.size(); i++) {
                     AlcShape currentShape = Alchemy.canvas.guideShapes.get(i);
+                    if (clip != null && !currentShape.intersectsPaintBounds(clip)) {
+                        continue;
+                    }
                     // LINE
                     if (currentShape.style == STYLE_STROKE) {
                         //g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
                         g2.setStroke(new BasicStroke(currentShape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
                         g2.setColor(currentShape.color);
-                        g2.draw(currentShape.path);
+                        g2.draw(currentShape.getPaintShape());
                     // SOLID
                     } else {
                         g2.setColor(currentShape.color);
-                        g2.fill(currentShape.path);
+                        g2.fill(currentShape.getPaintShape());
                     }
                 }
             }
@@ -1949,52 +2430,19 @@ public class AlcCanvas extends JPanel implements AlcConstants, MouseListener, Mo
             g2.dispose();
         }
 
-        /** Draw a transparent gradient to the PDF */
-        private void drawTransparentGradient(PdfContentByte cb, Graphics2D g2, GradientPaint gp, GeneralPath path, boolean fill) {
-
-            //Create template
-            PdfTemplate template = cb.createTemplate(width, height);
-
-            //Prepare transparent group
-            PdfTransparencyGroup transGroup = new PdfTransparencyGroup();
-            transGroup.put(PdfName.CS, PdfName.DEVICERGB);
-            transGroup.setIsolated(true);
-            transGroup.setKnockout(false);
-            template.setGroup(transGroup);
-
-            //Prepare graphic state
-            PdfGState gState = new PdfGState();
-            PdfDictionary maskDict = new PdfDictionary();
-            maskDict.put(PdfName.TYPE, PdfName.MASK);
-            maskDict.put(PdfName.S, new PdfName("Luminosity"));
-            maskDict.put(new PdfName("G"), template.getIndirectReference());
-            gState.put(PdfName.SMASK, maskDict);
-            cb.setGState(gState);
-
-            // Create a gradient to use as the mask
-            // Also flip the Y location
-            PdfShading shading = PdfShading.simpleAxial(
-                    cb.getPdfWriter(),
-                    (float) gp.getPoint1().getX(),
-                    (float) (height - gp.getPoint1().getY()),
-                    (float) gp.getPoint2().getX(),
-                    (float) (height - gp.getPoint2().getY()),
-                    Color.WHITE,
-                    Color.BLACK,
-                    true,
-                    true);
-            template.paintShading(shading);
-
-            // Draw the actual color under the mask
-            g2.setColor(gp.getColor1());
-            // SOLID
-            if (fill) {
-                g2.fill(path);
-            // LINE    
-            } else {
-                g2.draw(path);
+        /** Draw the page of the loaded session PDF, if any
+         * @param g2    Graphics to draw the page on
+         */
+        void drawSessionPage(Graphics2D g2) {
+            // PDF READER
+            if (Alchemy.session.pdfReadPage != null) {
+                AlcUnderlayCache.drawPage(g2, Alchemy.session.pdfReadPage, Alchemy.canvas.getBackgroundColor());
             }
+        }
 
+        /** Draw a transparent gradient to the PDF */
+        private void drawTransparentGradient(PdfContentByte cb, Graphics2D g2, GradientPaint gp, Shape path, boolean fill) {
+            AlcCanvasSnapshot.drawTransparentGradient(cb, g2, gp, path, fill, Alchemy.canvas.viewTransform, width, height);
         }
     }
 }
@@ -0,0 +1,133 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * The layer stack composited by the canvas <br>
+ * From the bottom up the canvas is drawn as: the session PDF underlay,
+ * the background image, the committed shapes, the live create and affect shapes, then the guides.
+ * When drawing under, the committed shapes move above the live shapes.
+ * <p>
+ * The underlay, image and committed shape layers each keep their own cache,
+ * so a change to one layer never re-renders the others.
+ * The underlay keeps a raster per session page in an {@link AlcUnderlayCache},
+ * the image layer keeps a single raster with a dirty flag.
+ * The live shapes and guides change with every event and are drawn straight to the screen.
+ */
+class AlcCanvasLayers implements AlcConstants {
+
+    /** The canvas this stack renders */
+    private final AlcCanvas canvas;
+    /** The committed shapes, cached in tiles */
+    private final AlcCanvasTiles shapeTiles;
+    /** The session pages, cached per page and scale */
+    private final AlcUnderlayCache underlayCache = new AlcUnderlayCache();
+    /** Cached raster of the image layer */
+    private BufferedImage imageRaster;
+    /** Dirty flag of the image layer */
+    private boolean imageDirty = true;
+    /** The view transform the image layer was last rendered with */
+    private AffineTransform imageTransform;
+    /** The image the image layer was last rendered from */
+    private Image renderedImage;
+
+    AlcCanvasLayers(AlcCanvas canvas) {
+        this.canvas = canvas;
+        this.shapeTiles = new AlcCanvasTiles(canvas);
+    }
+
+    /** Get the tiled raster of the committed shapes
+     * @return  The committed shape tiles
+     */
+    AlcCanvasTiles getShapeTiles() {
+        return shapeTiles;
+    }
+
+    /** Drop the cached session pages so they are rendered again the next time they are drawn */
+    void markUnderlayDirty() {
+        underlayCache.clear();
+    }
+
+    /** Mark the image layer as dirty so it is re-rendered the next time it is drawn */
+    void markImageDirty() {
+        imageDirty = true;
+    }
+
+    /** Draw the session page under the canvas, if there is one
+     *
+     * @param g2            Graphics of the canvas, without the view transform
+     * @param transform     The document to view transform of the canvas
+     * @param width         Width of the canvas
+     * @param height        Height of the canvas
+     */
+    void drawUnderlay(Graphics2D g2, AffineTransform transform, int width, int height) {
+        AlcSession session = Alchemy.session;
+        if (session.pdfReadPage == null || width <= 0 || height <= 0) {
+            return;
+        }
+        underlayCache.draw(g2, session.getReadFile(), session.getReadPageNumber(), session.pdfReadPage,
+                session.getReadPageCount(), transform, width, height);
+    }
+
+    /** Get the up to date raster of the image layer
+     *
+     * @param transform     The document to view transform of the canvas
+     * @param width         Width of the canvas
+     * @param height        Height of the canvas
+     * @return              The layer raster, or null if the layer is empty
+     */
+    Image getImageLayer(AffineTransform transform, int width, int height) {
+        if (!canvas.isImageDisplayEnabled() || width <= 0 || height <= 0) {
+            return null;
+        }
+        Image image = canvas.getImage();
+        if (image == null) {
+            return null;
+        }
+        BufferedImage raster = imageRaster;
+        // Re-render when the layer content or the view has changed
+        if (imageDirty || raster == null || raster.getWidth() != width || raster.getHeight() != height ||
+                image != renderedImage || !transform.equals(imageTransform)) {
+
+            if (raster == null || raster.getWidth() != width || raster.getHeight() != height) {
+                GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+                raster = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+                imageRaster = raster;
+            }
+            Graphics2D g2 = raster.createGraphics();
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, width, height);
+            g2.setComposite(AlphaComposite.SrcOver);
+            g2.transform(transform);
+            Point p = canvas.getImageLocation();
+            g2.drawImage(image, p.x, p.y, null);
+            g2.dispose();
+
+            imageDirty = false;
+            renderedImage = image;
+            imageTransform = new AffineTransform(transform);
+        }
+        return raster;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Renders the committed shapes into a back buffer on a background thread <br>
+ * The shapes are copied into an immutable snapshot on the Swing thread,
+ * rendered off the Swing thread, then handed back to the Swing thread
+ * to be swapped in as the new canvas image.
+ * The snapshot shares the untransformed path of each shape, any pending transform
+ * is only applied on the render thread.
+ * Each request cancels any render still in progress.
+ */
+class AlcCanvasRenderer implements AlcConstants {
+
+    /** How many shapes to draw between checks for a newer request */
+    private static final int CANCEL_CHECK_INTERVAL = 64;
+    /** Single background thread used for rendering */
+    private final ExecutorService executor;
+    /** Incremented with every request, a render is stale once this has moved on */
+    private final AtomicInteger generation = new AtomicInteger();
+    /** Sprites for drawing shape instances */
+    private final AlcSpriteCache sprites;
+
+    /** Receives the finished back buffer on the Swing thread */
+    interface Listener {
+
+        /** Called when a render has finished and has not been cancelled
+         * @param image         The rendered back buffer
+         * @param generation    The generation returned when the render was requested
+         */
+        void rendered(BufferedImage image, int generation);
+    }
+
+    /**
+     * @param sprites   Sprites for drawing shape instances
+     */
+    AlcCanvasRenderer(AlcSpriteCache sprites) {
+        this.sprites = sprites;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Alchemy Canvas Renderer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
+    /** Request a render of the given shapes, cancelling any render in progress.
+     *  Must be called on the Swing thread.
+     *
+     * @param shapes        The shapes to render, copied before this method returns
+     * @param transform     The document to view transform
+     * @param smoothing     Antialiasing on or off
+     * @param width         Width of the back buffer
+     * @param height        Height of the back buffer
+     * @param listener      Called on the Swing thread with the finished image
+     * @return              The generation of this request
+     */
+    int render(List<AlcShape> shapes, AffineTransform transform, final boolean smoothing,
+            final int width, final int height, final Listener listener) {
+
+        final int requestGeneration = generation.incrementAndGet();
+        // Only copy the shapes that fall within the visible area
+        Rectangle visible = getVisibleArea(transform, width, height);
+        ArrayList<Snapshot> visibleShapes = new ArrayList<Snapshot>(shapes.size());
+        for (int i = 0; i < shapes.size(); i++) {
+            AlcShape shape = shapes.get(i);
+            if (visible == null || shape.intersectsPaintBounds(visible)) {
+                visibleShapes.add(new Snapshot(shape));
+            }
+        }
+        final Snapshot[] snapshot = visibleShapes.toArray(new Snapshot[visibleShapes.size()]);
+        final AffineTransform viewTransform = new AffineTransform(transform);
+
+        executor.execute(new Runnable() {
+
+            public void run() {
+                final BufferedImage image = draw(snapshot, viewTransform, smoothing, width, height, requestGeneration);
+                if (image != null) {
+                    SwingUtilities.invokeLater(new Runnable() {
+
+                        public void run() {
+                            // Drop the frame if a newer one has been requested since
+                            if (isCurrent(requestGeneration)) {
+                                listener.rendered(image, requestGeneration);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+        return requestGeneration;
+    }
+
+    /** Cancel any render in progress */
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /** Check if a render is the most recent request
+     * @param requestGeneration     The generation of the render
+     * @return                      True if no newer render has been requested or cancelled
+     */
+    boolean isCurrent(int requestGeneration) {
+        return generation.get() == requestGeneration;
+    }
+
+    /** Get the area of the document visible in the back buffer
+     * @return  The visible area in document coordinates, or null if it can not be calculated
+     */
+    private static Rectangle getVisibleArea(AffineTransform transform, int width, int height) {
+        try {
+            return transform.createInverse().createTransformedShape(new Rectangle(0, 0, width, height)).getBounds();
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+
+    /** Draw the snapshot into a new image - called on the render thread
+     * @return  The image or null if cancelled
+     */
+    private BufferedImage draw(Snapshot[] snapshot, AffineTransform transform, boolean smoothing, int width, int height, int requestGeneration) {
+        if (!isCurrent(requestGeneration)) {
+            return null;
+        }
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        BufferedImage image = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        Graphics2D g2 = image.createGraphics();
+        if (smoothing) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        g2.transform(transform);
+        for (int i = 0; i < snapshot.length; i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && !isCurrent(requestGeneration)) {
+                g2.dispose();
+                return null;
+            }
+            Snapshot shape = snapshot[i];
+            // Instances are drawn from a sprite where possible
+            if (shape.instance && shape.paint instanceof Color &&
+                    sprites.draw(g2, shape.geometry, shape.transform, (Color) shape.paint, shape.style, shape.lineWidth)) {
+                continue;
+            }
+            g2.setPaint(shape.paint);
+            // LINE
+            if (shape.style == STYLE_STROKE) {
+                g2.setStroke(new BasicStroke(shape.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+                g2.draw(shape.path);
+            // SOLID
+            } else {
+                g2.fill(shape.path);
+            }
+        }
+        g2.dispose();
+        return image;
+    }
+
+    /** An immutable copy of everything needed to draw a shape */
+    private static class Snapshot {
+
+        /** The path with the transform applied as it is drawn */
+        final Shape path;
+        /** The untransformed path, shared rather than copied */
+        final AlcGeometry geometry;
+        /** A copy of the transform not yet applied to the path, null if there is none */
+        final AffineTransform transform;
+        final Paint paint;
+        final int style;
+        final float lineWidth;
+        /** If the shape is an instance, drawn from a sprite where possible */
+        final boolean instance;
+
+        Snapshot(AlcShape shape) {
+            this.geometry = shape.getUntransformedGeometry().share();
+            AffineTransform pendingTransform = shape.getPendingTransform();
+            if (pendingTransform == null) {
+                this.transform = null;
+                this.path = geometry;
+            } else {
+                this.transform = new AffineTransform(pendingTransform);
+                this.path = new TransformedPath(geometry, transform);
+            }
+            this.instance = shape instanceof AlcShapeInstance;
+            this.paint = shape.getPaint();
+            this.style = shape.style;
+            this.lineWidth = shape.lineWidth;
+        }
+    }
+
+    /** A path seen through a transform, without copying its points.
+     *  The transform is applied to the points as they are iterated, so the stroke is not transformed */
+    private static class TransformedPath implements Shape {
+
+        private final AlcGeometry geometry;
+        private final AffineTransform transform;
+
+        TransformedPath(AlcGeometry geometry, AffineTransform transform) {
+            this.geometry = geometry;
+            this.transform = transform;
+        }
+
+        public Rectangle getBounds() {
+            return getBounds2D().getBounds();
+        }
+
+        public Rectangle2D getBounds2D() {
+            return geometry.getBounds2D(transform);
+        }
+
+        public boolean contains(double x, double y) {
+            return Path2D.contains(getPathIterator(null), x, y);
+        }
+
+        public boolean contains(Point2D p) {
+            return Path2D.contains(getPathIterator(null), p);
+        }
+
+        public boolean intersects(double x, double y, double w, double h) {
+            return Path2D.intersects(getPathIterator(null), x, y, w, h);
+        }
+
+        public boolean intersects(Rectangle2D r) {
+            return Path2D.intersects(getPathIterator(null), r);
+        }
+
+        public boolean contains(double x, double y, double w, double h) {
+            return Path2D.contains(getPathIterator(null), x, y, w, h);
+        }
+
+        public boolean contains(Rectangle2D r) {
+            return Path2D.contains(getPathIterator(null), r);
+        }
+
+        public PathIterator getPathIterator(AffineTransform at) {
+            if (at == null) {
+                return geometry.getPathIterator(transform);
+            }
+            AffineTransform combined = new AffineTransform(transform);
+            combined.preConcatenate(at);
+            return geometry.getPathIterator(combined);
+        }
+
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return new FlatteningPathIterator(getPathIterator(at), flatness);
+        }
+    }
+}
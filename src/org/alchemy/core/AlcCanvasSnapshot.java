@@ -0,0 +1,243 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.lowagie.text.pdf.*;
+import com.sun.pdfview.PDFPage;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+
+/**
+ * An immutable copy of everything drawn on the canvas, without the guides <br>
+ * Taken on the Swing thread, it can then be drawn on another thread
+ * while the canvas carries on changing, as when recording session pages.
+ * Paths are shared with the shapes rather than copied,
+ * the shapes make their own copy before they are next changed.
+ */
+class AlcCanvasSnapshot implements AlcConstants {
+
+    /** Size of the canvas */
+    private final int width,  height;
+    /** The visible area of the canvas */
+    private final Rectangle bounds;
+    private final Color bgColor;
+    private final boolean smoothing;
+    /** The document to view transform */
+    private final AffineTransform viewTransform;
+    /** Page of the loaded session PDF, or null */
+    private final PDFPage sessionPage;
+    /** The canvas image and its location, or null */
+    private final Image image;
+    private final Point imageLocation;
+    /** The shapes of all of the lists, in the order they are drawn */
+    private final Shape[] paths;
+    private final Paint[] paints;
+    private final int[] styles;
+    private final float[] lineWidths;
+
+    /** Copy the canvas - must be called on the Swing thread
+     * @param canvas    The canvas to copy
+     */
+    AlcCanvasSnapshot(AlcCanvas canvas) {
+        width = canvas.getWidth();
+        height = canvas.getHeight();
+        bounds = canvas.getVisibleRect();
+        bgColor = canvas.getBackgroundColor();
+        smoothing = canvas.smoothing;
+        viewTransform = canvas.getViewTransform();
+        sessionPage = Alchemy.session.pdfReadPage;
+        if (canvas.isImageDisplayEnabled() && canvas.isImageSet()) {
+            image = canvas.getImage();
+            imageLocation = new Point(canvas.getImageLocation());
+        } else {
+            image = null;
+            imageLocation = null;
+        }
+
+        ArrayList<AlcShape> shapes = new ArrayList<AlcShape>();
+        for (int j = 0; j < canvas.fullShapeList.size(); j++) {
+            shapes.addAll(canvas.fullShapeList.get(j));
+        }
+        int count = shapes.size();
+        paths = new Shape[count];
+        paints = new Paint[count];
+        styles = new int[count];
+        lineWidths = new float[count];
+        for (int i = 0; i < count; i++) {
+            AlcShape shape = shapes.get(i);
+            paths[i] = shape.sharePaintGeometry();
+            paints[i] = shape.getPaint();
+            styles[i] = shape.style;
+            lineWidths[i] = shape.lineWidth;
+        }
+    }
+
+    /** Create a snapshot of shapes recorded earlier, as read back from a session log.
+     *  There is no session page or image, and the shapes are drawn smoothed
+     *
+     * @param width         Width of the canvas
+     * @param height        Height of the canvas
+     * @param bounds        The visible area of the canvas
+     * @param bgColor       Background color
+     * @param viewTransform The document to view transform
+     * @param paths         Path of each shape, drawn first to last
+     * @param paints        Paint of each shape
+     * @param styles        Style of each shape
+     * @param lineWidths    Line width of each shape
+     */
+    AlcCanvasSnapshot(int width, int height, Rectangle bounds, Color bgColor, AffineTransform viewTransform,
+            Shape[] paths, Paint[] paints, int[] styles, float[] lineWidths) {
+        this.width = width;
+        this.height = height;
+        this.bounds = bounds;
+        this.bgColor = bgColor;
+        this.smoothing = true;
+        this.viewTransform = viewTransform;
+        this.sessionPage = null;
+        this.image = null;
+        this.imageLocation = null;
+        this.paths = paths;
+        this.paints = paints;
+        this.styles = styles;
+        this.lineWidths = lineWidths;
+    }
+
+    /** Get the visible area of the canvas when the snapshot was taken
+     * @return  A copy of the visible area
+     */
+    Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    /** Draw the snapshot, as the canvas draws itself
+     * @param g2    Graphics to draw on, disposed of once drawn
+     */
+    void paint(Graphics2D g2) {
+
+        // Get the PDF Content Byte
+        PdfContentByte cb = null;
+        if (g2 instanceof PdfGraphics2D) {
+            cb = ((PdfGraphics2D) g2).getContent();
+        }
+
+        if (smoothing) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        } else {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        }
+
+        // Paint background without transparency
+        g2.setColor(new Color(bgColor.getRed(), bgColor.getGreen(), bgColor.getBlue()));
+        g2.fillRect(0, 0, width, height);
+
+        // Everything else is drawn in document coordinates
+        g2.transform(viewTransform);
+
+        if (sessionPage != null) {
+            AlcUnderlayCache.drawPage(g2, sessionPage, bgColor);
+        }
+        if (image != null) {
+            g2.drawImage(image, imageLocation.x, imageLocation.y, null);
+        }
+
+        for (int i = 0; i < paths.length; i++) {
+            Paint paint = paints[i];
+            boolean fill = styles[i] != STYLE_STROKE;
+            if (!fill) {
+                g2.setStroke(new BasicStroke(lineWidths[i], BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+            }
+            // If this shape is a gradient and we are making a PDF
+            if (paint instanceof GradientPaint && cb != null) {
+                drawTransparentGradient(cb, g2, (GradientPaint) paint, paths[i], fill, viewTransform, width, height);
+            } else {
+                g2.setPaint(paint);
+                if (fill) {
+                    g2.fill(paths[i]);
+                } else {
+                    g2.draw(paths[i]);
+                }
+            }
+        }
+
+        g2.dispose();
+    }
+
+    /** Draw a transparent gradient to a PDF
+     *
+     * @param cb            Content of the PDF
+     * @param g2            PDF graphics drawing in document coordinates
+     * @param gp            The gradient
+     * @param path          The shape to draw
+     * @param fill          Fill the shape, otherwise draw its outline
+     * @param viewTransform The document to view transform
+     * @param width         Width of the page
+     * @param height        Height of the page
+     */
+    static void drawTransparentGradient(PdfContentByte cb, Graphics2D g2, GradientPaint gp, Shape path, boolean fill,
+            AffineTransform viewTransform, int width, int height) {
+
+        //Create template
+        PdfTemplate template = cb.createTemplate(width, height);
+
+        //Prepare transparent group
+        PdfTransparencyGroup transGroup = new PdfTransparencyGroup();
+        transGroup.put(PdfName.CS, PdfName.DEVICERGB);
+        transGroup.setIsolated(true);
+        transGroup.setKnockout(false);
+        template.setGroup(transGroup);
+
+        //Prepare graphic state
+        PdfGState gState = new PdfGState();
+        PdfDictionary maskDict = new PdfDictionary();
+        maskDict.put(PdfName.TYPE, PdfName.MASK);
+        maskDict.put(PdfName.S, new PdfName("Luminosity"));
+        maskDict.put(new PdfName("G"), template.getIndirectReference());
+        gState.put(PdfName.SMASK, maskDict);
+        cb.setGState(gState);
+
+        // Create a gradient to use as the mask
+        // Map the gradient into the view then flip the Y location
+        Point2D p1 = viewTransform.transform(gp.getPoint1(), null);
+        Point2D p2 = viewTransform.transform(gp.getPoint2(), null);
+        PdfShading shading = PdfShading.simpleAxial(
+                cb.getPdfWriter(),
+                (float) p1.getX(),
+                (float) (height - p1.getY()),
+                (float) p2.getX(),
+                (float) (height - p2.getY()),
+                Color.WHITE,
+                Color.BLACK,
+                true,
+                true);
+        template.paintShading(shading);
+
+        // Draw the actual color under the mask
+        g2.setColor(gp.getColor1());
+        // SOLID
+        if (fill) {
+            g2.fill(path);
+        // LINE
+        } else {
+            g2.draw(path);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * Tiled backing store for the canvas image <br>
+ * Holds a raster of the committed shapes split into a grid of tiles.
+ * Changed areas of the canvas mark tiles as dirty and only those tiles
+ * are re-rendered, so a small edit costs work proportional to its area
+ * rather than to the whole drawing.
+ */
+class AlcCanvasTiles implements AlcConstants, AlcCanvasRenderer.Listener {
+
+    /** Width and height of a single tile in pixels */
+    static final int TILE_SIZE = 128;
+    /** The canvas this store renders */
+    private final AlcCanvas canvas;
+    /** The transparent backing image shared by all tiles */
+    private BufferedImage image;
+    /** Number of tile columns and rows */
+    private int columns,  rows;
+    /** Dirty flag for each tile, stored row by row */
+    private boolean[] dirty;
+    /** Shortcut flag when every tile needs rendering */
+    private boolean allDirty = true;
+    /** Background renderer used for full redraws */
+    private final AlcCanvasRenderer renderer;
+    /** Generation of the background render in progress, or -1 if none */
+    private int pendingGeneration = -1;
+    /** Tiles changed since the snapshot for the background render was taken */
+    private boolean[] changedSinceSnapshot;
+    /** Tiles last rendered at draft quality, stored row by row */
+    private boolean[] draft;
+
+    AlcCanvasTiles(AlcCanvas canvas) {
+        this.canvas = canvas;
+        this.renderer = new AlcCanvasRenderer(canvas.spriteCache);
+    }
+
+    /** Mark every tile as dirty - the next render will redraw the whole canvas */
+    void markAllDirty() {
+        allDirty = true;
+        if (draft != null) {
+            for (int i = 0; i < draft.length; i++) {
+                draft[i] = false;
+            }
+        }
+        // Any background render is now out of date
+        if (pendingGeneration >= 0) {
+            renderer.cancel();
+            pendingGeneration = -1;
+        }
+    }
+
+    /** Mark the tiles covering the given area as dirty
+     * @param area  The area of the canvas that has changed
+     */
+    void markDirty(Rectangle area) {
+        if (area == null || area.isEmpty() || allDirty || dirty == null) {
+            return;
+        }
+        markTiles(area, dirty);
+        if (pendingGeneration >= 0) {
+            markTiles(area, changedSinceSnapshot);
+        }
+    }
+
+    /** Mark every tile rendered at draft quality as dirty
+     * @return  True if there were any draft tiles to refine
+     */
+    boolean refine() {
+        if (draft == null || allDirty) {
+            return false;
+        }
+        boolean refined = false;
+        for (int i = 0; i < draft.length; i++) {
+            if (draft[i]) {
+                draft[i] = false;
+                dirty[i] = true;
+                if (pendingGeneration >= 0) {
+                    changedSinceSnapshot[i] = true;
+                }
+                refined = true;
+            }
+        }
+        return refined;
+    }
+
+    /** Set the flag of each tile covering the given area
+     * @param area      The area of the canvas
+     * @param flags     The tile flags to set
+     */
+    private void markTiles(Rectangle area, boolean[] flags) {
+        int firstColumn = Math.max(0, area.x / TILE_SIZE);
+        int firstRow = Math.max(0, area.y / TILE_SIZE);
+        int lastColumn = Math.min(columns - 1, (area.x + area.width) / TILE_SIZE);
+        int lastRow = Math.min(rows - 1, (area.y + area.height) / TILE_SIZE);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                flags[row * columns + column] = true;
+            }
+        }
+    }
+
+    /** Re-render every tile on the background thread. <br>
+     *  The current image is kept on screen until the new one is ready,
+     *  at which point any tiles changed in the meantime are rendered on top.
+     *  If there is no image of the right size yet the render happens straight away.
+     *
+     * @param width         Width of the canvas
+     * @param height        Height of the canvas
+     * @param transform     The document to view transform of the canvas
+     * @return              The current backing image
+     */
+    Image renderInBackground(int width, int height, AffineTransform transform) {
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            markAllDirty();
+            return render(width, height);
+        }
+        allDirty = false;
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] = false;
+        }
+        changedSinceSnapshot = new boolean[dirty.length];
+        pendingGeneration = renderer.render(canvas.shapes, transform, canvas.smoothing, width, height, this);
+        return image;
+    }
+
+    /** Swap in a finished background render - called on the Swing thread */
+    public void rendered(BufferedImage newImage, int generation) {
+        if (generation != pendingGeneration) {
+            return;
+        }
+        pendingGeneration = -1;
+        // The canvas has been resized since the request, so start again
+        if (image == null || newImage.getWidth() != image.getWidth() || newImage.getHeight() != image.getHeight()) {
+            markAllDirty();
+        } else {
+            image = newImage;
+            // Bring the tiles changed since the snapshot up to date
+            for (int i = 0; i < dirty.length; i++) {
+                dirty[i] = changedSinceSnapshot[i];
+                // The background render is always full quality
+                draft[i] = draft[i] && changedSinceSnapshot[i];
+            }
+        }
+        changedSinceSnapshot = null;
+        canvas.canvasImageRendered();
+    }
+
+    /** Render the dirty tiles into the backing image
+     *
+     * @param width         Width of the canvas
+     * @param height        Height of the canvas
+     * @return              The backing image with all tiles up to date
+     */
+    Image render(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return image;
+        }
+        // Start from scratch if the size of the canvas has changed
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            image = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+            columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            dirty = new boolean[columns * rows];
+            draft = new boolean[columns * rows];
+            allDirty = true;
+        }
+
+        Shape clip = allDirty ? new Rectangle(0, 0, width, height) : getDirtyArea();
+        if (clip != null) {
+            Graphics2D g2 = image.createGraphics();
+            g2.setClip(clip);
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fill(clip);
+            g2.setComposite(AlphaComposite.SrcOver);
+            // The vector canvas disposes of the graphics when finished
+            canvas.vectorCanvas.committedOnly = true;
+            canvas.vectorCanvas.transparent = true;
+            canvas.vectorCanvas.paintComponent(g2);
+            canvas.vectorCanvas.transparent = false;
+            canvas.vectorCanvas.committedOnly = false;
+        }
+
+        boolean draftQuality = canvas.draftQuality;
+        for (int i = 0; i < dirty.length; i++) {
+            if (allDirty || dirty[i]) {
+                draft[i] = draftQuality;
+            }
+            dirty[i] = false;
+        }
+        allDirty = false;
+        return image;
+    }
+
+    /** Draw shapes directly on top of the backing image without re-rendering any tiles.
+     *  Used when new shapes are committed to the top of the canvas.
+     *  If the backing image is out of date it is rendered in full instead.
+     *
+     * @param newShapes     The shapes to draw, already added to the canvas shapes list
+     * @param transform     The document to view transform of the canvas
+     * @param width         Width of the canvas
+     * @param height        Height of the canvas
+     * @return              The backing image
+     */
+    Image append(ArrayList<AlcShape> newShapes, AffineTransform transform, int width, int height) {
+        if (image == null || allDirty || image.getWidth() != width || image.getHeight() != height) {
+            return render(width, height);
+        }
+        // The shapes are not in the snapshot being rendered, so redo their tiles once it arrives.
+        // Shapes drawn at draft quality are redone once drawing pauses
+        if (pendingGeneration >= 0 || canvas.draftQuality) {
+            for (int i = 0; i < newShapes.size(); i++) {
+                Rectangle area = transform.createTransformedShape(newShapes.get(i).getPaintBounds()).getBounds();
+                if (pendingGeneration >= 0) {
+                    markDirty(area);
+                }
+                if (canvas.draftQuality) {
+                    markTiles(area, draft);
+                }
+            }
+        }
+        Graphics2D g2 = image.createGraphics();
+        canvas.setScreenRenderingHints(g2);
+        g2.transform(transform);
+        for (int i = 0; i < newShapes.size(); i++) {
+            AlcShape shape = newShapes.get(i);
+            // Instances are drawn from a sprite where possible, except at draft quality
+            if (!canvas.draftQuality && canvas.spriteCache.draw(g2, shape)) {
+                continue;
+            }
+            g2.setPaint(canvas.getScreenPaint(shape));
+            // LINE
+            if (shape.style == STYLE_STROKE) {
+                g2.setStroke(canvas.getScreenStroke(shape));
+                g2.draw(shape.getPaintShape());
+            // SOLID
+            } else {
+                g2.fill(shape.getPaintShape());
+            }
+        }
+        g2.dispose();
+        return image;
+    }
+
+    /** Build a clipping path from the dirty tiles, merging runs of tiles along each row
+     * @return  The clipping path or null if there are no dirty tiles
+     */
+    private Shape getDirtyArea() {
+        GeneralPath area = null;
+        for (int row = 0; row < rows; row++) {
+            int column = 0;
+            while (column < columns) {
+                if (!dirty[row * columns + column]) {
+                    column++;
+                    continue;
+                }
+                int start = column;
+                while (column < columns && dirty[row * columns + column]) {
+                    column++;
+                }
+                if (area == null) {
+                    area = new GeneralPath(GeneralPath.WIND_NON_ZERO);
+                }
+                area.append(new Rectangle(start * TILE_SIZE, row * TILE_SIZE, (column - start) * TILE_SIZE, TILE_SIZE), false);
+            }
+        }
+        return area;
+    }
+}
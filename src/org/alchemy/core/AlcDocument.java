@@ -0,0 +1,788 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.geom.AffineTransform;
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * A drawing saved in Alchemy's own .alc format <br>
+ * Every shape is kept as it is on the canvas: its path, spine and widths,
+ * color, alpha, style, line width, gradient and any transform not yet applied,
+ * so a document opens exactly as it was saved.
+ * <p>
+ * Shapes are packed into chunks of a few hundred shapes, each a block of int headers,
+ * then the segment types, then a single run of floats holding every coordinate,
+ * then the transforms not yet applied. Where one chunk ends is decided by the shapes
+ * themselves rather than by their position in the list, so adding or removing a shape
+ * only changes the chunk it is in and the runs of shapes around it keep the same chunks.
+ * An index at the end of the file lists the chunks. Opening a document maps the file
+ * into memory, reads the index and checks each chunk against its checksum without
+ * decoding it, each chunk is decoded the first time one of its shapes is asked for.
+ * <p>
+ * Saving again to the same file keeps the chunks that have not changed and
+ * appends only the ones that have, followed by a new index. The header is only
+ * pointed at the new index once everything else is on disk, so a save cut short
+ * leaves the last complete save readable. The file is rewritten from scratch
+ * once most of it is taken up by replaced chunks.
+ */
+class AlcDocument {
+
+    /** Extension of document files */
+    static final String EXTENSION = ".alc";
+    /** Marks the start of a document, 'ALCD' */
+    private static final int MAGIC = 0x414C4344;
+    private static final int VERSION = 1;
+    /** Size of the header, the magic, version and index offset */
+    private static final int HEADER_SIZE = 16;
+    /** Offset of the index offset within the header */
+    private static final int INDEX_POINTER = 8;
+    /** Fewest shapes in a chunk before a shape may end it, unless the chunk is full */
+    private static final int MIN_CHUNK_SHAPES = 16;
+    /** Average number of shapes in a chunk of small shapes */
+    private static final int TARGET_CHUNK_SHAPES = 256;
+    /** Average number of floats in a chunk of large shapes */
+    private static final int TARGET_CHUNK_FLOATS = 16 * 1024;
+    /** Most shapes in a chunk */
+    private static final int CHUNK_SHAPES = 1024;
+    /** Most floats in a chunk, unless a single shape needs more */
+    private static final int CHUNK_FLOATS = 64 * 1024;
+    /** Number of ints in the header of each shape */
+    private static final int SHAPE_INTS = 11;
+    /** Size of each chunk entry in the index, offset, length, shape count and checksum */
+    private static final int ENTRY_SIZE = 20;
+    /** Space used by replaced chunks allowed before the file is rewritten, in bytes */
+    private static final long MIN_GARBAGE = 64 * 1024;
+    // Shape flags
+    private static final int FLAG_CLOSED = 1;
+    private static final int FLAG_PEN = 2;
+    private static final int FLAG_SPINE = 4;
+    private static final int FLAG_TRANSFORM = 8;
+    private static final int FLAG_GRADIENT = 16;
+    private static final int FLAG_CYCLIC = 32;
+    /** The document file */
+    private final File file;
+    /** Chunks in the file as last saved or opened, in the order drawn */
+    private Chunk[] chunks = new Chunk[0];
+    /** Length and modification time of the file when last saved or opened,
+     *  to tell if something else has changed it since */
+    private long fileLength = -1,  fileModified = -1;
+    /** Background color of the document */
+    private Color bgColor = Color.WHITE;
+    /** The mapped file, while shapes are still to be decoded */
+    private ByteBuffer mapped;
+    /** The decoded shapes of each chunk, null until decoded */
+    private AlcShape[][] decoded;
+
+    /**
+     * Create a document, nothing is written until it is saved
+     * @param file  The document file
+     */
+    AlcDocument(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the document file
+     * @return  The file the document is saved to
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the background color
+     * @return  The background color when the document was saved or opened
+     */
+    Color getBackgroundColor() {
+        return bgColor;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SAVING
+    //////////////////////////////////////////////////////////////
+    /**
+     * Save shapes to the document - must be called on the Swing thread.
+     * Only the chunks that have changed since the document was last saved or opened are written
+     * @param shapes    The shapes, in the order they are drawn
+     * @param bgColor   The background color
+     * @return          True if the document was saved, otherwise false
+     */
+    boolean save(List<AlcShape> shapes, Color bgColor) {
+        // Pack the shapes into chunks
+        ArrayList<Chunk> packed = new ArrayList<Chunk>();
+        ArrayList<AlcShape.State> states = new ArrayList<AlcShape.State>(TARGET_CHUNK_SHAPES);
+        ArrayList<Boolean> pens = new ArrayList<Boolean>(TARGET_CHUNK_SHAPES);
+        int floats = 0;
+        for (int i = 0; i < shapes.size(); i++) {
+            AlcShape shape = shapes.get(i);
+            AlcShape.State state = shape.getState();
+            int shapeFloats = getFloatCount(state);
+            if (!states.isEmpty() && floats + shapeFloats > CHUNK_FLOATS) {
+                packed.add(new Chunk(encodeShapes(states, pens), states.size()));
+                states.clear();
+                pens.clear();
+                floats = 0;
+            }
+            states.add(state);
+            pens.add(shape.isPenShape());
+            floats += shapeFloats;
+            if (states.size() == CHUNK_SHAPES || states.size() >= MIN_CHUNK_SHAPES && endsChunk(state, shapeFloats)) {
+                packed.add(new Chunk(encodeShapes(states, pens), states.size()));
+                states.clear();
+                pens.clear();
+                floats = 0;
+            }
+        }
+        if (!states.isEmpty()) {
+            packed.add(new Chunk(encodeShapes(states, pens), states.size()));
+        }
+
+        try {
+            release();
+            if (isUnchangedOnDisk() && !needsCompacting(packed)) {
+                append(packed, bgColor);
+            } else {
+                rewrite(packed, bgColor);
+            }
+            this.bgColor = bgColor;
+            return true;
+        } catch (IOException ex) {
+            System.err.println(ex);
+            return false;
+        }
+    }
+
+    /** Check if a shape ends the chunk it is in, decided only by the shape itself.
+     *  Small shapes end a chunk one time in {@link #TARGET_CHUNK_SHAPES},
+     *  large shapes more often so chunks hold about {@link #TARGET_CHUNK_FLOATS} floats
+     */
+    private static boolean endsChunk(AlcShape.State state, int shapeFloats) {
+        long hash = fingerprint(state);
+        return (hash & 0xFFFFFFFFL) % TARGET_CHUNK_SHAPES == 0 || (hash >>> 32) % TARGET_CHUNK_FLOATS < shapeFloats;
+    }
+
+    /** Get a hash of a shape from its style and a few of its points, without visiting every point */
+    private static long fingerprint(AlcShape.State state) {
+        AlcGeometry path = state.path;
+        int coords = path.getCoordCount();
+        long hash = mix(state.color.getRGB() * 31L + state.alpha);
+        hash = mix(hash ^ (state.style * 31L + Float.floatToIntBits(state.lineWidth)));
+        hash = mix(hash ^ ((long) path.getSegmentCount() << 32 | coords));
+        if (coords > 0) {
+            hash = mix(hash ^ ((long) Float.floatToIntBits(path.getCoord(0)) << 32 | Float.floatToIntBits(path.getCoord(coords - 1))));
+            hash = mix(hash ^ Float.floatToIntBits(path.getCoord(coords / 2)));
+        }
+        return hash;
+    }
+
+    /** Spread the bits of a hash, the finalizer of SplitMix64 */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /** Check the file is as it was last saved or opened, so chunks in it can be kept */
+    private boolean isUnchangedOnDisk() {
+        return chunks.length > 0 && file.exists() && file.length() == fileLength && file.lastModified() == fileModified;
+    }
+
+    /** Check if appending the chunks would leave the file mostly replaced chunks */
+    private boolean needsCompacting(ArrayList<Chunk> packed) {
+        HashMap<Long, Chunk> existing = getExistingChunks();
+        long live = HEADER_SIZE;
+        long appended = 0;
+        for (int i = 0; i < packed.size(); i++) {
+            Chunk chunk = packed.get(i);
+            live += chunk.length;
+            if (!existing.containsKey(chunk.getKey())) {
+                appended += chunk.length;
+            }
+        }
+        long garbage = fileLength + appended - live;
+        return garbage > MIN_GARBAGE && garbage > live;
+    }
+
+    /** Get the chunks already in the file, by their checksum and length */
+    private HashMap<Long, Chunk> getExistingChunks() {
+        HashMap<Long, Chunk> existing = new HashMap<Long, Chunk>(chunks.length * 2);
+        for (int i = 0; i < chunks.length; i++) {
+            existing.put(chunks[i].getKey(), chunks[i]);
+        }
+        return existing;
+    }
+
+    /** Append the changed chunks and a new index to the file, then point the header at the index */
+    private void append(ArrayList<Chunk> packed, Color bgColor) throws IOException {
+        HashMap<Long, Chunk> existing = getExistingChunks();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long position = channel.size();
+            for (int i = 0; i < packed.size(); i++) {
+                Chunk chunk = packed.get(i);
+                Chunk old = existing.get(chunk.getKey());
+                // A matching checksum is only a hint, the chunk is kept if the bytes on disk are the same
+                if (old != null && isOnDisk(channel, old, chunk)) {
+                    chunk.offset = old.offset;
+                } else {
+                    chunk.offset = position;
+                    position += writeFully(channel, ByteBuffer.wrap(chunk.data), position);
+                }
+            }
+            long indexOffset = position;
+            writeFully(channel, createIndex(packed, bgColor), indexOffset);
+            // Everything the new index points to must be on disk before the header points to it
+            channel.force(false);
+            ByteBuffer pointer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            pointer.putLong(0, indexOffset);
+            writeFully(channel, pointer, INDEX_POINTER);
+            channel.force(false);
+        } finally {
+            raf.close();
+        }
+        saved(packed);
+    }
+
+    /** Write the whole document to a new file, then replace the old one with it */
+    private void rewrite(ArrayList<Chunk> packed, Color bgColor) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+            long position = HEADER_SIZE;
+            for (int i = 0; i < packed.size(); i++) {
+                Chunk chunk = packed.get(i);
+                chunk.offset = position;
+                position += writeFully(channel, ByteBuffer.wrap(chunk.data), position);
+            }
+            writeFully(channel, createIndex(packed, bgColor), position);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(position);
+            header.flip();
+            writeFully(channel, header, 0);
+            channel.force(false);
+        } finally {
+            raf.close();
+        }
+        // Atomic, so a crash leaves either the old document or the new one
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+        saved(packed);
+    }
+
+    /** Decode the chunks not yet decoded, then unmap the file.
+     *  Windows will not replace or extend a file while it is mapped
+     */
+    private void release() {
+        if (mapped == null) {
+            return;
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            if (decoded[i] == null) {
+                decoded[i] = decode(chunks[i]);
+            }
+        }
+        ByteBuffer buffer = mapped;
+        mapped = null;
+        unmap(buffer);
+    }
+
+    /** Unmap a buffer straight away rather than when it is garbage collected, where the platform allows.
+     *  Nothing may read the buffer afterwards
+     */
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception ex) {
+            // Left for the garbage collector to unmap
+        }
+    }
+
+    /** Remember the chunks now in the file, so the next save can keep them */
+    private void saved(ArrayList<Chunk> packed) {
+        chunks = packed.toArray(new Chunk[packed.size()]);
+        for (int i = 0; i < chunks.length; i++) {
+            // Only the checksum is needed to find the unchanged chunks
+            chunks[i].data = null;
+        }
+        fileLength = file.length();
+        fileModified = file.lastModified();
+        // The chunks no longer match the shapes decoded from the file when it was opened
+        mapped = null;
+        decoded = null;
+    }
+
+    /** Check if a chunk already in the file holds exactly the bytes of a new chunk */
+    private static boolean isOnDisk(FileChannel channel, Chunk old, Chunk chunk) throws IOException {
+        if (old.length != chunk.length) {
+            return false;
+        }
+        ByteBuffer stored = ByteBuffer.allocate(old.length);
+        long position = old.offset;
+        while (stored.hasRemaining()) {
+            int read = channel.read(stored, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return Arrays.equals(stored.array(), chunk.data);
+    }
+
+    /** Write a whole buffer at a position
+     * @return  The number of bytes written
+     */
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return length;
+    }
+
+    /** Create the index listing the chunks, followed by its own checksum */
+    private static ByteBuffer createIndex(ArrayList<Chunk> packed, Color bgColor) {
+        ByteBuffer index = ByteBuffer.allocate(8 + packed.size() * ENTRY_SIZE + 4).order(ByteOrder.LITTLE_ENDIAN);
+        index.putInt(bgColor.getRGB());
+        index.putInt(packed.size());
+        for (int i = 0; i < packed.size(); i++) {
+            Chunk chunk = packed.get(i);
+            index.putLong(chunk.offset);
+            index.putInt(chunk.length);
+            index.putInt(chunk.shapeCount);
+            index.putInt(chunk.crc);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(index.array(), 0, index.position());
+        index.putInt((int) crc.getValue());
+        index.flip();
+        return index;
+    }
+
+    /** Get the number of floats a shape is stored with */
+    private static int getFloatCount(AlcShape.State state) {
+        int count = state.path.getCoordCount();
+        if (state.spine != null) {
+            count += state.spineSize * 3;
+        }
+        if (state.gradientPaint != null) {
+            count += 4;
+        }
+        return count;
+    }
+
+    /** Pack shapes as they are kept in a chunk: the shape headers, the segment types, the floats,
+     *  then the transforms, kept as doubles so they come back exactly
+     * @param states    The state of each shape
+     * @param pens      If each shape was drawn with a pen
+     * @return          The packed shapes
+     */
+    static byte[] encodeShapes(List<AlcShape.State> states, List<Boolean> pens) {
+        int count = states.size();
+        int numTypes = 0;
+        int numFloats = 0;
+        int numTransforms = 0;
+        for (int i = 0; i < count; i++) {
+            AlcShape.State state = states.get(i);
+            numTypes += state.path.getSegmentCount();
+            numFloats += getFloatCount(state);
+            if (state.pendingTransform != null) {
+                numTransforms++;
+            }
+        }
+        int floatsStart = getFloatsStart(count, numTypes);
+        int doublesStart = getDoublesStart(floatsStart, numFloats);
+        ByteBuffer buffer = ByteBuffer.allocate(doublesStart + numTransforms * 6 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(count);
+        IntBuffer headers = buffer.asIntBuffer();
+        buffer.position(4 + count * SHAPE_INTS * 4);
+        ByteBuffer types = buffer.slice();
+        buffer.position(floatsStart);
+        FloatBuffer floats = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        buffer.position(doublesStart);
+        DoubleBuffer doubles = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+        double[] matrix = new double[6];
+        for (int i = 0; i < count; i++) {
+            AlcShape.State state = states.get(i);
+            int flags = 0;
+            if (state.pathClosed) {
+                flags |= FLAG_CLOSED;
+            }
+            if (pens.get(i)) {
+                flags |= FLAG_PEN;
+            }
+            if (state.spine != null) {
+                flags |= FLAG_SPINE;
+            }
+            if (state.pendingTransform != null) {
+                flags |= FLAG_TRANSFORM;
+            }
+            GradientPaint gradient = state.gradientPaint;
+            if (gradient != null) {
+                flags |= FLAG_GRADIENT;
+                if (gradient.isCyclic()) {
+                    flags |= FLAG_CYCLIC;
+                }
+            }
+            headers.put(flags);
+            headers.put(state.style);
+            headers.put(state.color.getRGB());
+            headers.put(state.alpha);
+            headers.put(Float.floatToIntBits(state.lineWidth));
+            headers.put(state.path.getSegmentCount());
+            headers.put(state.path.getCoordCount());
+            headers.put(state.spineSize);
+            headers.put(state.totalPoints);
+            headers.put(gradient == null ? 0 : gradient.getColor1().getRGB());
+            headers.put(gradient == null ? 0 : gradient.getColor2().getRGB());
+
+            state.path.put(types, floats);
+            if (state.spine != null) {
+                floats.put(state.spine, 0, state.spineSize * 2);
+                floats.put(state.spineWidth, 0, state.spineSize);
+            }
+            if (state.pendingTransform != null) {
+                state.pendingTransform.getMatrix(matrix);
+                doubles.put(matrix);
+            }
+            if (gradient != null) {
+                floats.put((float) gradient.getPoint1().getX());
+                floats.put((float) gradient.getPoint1().getY());
+                floats.put((float) gradient.getPoint2().getX());
+                floats.put((float) gradient.getPoint2().getY());
+            }
+        }
+        return buffer.array();
+    }
+
+    /** Get where the floats start in a chunk, after the headers and the types padded to a whole float */
+    private static int getFloatsStart(int shapeCount, int numTypes) {
+        return 4 + shapeCount * SHAPE_INTS * 4 + ((numTypes + 3) & ~3);
+    }
+
+    /** Get where the doubles start in a chunk, after the floats padded to a whole double */
+    private static int getDoublesStart(int floatsStart, int numFloats) {
+        return (floatsStart + numFloats * 4 + 7) & ~7;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // OPENING
+    //////////////////////////////////////////////////////////////
+    /**
+     * Open a document, reading its index and checking its chunks
+     * @param file  The document file
+     * @return      The document, with its shapes decoded as they are used
+     * @throws IOException  If the file is not a document or is damaged
+     */
+    static AlcDocument open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer mapped;
+        try {
+            long size = raf.length();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not an Alchemy document: " + file.getPath());
+            }
+            // The mapping stays valid once the file is closed
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            raf.close();
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not an Alchemy document: " + file.getPath());
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException("Unsupported document version " + mapped.getInt(4) + ": " + file.getPath());
+        }
+
+        // Check the index before trusting it
+        long indexOffset = mapped.getLong(INDEX_POINTER);
+        int size = mapped.capacity();
+        if (indexOffset < HEADER_SIZE || indexOffset + 12 > size) {
+            throw new IOException("Damaged document index: " + file.getPath());
+        }
+        int index = (int) indexOffset;
+        int count = mapped.getInt(index + 4);
+        int indexLength = 8 + count * ENTRY_SIZE;
+        if (count < 0 || count > (size - index - 12) / ENTRY_SIZE) {
+            throw new IOException("Damaged document index: " + file.getPath());
+        }
+        byte[] indexBytes = new byte[indexLength];
+        ByteBuffer indexBuffer = mapped.duplicate();
+        indexBuffer.position(index);
+        indexBuffer.get(indexBytes);
+        CRC32 crc = new CRC32();
+        crc.update(indexBytes);
+        if ((int) crc.getValue() != mapped.getInt(index + indexLength)) {
+            throw new IOException("Damaged document index: " + file.getPath());
+        }
+
+        AlcDocument document = new AlcDocument(file);
+        document.bgColor = new Color(mapped.getInt(index));
+        document.chunks = new Chunk[count];
+        byte[] scratch = new byte[64 * 1024];
+        for (int i = 0; i < count; i++) {
+            int entry = index + 8 + i * ENTRY_SIZE;
+            long offset = mapped.getLong(entry);
+            int length = mapped.getInt(entry + 8);
+            int shapeCount = mapped.getInt(entry + 12);
+            int chunkCrc = mapped.getInt(entry + 16);
+            if (offset < HEADER_SIZE || length < 4 || offset + length > indexOffset || shapeCount < 0) {
+                throw new IOException("Damaged document index: " + file.getPath());
+            }
+            // Check the chunk now, so a damaged document is found before any shape is used
+            ByteBuffer data = mapped.duplicate();
+            data.position((int) offset);
+            data.limit((int) offset + length);
+            if (checksum(data, scratch) != chunkCrc || mapped.getInt((int) offset) != shapeCount) {
+                throw new IOException("Damaged document chunk at " + offset + ": " + file.getPath());
+            }
+            Chunk chunk = new Chunk(offset, length, shapeCount, chunkCrc);
+            document.chunks[i] = chunk;
+        }
+        document.mapped = mapped;
+        document.decoded = new AlcShape[count][];
+        document.fileLength = file.length();
+        document.fileModified = file.lastModified();
+        return document;
+    }
+
+    /**
+     * Get the shapes of a document that has been opened but not yet saved, each chunk is decoded the first time one of its shapes is asked for.
+     * Must only be used from one thread at a time
+     * @return  The shapes in the order they are drawn
+     * @throws IllegalStateException if a chunk that passed its checksum can not be decoded
+     */
+    List<AlcShape> getShapes() {
+        final int[] firstShape = new int[chunks.length + 1];
+        for (int i = 0; i < chunks.length; i++) {
+            firstShape[i + 1] = firstShape[i] + chunks[i].shapeCount;
+        }
+        return new Shapes(firstShape);
+    }
+
+    /** The shapes of an opened document, decoded a chunk at a time */
+    private class Shapes extends AbstractList<AlcShape> implements RandomAccess {
+
+        /** Index of the first shape of each chunk, followed by the total */
+        private final int[] firstShape;
+
+        Shapes(int[] firstShape) {
+            this.firstShape = firstShape;
+        }
+
+        @Override
+        public AlcShape get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            // Find the last chunk starting at or before the index
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (firstShape[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (decoded[low] == null) {
+                decoded[low] = decode(chunks[low]);
+            }
+            return decoded[low][index - firstShape[low]];
+        }
+
+        @Override
+        public int size() {
+            return firstShape[chunks.length];
+        }
+    }
+
+    /** Read the shapes of a chunk from the mapped file, already checked when opened */
+    private AlcShape[] decode(Chunk chunk) {
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) chunk.offset);
+        buffer.limit((int) chunk.offset + chunk.length);
+        try {
+            return decodeShapes(buffer);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalStateException("Damaged document chunk at " + chunk.offset + ": " + file.getPath(), ex);
+        }
+    }
+
+    /** Read shapes packed by {@link #encodeShapes(List, List)}
+     * @param buffer    The packed shapes, from its start to its limit
+     * @return          The shapes
+     * @throws IllegalArgumentException if the shapes are damaged
+     */
+    static AlcShape[] decodeShapes(ByteBuffer buffer) {
+        buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int count = buffer.getInt(0);
+            buffer.position(4);
+            IntBuffer headers = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            int numTypes = 0;
+            int numFloats = 0;
+            for (int i = 0; i < count; i++) {
+                int header = i * SHAPE_INTS;
+                int flags = headers.get(header);
+                numTypes += headers.get(header + 5);
+                numFloats += headers.get(header + 6);
+                if ((flags & FLAG_SPINE) != 0) {
+                    numFloats += headers.get(header + 7) * 3;
+                }
+                if ((flags & FLAG_GRADIENT) != 0) {
+                    numFloats += 4;
+                }
+            }
+            buffer.position(4 + count * SHAPE_INTS * 4);
+            ByteBuffer types = buffer.slice();
+            int floatsStart = getFloatsStart(count, numTypes);
+            buffer.position(floatsStart);
+            FloatBuffer floats = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            buffer.position(getDoublesStart(floatsStart, numFloats));
+            DoubleBuffer doubles = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+            AlcShape[] shapes = new AlcShape[count];
+            for (int i = 0; i < count; i++) {
+                int flags = headers.get();
+                int style = headers.get();
+                Color color = new Color(headers.get(), true);
+                int alpha = headers.get();
+                float lineWidth = Float.intBitsToFloat(headers.get());
+                int segments = headers.get();
+                int coords = headers.get();
+                int spineSize = headers.get();
+                int totalPoints = headers.get();
+                int gradientColor1 = headers.get();
+                int gradientColor2 = headers.get();
+
+                AlcGeometry path = AlcGeometry.get(types, floats, segments, coords);
+                float[] spine = null;
+                float[] spineWidth = null;
+                if ((flags & FLAG_SPINE) != 0) {
+                    spine = new float[spineSize * 2];
+                    spineWidth = new float[spineSize];
+                    floats.get(spine);
+                    floats.get(spineWidth);
+                }
+                AffineTransform transform = null;
+                if ((flags & FLAG_TRANSFORM) != 0) {
+                    transform = new AffineTransform(doubles.get(), doubles.get(), doubles.get(), doubles.get(), doubles.get(), doubles.get());
+                }
+                GradientPaint gradient = null;
+                if ((flags & FLAG_GRADIENT) != 0) {
+                    gradient = new GradientPaint(floats.get(), floats.get(), new Color(gradientColor1, true),
+                            floats.get(), floats.get(), new Color(gradientColor2, true), (flags & FLAG_CYCLIC) != 0);
+                }
+
+                AlcShape shape = new AlcShape(path, color, alpha, style, lineWidth);
+                shape.setState(new AlcShape.State(path, transform, spine, spineWidth, spineSize, color, alpha, style,
+                        lineWidth, gradient, totalPoints, (flags & FLAG_CLOSED) != 0));
+                shape.setPenShape((flags & FLAG_PEN) != 0);
+                shapes[i] = shape;
+            }
+            return shapes;
+
+        } catch (RuntimeException ex) {
+            // Out of range counts show up as buffer errors
+            throw new IllegalArgumentException("Damaged shapes", ex);
+        }
+    }
+
+    /** Get the CRC32 checksum of the bytes remaining in a buffer, copied through a scratch array */
+    private static int checksum(ByteBuffer buffer, byte[] scratch) {
+        CRC32 crc = new CRC32();
+        while (buffer.hasRemaining()) {
+            int length = Math.min(scratch.length, buffer.remaining());
+            buffer.get(scratch, 0, length);
+            crc.update(scratch, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+
+    /** A block of shapes within the file */
+    private static class Chunk {
+
+        /** Where the chunk starts in the file */
+        long offset;
+        final int length,  shapeCount,  crc;
+        /** The encoded chunk, until it is written */
+        byte[] data;
+
+        /** A chunk to be written */
+        Chunk(byte[] data, int shapeCount) {
+            this.data = data;
+            this.length = data.length;
+            this.shapeCount = shapeCount;
+            CRC32 checksum = new CRC32();
+            checksum.update(data);
+            this.crc = (int) checksum.getValue();
+        }
+
+        /** A chunk read from the index */
+        Chunk(long offset, int length, int shapeCount, int crc) {
+            this.offset = offset;
+            this.length = length;
+            this.shapeCount = shapeCount;
+            this.crc = crc;
+        }
+
+        /** Identify the chunk by its checksum and length, two different chunks may still share a key */
+        Long getKey() {
+            return Long.valueOf(((long) crc << 32) ^ (length & 0xFFFFFFFFL));
+        }
+    }
+}
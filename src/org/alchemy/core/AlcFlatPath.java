@@ -0,0 +1,234 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+
+/**
+ * A path flattened into polygons, used for hit testing shapes <br>
+ * Testing a point against a path flattens its curves every time,
+ * so {@link AlcShape} keeps one of these until the path changes and tests against it instead.
+ * Each subpath is a polygon of x,y pairs, treated as closed when testing if a point is inside
+ * as with {@link java.awt.geom.Path2D#contains(double, double)}.
+ */
+class AlcFlatPath {
+
+    /** How far the polygons may stray from the curves, in pixels */
+    private static final double FLATNESS = 0.25;
+    /** The points of all of the polygons as x,y pairs */
+    private float[] coords;
+    /** Number of points */
+    private int numPoints = 0;
+    /** Index of the first point of each polygon, followed by the number of points */
+    private int[] starts;
+    /** Whether each polygon was closed by the path */
+    private boolean[] closed;
+    /** Number of polygons */
+    private int numPolygons = 0;
+    /** Bounds of all of the points */
+    private float minX = Float.MAX_VALUE,  minY = Float.MAX_VALUE,  maxX = -Float.MAX_VALUE,  maxY = -Float.MAX_VALUE;
+
+    /**
+     * Flatten a path
+     * @param geometry      The path to flatten
+     * @param transform     Transform to apply to the path, or null for none
+     */
+    AlcFlatPath(AlcGeometry geometry, AffineTransform transform) {
+        coords = new float[Math.max(8, geometry.getCoordCount() * 2)];
+        starts = new int[8];
+        closed = new boolean[7];
+        PathIterator it = geometry.getPathIterator(transform, FLATNESS);
+        float[] pts = new float[6];
+        while (!it.isDone()) {
+            switch (it.currentSegment(pts)) {
+                case PathIterator.SEG_MOVETO:
+                    startPolygon();
+                    addPoint(pts[0], pts[1]);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    if (numPolygons == 0) {
+                        startPolygon();
+                    }
+                    addPoint(pts[0], pts[1]);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    if (numPolygons > 0) {
+                        closed[numPolygons - 1] = true;
+                    }
+                    break;
+            }
+            it.next();
+        }
+        starts[numPolygons] = numPoints;
+    }
+
+    private void startPolygon() {
+        if (numPolygons + 1 >= starts.length) {
+            int[] newStarts = new int[starts.length * 2];
+            System.arraycopy(starts, 0, newStarts, 0, starts.length);
+            starts = newStarts;
+            boolean[] newClosed = new boolean[newStarts.length - 1];
+            System.arraycopy(closed, 0, newClosed, 0, closed.length);
+            closed = newClosed;
+        }
+        starts[numPolygons++] = numPoints;
+    }
+
+    private void addPoint(float x, float y) {
+        if (numPoints * 2 + 2 > coords.length) {
+            float[] newCoords = new float[coords.length * 2];
+            System.arraycopy(coords, 0, newCoords, 0, numPoints * 2);
+            coords = newCoords;
+        }
+        coords[numPoints * 2] = x;
+        coords[numPoints * 2 + 1] = y;
+        numPoints++;
+        if (x < minX) {
+            minX = x;
+        }
+        if (x > maxX) {
+            maxX = x;
+        }
+        if (y < minY) {
+            minY = y;
+        }
+        if (y > maxY) {
+            maxY = y;
+        }
+    }
+
+    /**
+     * Check if a point is inside the polygons, using the non-zero winding rule
+     * @param x     x coordinate of the point
+     * @param y     y coordinate of the point
+     * @return      True if the point is inside
+     */
+    boolean contains(double x, double y) {
+        if (x < minX || x > maxX || y < minY || y > maxY) {
+            return false;
+        }
+        int winding = 0;
+        for (int p = 0; p < numPolygons; p++) {
+            int start = starts[p];
+            int end = starts[p + 1];
+            if (end - start < 3) {
+                continue;
+            }
+            // Start with the closing edge from the last point
+            float x0 = coords[end * 2 - 2];
+            float y0 = coords[end * 2 - 1];
+            for (int i = start; i < end; i++) {
+                float x1 = coords[i * 2];
+                float y1 = coords[i * 2 + 1];
+                if (y0 <= y) {
+                    // Upward crossing with the point to the left
+                    if (y1 > y && cross(x0, y0, x1, y1, x, y) > 0) {
+                        winding++;
+                    }
+                } else {
+                    // Downward crossing with the point to the right
+                    if (y1 <= y && cross(x0, y0, x1, y1, x, y) < 0) {
+                        winding--;
+                    }
+                }
+                x0 = x1;
+                y0 = y1;
+            }
+        }
+        return winding != 0;
+    }
+
+    /** Which side of the edge from x0,y0 to x1,y1 the point is on, positive for the left */
+    private static double cross(float x0, float y0, float x1, float y1, double x, double y) {
+        return (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0);
+    }
+
+    /**
+     * Get the point of the polygons closest to a point
+     * @param x     x coordinate of the point
+     * @param y     y coordinate of the point
+     * @return      The closest point, or null if there are no points
+     */
+    Point2D.Float getNearestVertex(double x, double y) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < numPoints; i++) {
+            double dx = coords[i * 2] - x;
+            double dy = coords[i * 2 + 1] - y;
+            double distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        if (nearest < 0) {
+            return null;
+        }
+        return new Point2D.Float(coords[nearest * 2], coords[nearest * 2 + 1]);
+    }
+
+    /**
+     * Get the distance from a point to the nearest edge of the polygons.
+     * Subpaths the path did not close have no closing edge
+     * @param x     x coordinate of the point
+     * @param y     y coordinate of the point
+     * @return      The distance, or Double.MAX_VALUE if there are no points
+     */
+    double getOutlineDistance(double x, double y) {
+        double nearest = Double.MAX_VALUE;
+        for (int p = 0; p < numPolygons; p++) {
+            int start = starts[p];
+            int end = starts[p + 1];
+            if (end == start) {
+                continue;
+            }
+            int first = closed[p] ? end - 1 : start;
+            float x0 = coords[first * 2];
+            float y0 = coords[first * 2 + 1];
+            if (end - start == 1) {
+                nearest = Math.min(nearest, Point2D.distanceSq(x0, y0, x, y));
+                continue;
+            }
+            for (int i = closed[p] ? start : start + 1; i < end; i++) {
+                float x1 = coords[i * 2];
+                float y1 = coords[i * 2 + 1];
+                nearest = Math.min(nearest, segmentDistanceSq(x0, y0, x1, y1, x, y));
+                x0 = x1;
+                y0 = y1;
+            }
+        }
+        return nearest == Double.MAX_VALUE ? nearest : Math.sqrt(nearest);
+    }
+
+    /** Square of the distance from a point to the line segment from x0,y0 to x1,y1 */
+    private static double segmentDistanceSq(float x0, float y0, float x1, float y1, double x, double y) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double lengthSq = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSq > 0) {
+            t = ((x - x0) * dx + (y - y0) * dy) / lengthSq;
+            t = Math.max(0, Math.min(1, t));
+        }
+        return Point2D.distanceSq(x0 + t * dx, y0 + t * dy, x, y);
+    }
+}
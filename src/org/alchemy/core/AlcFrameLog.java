@@ -0,0 +1,512 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A recording session kept as a log of the changes to the shapes <br>
+ * Rather than drawing a whole page each time the session is recorded,
+ * only the shapes added, removed or changed since the last frame are appended to the log.
+ * The frames can be read back with a {@link Reader} and drawn to PDF, SVG or PNG later on.
+ * <p>
+ * Each frame is written as its length followed by its data, so a frame cut short
+ * when Alchemy stops unexpectedly is left out and the frames before it still read.
+ * Frames are captured on the Swing thread and may be written on another.
+ * If a frame can not be written, the frames after it are skipped until a keyframe,
+ * which writes every shape in full, so later frames never refer to one missing from the log.
+ */
+class AlcFrameLog {
+
+    /** Extension of session log files */
+    static final String EXTENSION = ".alcl";
+    /** Marks the start of a session log, 'ALCL' */
+    private static final int MAGIC = 0x414C434C;
+    private static final int VERSION = 1;
+    // Records within a frame
+    private static final byte TAG_END = 0;
+    private static final byte TAG_SHAPE = 1;
+    private static final byte TAG_REMOVE = 2;
+    private static final byte TAG_ORDER = 3;
+    // Kinds of paint
+    private static final byte PAINT_COLOR = 0;
+    private static final byte PAINT_GRADIENT = 1;
+    /** The log file */
+    private final File file;
+    /** Stream to the log file, opened with the first frame */
+    private DataOutputStream out;
+    /** The shapes in the last frame captured - only used on the Swing thread */
+    private IdentityHashMap<AlcShape, Recorded> recorded = new IdentityHashMap<AlcShape, Recorded>();
+    /** The id of each shape in the last frame, in the order drawn */
+    private int[] lastOrder = new int[0];
+    /** The id for the next new shape */
+    private int nextId = 0;
+    /** Capture the next frame in full - only used on the Swing thread */
+    private boolean keyframe = true;
+    /** A frame could not be written, so frames are skipped until the next keyframe */
+    private volatile boolean failed = false;
+
+    /**
+     * Create a log, nothing is written until the first frame
+     * @param file  The log file
+     */
+    AlcFrameLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the log file
+     * @return  The file the frames are written to
+     */
+    File getFile() {
+        return file;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // WRITING
+    //////////////////////////////////////////////////////////////
+    /**
+     * Capture the changes to the canvas since the last frame - must be called on the Swing thread
+     * @param canvas    The canvas
+     * @return          The frame, to be passed to {@link #writeFrame(Frame)}
+     */
+    Frame captureFrame(AlcCanvas canvas) {
+        if (failed) {
+            // The frames since the failure are not on disk, so start over from this one
+            keyframe = true;
+        }
+        boolean full = keyframe;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeLong(System.currentTimeMillis());
+            data.writeInt(canvas.getWidth());
+            data.writeInt(canvas.getHeight());
+            Rectangle bounds = canvas.getVisibleRect();
+            data.writeInt(bounds.x);
+            data.writeInt(bounds.y);
+            data.writeInt(bounds.width);
+            data.writeInt(bounds.height);
+            data.writeInt(canvas.getBackgroundColor().getRGB());
+            double[] matrix = new double[6];
+            canvas.getViewTransform().getMatrix(matrix);
+            for (int i = 0; i < matrix.length; i++) {
+                data.writeDouble(matrix[i]);
+            }
+
+            int count = 0;
+            for (int j = 0; j < canvas.fullShapeList.size(); j++) {
+                count += canvas.fullShapeList.get(j).size();
+            }
+            IdentityHashMap<AlcShape, Recorded> current = new IdentityHashMap<AlcShape, Recorded>(count);
+            int[] order = new int[count];
+            int numShapes = 0;
+            // Write the new and changed shapes, in the order they are drawn
+            ArrayList<Integer> added = new ArrayList<Integer>();
+            ByteArrayOutputStream shapeBytes = new ByteArrayOutputStream();
+            DataOutputStream shapeData = new DataOutputStream(shapeBytes);
+            for (int j = 0; j < canvas.fullShapeList.size(); j++) {
+                List<AlcShape> shapes = canvas.fullShapeList.get(j);
+                for (int i = 0; i < shapes.size(); i++) {
+                    AlcShape shape = shapes.get(i);
+                    Recorded record = current.get(shape);
+                    if (record == null) {
+                        record = recorded.remove(shape);
+                        if (record == null) {
+                            record = new Recorded(nextId++);
+                            added.add(record.id);
+                            writeShape(shapeData, record, shape);
+                        } else if (full || !record.matches(shape)) {
+                            writeShape(shapeData, record, shape);
+                        }
+                        current.put(shape, record);
+                    }
+                    order[numShapes++] = record.id;
+                }
+            }
+            // Whatever was not found has been removed
+            HashSet<Integer> removed = new HashSet<Integer>();
+            for (Recorded record : recorded.values()) {
+                data.writeByte(TAG_REMOVE);
+                data.writeInt(record.id);
+                removed.add(record.id);
+            }
+            shapeData.flush();
+            shapeBytes.writeTo(data);
+
+            // The order only needs writing if it is not the last order with new shapes on top
+            int[] expected = new int[lastOrder.length + added.size()];
+            int numExpected = 0;
+            for (int i = 0; i < lastOrder.length; i++) {
+                if (!removed.contains(lastOrder[i])) {
+                    expected[numExpected++] = lastOrder[i];
+                }
+            }
+            for (int i = 0; i < added.size(); i++) {
+                expected[numExpected++] = added.get(i);
+            }
+            if (full || !Arrays.equals(Arrays.copyOf(expected, numExpected), order)) {
+                data.writeByte(TAG_ORDER);
+                data.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    data.writeInt(order[i]);
+                }
+            }
+            data.writeByte(TAG_END);
+            data.flush();
+
+            recorded = current;
+            lastOrder = order;
+            keyframe = false;
+
+        } catch (IOException ex) {
+            // Not thrown when writing to memory
+            ex.printStackTrace();
+        }
+        return new Frame(bytes.toByteArray(), full);
+    }
+
+    /** Write a shape as it is now */
+    private static void writeShape(DataOutputStream data, Recorded record, AlcShape shape) throws IOException {
+        record.update(shape);
+        data.writeByte(TAG_SHAPE);
+        data.writeInt(record.id);
+        data.writeByte(shape.style);
+        data.writeFloat(shape.lineWidth);
+        Paint paint = shape.getPaint();
+        if (paint instanceof GradientPaint) {
+            GradientPaint gradient = (GradientPaint) paint;
+            data.writeByte(PAINT_GRADIENT);
+            data.writeFloat((float) gradient.getPoint1().getX());
+            data.writeFloat((float) gradient.getPoint1().getY());
+            data.writeInt(gradient.getColor1().getRGB());
+            data.writeFloat((float) gradient.getPoint2().getX());
+            data.writeFloat((float) gradient.getPoint2().getY());
+            data.writeInt(gradient.getColor2().getRGB());
+            data.writeBoolean(gradient.isCyclic());
+        } else {
+            data.writeByte(PAINT_COLOR);
+            data.writeInt(shape.getColor().getRGB());
+        }
+        AlcGeometry path = shape.sharePaintGeometry();
+        data.writeInt(path.getSegmentCount());
+        PathIterator it = path.getPathIterator(null);
+        float[] points = new float[6];
+        while (!it.isDone()) {
+            int type = it.currentSegment(points);
+            data.writeByte(type);
+            int numCoords = getCoordCount(type);
+            for (int i = 0; i < numCoords; i++) {
+                data.writeFloat(points[i]);
+            }
+            it.next();
+        }
+    }
+
+    /** Number of coordinates of a segment type */
+    private static int getCoordCount(int type) {
+        switch (type) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                return 2;
+            case PathIterator.SEG_QUADTO:
+                return 4;
+            case PathIterator.SEG_CUBICTO:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Append a frame to the log file
+     * @param frame     A frame from {@link #captureFrame(AlcCanvas)}
+     * @return          True if the frame was written, otherwise false
+     */
+    boolean writeFrame(Frame frame) {
+        if (failed && !frame.keyframe) {
+            // Refers to a frame that was not written
+            return false;
+        }
+        try {
+            if (out == null) {
+                System.out.println("Current session log: " + file.getPath());
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            out.writeInt(frame.data.length);
+            out.write(frame.data);
+            out.flush();
+            failed = false;
+            return true;
+        } catch (IOException ex) {
+            System.err.println(ex);
+            failed = true;
+            return false;
+        }
+    }
+
+    /** Close the log file */
+    void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                System.err.println(ex);
+            }
+            out = null;
+        }
+    }
+
+    /** A captured frame waiting to be written */
+    static class Frame {
+
+        final byte[] data;
+        /** Every shape is written in full, so the frame does not depend on the ones before */
+        final boolean keyframe;
+
+        Frame(byte[] data, boolean keyframe) {
+            this.data = data;
+            this.keyframe = keyframe;
+        }
+    }
+
+    /** What was last written for a shape */
+    private static class Recorded {
+
+        final int id;
+        /** The path shared with the shape, so changes to it can be spotted */
+        private AlcGeometry path;
+        private AffineTransform transform;
+        private Paint paint;
+        private int style;
+        private float lineWidth;
+
+        Recorded(int id) {
+            this.id = id;
+        }
+
+        void update(AlcShape shape) {
+            path = shape.getUntransformedGeometry().share();
+            AffineTransform pending = shape.getPendingTransform();
+            transform = pending == null ? null : new AffineTransform(pending);
+            paint = shape.getPaint();
+            style = shape.style;
+            lineWidth = shape.lineWidth;
+        }
+
+        /** Check if the shape is unchanged since it was last written */
+        boolean matches(AlcShape shape) {
+            // The path is shared, so any change to the shape's path copies its arrays
+            AlcGeometry current = shape.getUntransformedGeometry();
+            if (current.getStorage() != path.getStorage() || current.getSegmentCount() != path.getSegmentCount() ||
+                    current.getCoordCount() != path.getCoordCount()) {
+                return false;
+            }
+            AffineTransform pending = shape.getPendingTransform();
+            if (pending == null ? transform != null : !pending.equals(transform)) {
+                return false;
+            }
+            return style == shape.style && lineWidth == shape.lineWidth && paint.equals(shape.getPaint());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // READING
+    //////////////////////////////////////////////////////////////
+    /** Reads the frames of a log back as snapshots of the canvas, first to last */
+    static class Reader {
+
+        private final DataInputStream in;
+        /** The shapes of the current frame by id */
+        private final HashMap<Integer, Shape> paths = new HashMap<Integer, Shape>();
+        private final HashMap<Integer, Paint> paints = new HashMap<Integer, Paint>();
+        private final HashMap<Integer, float[]> styles = new HashMap<Integer, float[]>();
+        /** The id of each shape of the current frame, in the order drawn */
+        private ArrayList<Integer> order = new ArrayList<Integer>();
+
+        /**
+         * Open a log
+         * @param file  The log file
+         * @throws java.io.IOException  If the file can not be read or is not a session log
+         */
+        Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a session log: " + file.getPath());
+                }
+            } catch (IOException ex) {
+                in.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Read the next frame
+         * @return  The frame, or null if there are no more
+         * @throws java.io.IOException  If the log can not be read
+         */
+        AlcCanvasSnapshot next() throws IOException {
+            byte[] frame;
+            try {
+                frame = new byte[in.readInt()];
+                in.readFully(frame);
+            } catch (EOFException ex) {
+                // The end of the log, or a frame cut short while being written
+                return null;
+            }
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(frame));
+            data.readLong();
+            int width = data.readInt();
+            int height = data.readInt();
+            Rectangle bounds = new Rectangle(data.readInt(), data.readInt(), data.readInt(), data.readInt());
+            Color bgColor = new Color(data.readInt(), true);
+            double[] matrix = new double[6];
+            for (int i = 0; i < matrix.length; i++) {
+                matrix[i] = data.readDouble();
+            }
+
+            HashSet<Integer> removed = new HashSet<Integer>();
+            ArrayList<Integer> added = new ArrayList<Integer>();
+            ArrayList<Integer> newOrder = null;
+            byte tag;
+            while ((tag = data.readByte()) != TAG_END) {
+                switch (tag) {
+                    case TAG_REMOVE:
+                        Integer removedId = data.readInt();
+                        removed.add(removedId);
+                        paths.remove(removedId);
+                        paints.remove(removedId);
+                        styles.remove(removedId);
+                        break;
+                    case TAG_SHAPE:
+                        Integer shapeId = data.readInt();
+                        if (!paths.containsKey(shapeId)) {
+                            added.add(shapeId);
+                        }
+                        readShape(data, shapeId);
+                        break;
+                    case TAG_ORDER:
+                        int count = data.readInt();
+                        newOrder = new ArrayList<Integer>(count);
+                        for (int i = 0; i < count; i++) {
+                            newOrder.add(data.readInt());
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown record in session log: " + tag);
+                }
+            }
+
+            if (newOrder == null) {
+                newOrder = new ArrayList<Integer>(order.size() + added.size());
+                for (int i = 0; i < order.size(); i++) {
+                    if (!removed.contains(order.get(i))) {
+                        newOrder.add(order.get(i));
+                    }
+                }
+                newOrder.addAll(added);
+            }
+            order = newOrder;
+
+            int count = order.size();
+            Shape[] framePaths = new Shape[count];
+            Paint[] framePaints = new Paint[count];
+            int[] frameStyles = new int[count];
+            float[] frameLineWidths = new float[count];
+            for (int i = 0; i < count; i++) {
+                Integer id = order.get(i);
+                framePaths[i] = paths.get(id);
+                framePaints[i] = paints.get(id);
+                float[] style = styles.get(id);
+                frameStyles[i] = (int) style[0];
+                frameLineWidths[i] = style[1];
+            }
+            return new AlcCanvasSnapshot(width, height, bounds, bgColor, new AffineTransform(matrix),
+                    framePaths, framePaints, frameStyles, frameLineWidths);
+        }
+
+        /** Read a shape record, after its id */
+        private void readShape(DataInputStream data, Integer id) throws IOException {
+            int style = data.readByte();
+            float lineWidth = data.readFloat();
+            Paint paint;
+            if (data.readByte() == PAINT_GRADIENT) {
+                float x1 = data.readFloat();
+                float y1 = data.readFloat();
+                Color color1 = new Color(data.readInt(), true);
+                float x2 = data.readFloat();
+                float y2 = data.readFloat();
+                Color color2 = new Color(data.readInt(), true);
+                paint = new GradientPaint(x1, y1, color1, x2, y2, color2, data.readBoolean());
+            } else {
+                paint = new Color(data.readInt(), true);
+            }
+            int numSegments = data.readInt();
+            AlcGeometry path = new AlcGeometry(numSegments);
+            for (int i = 0; i < numSegments; i++) {
+                switch (data.readByte()) {
+                    case PathIterator.SEG_MOVETO:
+                        path.moveTo(data.readFloat(), data.readFloat());
+                        break;
+                    case PathIterator.SEG_LINETO:
+                        path.lineTo(data.readFloat(), data.readFloat());
+                        break;
+                    case PathIterator.SEG_QUADTO:
+                        path.quadTo(data.readFloat(), data.readFloat(), data.readFloat(), data.readFloat());
+                        break;
+                    case PathIterator.SEG_CUBICTO:
+                        path.curveTo(data.readFloat(), data.readFloat(), data.readFloat(), data.readFloat(), data.readFloat(), data.readFloat());
+                        break;
+                    case PathIterator.SEG_CLOSE:
+                        path.closePath();
+                        break;
+                }
+            }
+            paths.put(id, path);
+            paints.put(id, paint);
+            styles.put(id, new float[]{style, lineWidth});
+        }
+
+        /** Close the log */
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                System.err.println(ex);
+            }
+        }
+    }
+}
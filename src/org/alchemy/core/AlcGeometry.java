@@ -0,0 +1,728 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.*;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * The geometry of an {@link AlcShape} <br>
+ * Stores a path as a growable array of float coordinates and
+ * a matching array of segment types, without an object per point.
+ * The geometry is a {@link Shape} so it can be drawn directly with Java2D,
+ * a {@link GeneralPath} copy is only made when asked for.
+ * <p>
+ * Use a {@link Cursor} to read through the segments without allocating.
+ * <p>
+ * A geometry can be shared with {@link #share()}, which costs only a new header.
+ * Shared geometries use the same arrays until one of them is changed,
+ * at which point it makes its own copy. The geometry holding the most segments
+ * can keep adding to the end without copying, as the others never read that far.
+ */
+public class AlcGeometry implements Shape, Cloneable, Serializable {
+
+    /** Number of points used by each segment type, indexed by the PathIterator segment type */
+    private static final int[] POINTS_PER_SEGMENT = {1, 1, 2, 3, 0};
+    /** Number of segments a new geometry has room for, it grows as required */
+    static final int DEFAULT_CAPACITY = 8;
+    /** The x,y coordinates of all segments */
+    private float[] coords;
+    /** The PathIterator type of each segment */
+    private byte[] types;
+    /** Number of coordinates used */
+    private int numCoords;
+    /** Number of segments used */
+    private int numTypes;
+    /** How far the arrays are filled when they are shared with other geometries, null if not shared */
+    private transient Tail shared;
+
+    /** Creates an empty geometry
+     * @param capacity  The number of segments to make room for
+     */
+    public AlcGeometry(int capacity) {
+        capacity = Math.max(1, capacity);
+        types = new byte[capacity];
+        coords = new float[capacity * 2];
+    }
+
+    /** Creates a geometry sharing the arrays of another */
+    private AlcGeometry(byte[] types, float[] coords, int numTypes, int numCoords, Tail shared) {
+        this.types = types;
+        this.coords = coords;
+        this.numTypes = numTypes;
+        this.numCoords = numCoords;
+        this.shared = shared;
+    }
+
+    /** Creates a geometry from any Java2D shape
+     * @param shape     The shape to copy
+     */
+    public AlcGeometry(Shape shape) {
+        this(DEFAULT_CAPACITY);
+        append(shape.getPathIterator(null), false);
+    }
+
+    //////////////////////////////////////////////////////////////
+    // PATH CONSTRUCTION
+    //////////////////////////////////////////////////////////////
+    /** Start a new subpath at the given point */
+    public void moveTo(float x, float y) {
+        // Consecutive moves replace each other, as with a GeneralPath
+        if (numTypes > 0 && types[numTypes - 1] == PathIterator.SEG_MOVETO) {
+            unshare();
+            coords[numCoords - 2] = x;
+            coords[numCoords - 1] = y;
+        } else {
+            ensureCapacity(1, 2);
+            types[numTypes++] = PathIterator.SEG_MOVETO;
+            coords[numCoords++] = x;
+            coords[numCoords++] = y;
+        }
+    }
+
+    /** Add a straight line to the given point */
+    public void lineTo(float x, float y) {
+        ensureCapacity(1, 2);
+        types[numTypes++] = PathIterator.SEG_LINETO;
+        coords[numCoords++] = x;
+        coords[numCoords++] = y;
+    }
+
+    /** Add a quadratic curve with the control point x1,y1 to the point x2,y2 */
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        ensureCapacity(1, 4);
+        types[numTypes++] = PathIterator.SEG_QUADTO;
+        coords[numCoords++] = x1;
+        coords[numCoords++] = y1;
+        coords[numCoords++] = x2;
+        coords[numCoords++] = y2;
+    }
+
+    /** Add a cubic curve with the control points x1,y1 and x2,y2 to the point x3,y3 */
+    public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        ensureCapacity(1, 6);
+        types[numTypes++] = PathIterator.SEG_CUBICTO;
+        coords[numCoords++] = x1;
+        coords[numCoords++] = y1;
+        coords[numCoords++] = x2;
+        coords[numCoords++] = y2;
+        coords[numCoords++] = x3;
+        coords[numCoords++] = y3;
+    }
+
+    /** Close the current subpath */
+    public void closePath() {
+        if (numTypes == 0 || types[numTypes - 1] != PathIterator.SEG_CLOSE) {
+            ensureCapacity(1, 0);
+            types[numTypes++] = PathIterator.SEG_CLOSE;
+        }
+    }
+
+    /** Append the segments of a path iterator
+     * @param pi        The segments to append
+     * @param connect   Turn an initial move into a line to connect to the existing path
+     */
+    public void append(PathIterator pi, boolean connect) {
+        float[] segment = new float[6];
+        while (!pi.isDone()) {
+            switch (pi.currentSegment(segment)) {
+                case PathIterator.SEG_MOVETO:
+                    if (connect && numTypes > 0 && types[numTypes - 1] != PathIterator.SEG_CLOSE) {
+                        lineTo(segment[0], segment[1]);
+                    } else {
+                        moveTo(segment[0], segment[1]);
+                    }
+                    break;
+                case PathIterator.SEG_LINETO:
+                    lineTo(segment[0], segment[1]);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    quadTo(segment[0], segment[1], segment[2], segment[3]);
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    curveTo(segment[0], segment[1], segment[2], segment[3], segment[4], segment[5]);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    closePath();
+                    break;
+            }
+            connect = false;
+            pi.next();
+        }
+    }
+
+    /** Append all the segments of another geometry
+     * @param other     The geometry to append
+     */
+    public void append(AlcGeometry other) {
+        ensureCapacity(other.numTypes, other.numCoords);
+        System.arraycopy(other.types, 0, types, numTypes, other.numTypes);
+        System.arraycopy(other.coords, 0, coords, numCoords, other.numCoords);
+        numTypes += other.numTypes;
+        numCoords += other.numCoords;
+    }
+
+    /** Append another geometry backwards, connected with a line from the current point.
+     *  The other geometry must be a single open subpath
+     * @param other     The geometry to append from its last point back to its first
+     */
+    public void appendReverse(AlcGeometry other) {
+        if (other.numTypes == 0) {
+            return;
+        }
+        float[] c = other.coords;
+        int end = other.numCoords;
+        lineTo(c[end - 2], c[end - 1]);
+        for (int segment = other.numTypes - 1; segment > 0; segment--) {
+            int type = other.types[segment];
+            int start = end - POINTS_PER_SEGMENT[type] * 2;
+            // Each segment runs back to the end point of the segment before
+            float x = c[start - 2];
+            float y = c[start - 1];
+            switch (type) {
+                case PathIterator.SEG_LINETO:
+                    lineTo(x, y);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    quadTo(c[start], c[start + 1], x, y);
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    curveTo(c[start + 2], c[start + 3], c[start], c[start + 1], x, y);
+                    break;
+                default:
+                    return;
+            }
+            end = start;
+        }
+    }
+
+    /** Remove all segments, keeping the allocated arrays unless they are shared */
+    public void reset() {
+        if (shared != null) {
+            shared = null;
+            types = new byte[DEFAULT_CAPACITY];
+            coords = new float[DEFAULT_CAPACITY * 2];
+        }
+        numTypes = 0;
+        numCoords = 0;
+    }
+
+    /** Shrink the arrays to fit the segments, done once the geometry is complete */
+    public void trimToSize() {
+        if (shared != null) {
+            // Take an exact copy of the shared arrays
+            shared = null;
+            types = Arrays.copyOf(types, Math.max(1, numTypes));
+            coords = Arrays.copyOf(coords, numCoords);
+            return;
+        }
+        if (types.length > numTypes) {
+            byte[] trimmed = new byte[Math.max(1, numTypes)];
+            System.arraycopy(types, 0, trimmed, 0, numTypes);
+            types = trimmed;
+        }
+        if (coords.length > numCoords) {
+            float[] trimmed = new float[numCoords];
+            System.arraycopy(coords, 0, trimmed, 0, numCoords);
+            coords = trimmed;
+        }
+    }
+
+    /** Get a geometry with the same segments, sharing the arrays of this one until either is changed
+     * @return  The shared geometry
+     */
+    public AlcGeometry share() {
+        if (shared == null) {
+            shared = new Tail();
+            shared.numTypes = numTypes;
+            shared.numCoords = numCoords;
+        }
+        return new AlcGeometry(types, coords, numTypes, numCoords, shared);
+    }
+
+    /** Copy the arrays if they are shared, before changing them in place */
+    private void unshare() {
+        if (shared != null) {
+            shared = null;
+            byte[] ownTypes = new byte[types.length];
+            System.arraycopy(types, 0, ownTypes, 0, numTypes);
+            types = ownTypes;
+            float[] ownCoords = new float[coords.length];
+            System.arraycopy(coords, 0, ownCoords, 0, numCoords);
+            coords = ownCoords;
+        }
+    }
+
+    /** Make sure there is room for more segments, growing the arrays by half again if not */
+    private void ensureCapacity(int newTypes, int newCoords) {
+        boolean fits = numTypes + newTypes <= types.length && numCoords + newCoords <= coords.length;
+        if (shared != null) {
+            if (fits && numTypes == shared.numTypes && numCoords == shared.numCoords) {
+                // Adding to the end of the shared arrays, which no other geometry reads
+                shared.numTypes += newTypes;
+                shared.numCoords += newCoords;
+                return;
+            }
+            // Copy both arrays, even the one that fits may have been added to by another geometry
+            unshare();
+        }
+        if (numTypes + newTypes > types.length) {
+            byte[] grown = new byte[Math.max(numTypes + newTypes, types.length + (types.length >> 1) + 1)];
+            System.arraycopy(types, 0, grown, 0, numTypes);
+            types = grown;
+        }
+        if (numCoords + newCoords > coords.length) {
+            float[] grown = new float[Math.max(numCoords + newCoords, coords.length + (coords.length >> 1) + 2)];
+            System.arraycopy(coords, 0, grown, 0, numCoords);
+            coords = grown;
+        }
+    }
+
+    /** How far a set of shared arrays has been filled */
+    private static class Tail {
+
+        int numTypes;
+        int numCoords;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // TRANSFORM
+    //////////////////////////////////////////////////////////////
+    /** Transform every point of this geometry in place
+     * @param at    The transform to apply
+     */
+    public void transform(AffineTransform at) {
+        unshare();
+        at.transform(coords, 0, coords, 0, numCoords / 2);
+    }
+
+    /** Change the points of every segment in place, without allocating. <br>
+     *  The mapper is called once for each segment in order, including closing segments which have no points
+     * @param mapper    Changes the points
+     */
+    public void mapPoints(PointMapper mapper) {
+        unshare();
+        int coordIndex = 0;
+        for (int segment = 0; segment < numTypes; segment++) {
+            int type = types[segment];
+            int points = POINTS_PER_SEGMENT[type];
+            mapper.mapPoints(type, coords, coordIndex, points);
+            coordIndex += points * 2;
+        }
+    }
+
+    /** Changes points in place, see {@link AlcGeometry#mapPoints(PointMapper)} */
+    public interface PointMapper {
+
+        /** Change the points of a segment
+         * @param type      The PathIterator type of the segment
+         * @param coords    The coordinates, the points are changed directly in this array
+         * @param offset    Index of the x coordinate of the first point
+         * @param points    Number of x,y points
+         */
+        void mapPoints(int type, float[] coords, int offset, int points);
+    }
+
+    /** Create a transformed copy of this geometry
+     * @param at    The transform to apply
+     * @return      The transformed copy
+     */
+    public AlcGeometry createTransformedGeometry(AffineTransform at) {
+        AlcGeometry copy = copy();
+        copy.transform(at);
+        return copy;
+    }
+
+    /** Create a copy of this geometry with only as much room as it needs
+     * @return  The copy
+     */
+    public AlcGeometry copy() {
+        AlcGeometry copy = new AlcGeometry(numTypes);
+        System.arraycopy(types, 0, copy.types, 0, numTypes);
+        if (copy.coords.length < numCoords) {
+            copy.coords = new float[numCoords];
+        }
+        System.arraycopy(coords, 0, copy.coords, 0, numCoords);
+        copy.numTypes = numTypes;
+        copy.numCoords = numCoords;
+        return copy;
+    }
+
+    @Override
+    public Object clone() {
+        return copy();
+    }
+
+    /** Create a GeneralPath with the same segments as this geometry
+     * @return  A new GeneralPath
+     */
+    public GeneralPath toGeneralPath() {
+        GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO, Math.max(1, numTypes));
+        path.append(getPathIterator(null), false);
+        return path;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // ACCESS
+    //////////////////////////////////////////////////////////////
+    /** Get the number of segments
+     * @return  The number of segments
+     */
+    public int getSegmentCount() {
+        return numTypes;
+    }
+
+    /** Get the number of coordinates, two for each point
+     * @return  The number of coordinates
+     */
+    public int getCoordCount() {
+        return numCoords;
+    }
+
+    /** Get the coordinate array, to identify geometries that share it.
+     *  Shared arrays are never changed below the segments of the geometries sharing them
+     * @return  The coordinate array
+     */
+    Object getStorage() {
+        return coords;
+    }
+
+    /** Write the segment types and coordinates into buffers, as kept in documents
+     * @param typeBuffer    Buffer to write one byte for each segment into
+     * @param coordBuffer   Buffer to write the coordinates into
+     */
+    void put(ByteBuffer typeBuffer, FloatBuffer coordBuffer) {
+        typeBuffer.put(types, 0, numTypes);
+        coordBuffer.put(coords, 0, numCoords);
+    }
+
+    /** Read a geometry written by {@link #put(ByteBuffer, FloatBuffer)}
+     * @param typeBuffer    Buffer to read the segment types from
+     * @param coordBuffer   Buffer to read the coordinates from
+     * @param numTypes      Number of segments
+     * @param numCoords     Number of coordinates
+     * @return              The geometry
+     * @throws IllegalArgumentException if the segments do not match the coordinates
+     */
+    static AlcGeometry get(ByteBuffer typeBuffer, FloatBuffer coordBuffer, int numTypes, int numCoords) {
+        byte[] types = new byte[Math.max(1, numTypes)];
+        float[] coords = new float[Math.max(2, numCoords)];
+        typeBuffer.get(types, 0, numTypes);
+        coordBuffer.get(coords, 0, numCoords);
+        int expected = 0;
+        for (int i = 0; i < numTypes; i++) {
+            if (types[i] < 0 || types[i] >= POINTS_PER_SEGMENT.length) {
+                throw new IllegalArgumentException("Unknown segment type: " + types[i]);
+            }
+            expected += POINTS_PER_SEGMENT[types[i]] * 2;
+        }
+        if (expected != numCoords) {
+            throw new IllegalArgumentException("Segments need " + expected + " coordinates, found " + numCoords);
+        }
+        return new AlcGeometry(types, coords, numTypes, numCoords, null);
+    }
+
+    /** Check if another geometry has the same segments, so differs at most in its points
+     * @param other     The geometry to compare with
+     * @return          True if the segments are the same
+     */
+    boolean hasSameSegments(AlcGeometry other) {
+        if (numTypes != other.numTypes || numCoords != other.numCoords) {
+            return false;
+        }
+        if (types == other.types) {
+            return true;
+        }
+        for (int i = 0; i < numTypes; i++) {
+            if (types[i] != other.types[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Find the coordinates that differ from another geometry with the same segments
+     * @param other     The geometry to compare with
+     * @return          The indices of the coordinates that differ
+     */
+    int[] getChangedCoords(AlcGeometry other) {
+        if (coords == other.coords) {
+            return new int[0];
+        }
+        int count = 0;
+        for (int i = 0; i < numCoords; i++) {
+            if (coords[i] != other.coords[i]) {
+                count++;
+            }
+        }
+        int[] changed = new int[count];
+        count = 0;
+        for (int i = 0; i < numCoords; i++) {
+            if (coords[i] != other.coords[i]) {
+                changed[count++] = i;
+            }
+        }
+        return changed;
+    }
+
+    /** Get a single coordinate
+     * @param index     Index of the coordinate, x and y alternate
+     * @return          The coordinate
+     */
+    float getCoord(int index) {
+        return coords[index];
+    }
+
+    /** Set some of the coordinates in place
+     * @param indices   Indices of the coordinates to set
+     * @param values    The new value of each coordinate
+     */
+    void setCoords(int[] indices, float[] values) {
+        unshare();
+        for (int i = 0; i < indices.length; i++) {
+            coords[indices[i]] = values[i];
+        }
+    }
+
+    /** Check if there are no segments
+     * @return  True if the geometry is empty
+     */
+    public boolean isEmpty() {
+        return numTypes == 0;
+    }
+
+    /** Get the x coordinate of the last point, or 0 if empty */
+    public float getCurrentX() {
+        return (numCoords > 0) ? coords[numCoords - 2] : 0;
+    }
+
+    /** Get the y coordinate of the last point, or 0 if empty */
+    public float getCurrentY() {
+        return (numCoords > 0) ? coords[numCoords - 1] : 0;
+    }
+
+    /** Get a cursor positioned before the first segment
+     * @return  A new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Steps through the segments of the geometry without allocating <br>
+     * <pre>
+     * AlcGeometry.Cursor cursor = geometry.cursor();
+     * while (cursor.next()) {
+     *     float x = cursor.getX(cursor.getPointCount() - 1);
+     * }
+     * </pre>
+     * Points can be changed in place with {@link #setPoint(int, float, float)}.
+     */
+    public class Cursor {
+
+        private int segment = -1;
+        private int coordIndex = 0;
+
+        private Cursor() {
+        }
+
+        /** Move to the next segment
+         * @return  False once past the last segment
+         */
+        public boolean next() {
+            if (segment >= 0 && segment < numTypes) {
+                coordIndex += POINTS_PER_SEGMENT[types[segment]] * 2;
+            }
+            segment++;
+            return segment < numTypes;
+        }
+
+        /** Move back before the first segment */
+        public void reset() {
+            segment = -1;
+            coordIndex = 0;
+        }
+
+        /** Get the PathIterator type of the current segment */
+        public int getType() {
+            return types[segment];
+        }
+
+        /** Get the number of points in the current segment, the last is the end point */
+        public int getPointCount() {
+            return POINTS_PER_SEGMENT[types[segment]];
+        }
+
+        /** Get the x coordinate of a point of the current segment */
+        public float getX(int point) {
+            return coords[coordIndex + point * 2];
+        }
+
+        /** Get the y coordinate of a point of the current segment */
+        public float getY(int point) {
+            return coords[coordIndex + point * 2 + 1];
+        }
+
+        /** Change a point of the current segment */
+        public void setPoint(int point, float x, float y) {
+            unshare();
+            coords[coordIndex + point * 2] = x;
+            coords[coordIndex + point * 2 + 1] = y;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // SHAPE
+    //////////////////////////////////////////////////////////////
+    public Rectangle getBounds() {
+        return getBounds2D().getBounds();
+    }
+
+    public Rectangle2D getBounds2D() {
+        return getBounds2D(null);
+    }
+
+    /** Get the bounds of the geometry as it would be after a transform,
+     *  without transforming it
+     * @param at    The transform, or null for none
+     * @return      The bounds
+     */
+    public Rectangle2D getBounds2D(AffineTransform at) {
+        if (numCoords == 0) {
+            return new Rectangle2D.Float();
+        }
+        float[] point = new float[2];
+        getPoint(0, at, point);
+        float x1 = point[0], y1 = point[1];
+        float x2 = x1, y2 = y1;
+        for (int i = 2; i < numCoords; i += 2) {
+            getPoint(i, at, point);
+            float x = point[0];
+            float y = point[1];
+            if (x < x1) {
+                x1 = x;
+            } else if (x > x2) {
+                x2 = x;
+            }
+            if (y < y1) {
+                y1 = y;
+            } else if (y > y2) {
+                y2 = y;
+            }
+        }
+        return new Rectangle2D.Float(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /** Get a point from the coordinates, transformed if there is a transform */
+    private void getPoint(int coordIndex, AffineTransform at, float[] point) {
+        if (at == null) {
+            point[0] = coords[coordIndex];
+            point[1] = coords[coordIndex + 1];
+        } else {
+            at.transform(coords, coordIndex, point, 0, 1);
+        }
+    }
+
+    public boolean contains(double x, double y) {
+        return Path2D.contains(getPathIterator(null), x, y);
+    }
+
+    public boolean contains(Point2D p) {
+        return Path2D.contains(getPathIterator(null), p);
+    }
+
+    public boolean intersects(double x, double y, double w, double h) {
+        return Path2D.intersects(getPathIterator(null), x, y, w, h);
+    }
+
+    public boolean intersects(Rectangle2D r) {
+        return Path2D.intersects(getPathIterator(null), r);
+    }
+
+    public boolean contains(double x, double y, double w, double h) {
+        return Path2D.contains(getPathIterator(null), x, y, w, h);
+    }
+
+    public boolean contains(Rectangle2D r) {
+        return Path2D.contains(getPathIterator(null), r);
+    }
+
+    public PathIterator getPathIterator(AffineTransform at) {
+        return new Iterator(at);
+    }
+
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return new FlatteningPathIterator(getPathIterator(at), flatness);
+    }
+
+    /** PathIterator over the arrays, used to draw the geometry with Java2D */
+    private class Iterator implements PathIterator {
+
+        private final AffineTransform transform;
+        private int segment = 0;
+        private int coordIndex = 0;
+
+        Iterator(AffineTransform transform) {
+            this.transform = transform;
+        }
+
+        public int getWindingRule() {
+            return WIND_NON_ZERO;
+        }
+
+        public boolean isDone() {
+            return segment >= numTypes;
+        }
+
+        public void next() {
+            coordIndex += POINTS_PER_SEGMENT[types[segment]] * 2;
+            segment++;
+        }
+
+        public int currentSegment(float[] segmentCoords) {
+            int type = types[segment];
+            int points = POINTS_PER_SEGMENT[type];
+            if (transform == null) {
+                System.arraycopy(coords, coordIndex, segmentCoords, 0, points * 2);
+            } else {
+                transform.transform(coords, coordIndex, segmentCoords, 0, points);
+            }
+            return type;
+        }
+
+        public int currentSegment(double[] segmentCoords) {
+            int type = types[segment];
+            int points = POINTS_PER_SEGMENT[type];
+            if (transform == null) {
+                for (int i = 0; i < points * 2; i++) {
+                    segmentCoords[i] = coords[coordIndex + i];
+                }
+            } else {
+                transform.transform(coords, coordIndex, segmentCoords, 0, points);
+            }
+            return type;
+        }
+    }
+}
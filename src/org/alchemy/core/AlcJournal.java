@@ -0,0 +1,505 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of the changes to the committed shapes, so a drawing survives Alchemy stopping unexpectedly <br>
+ * The shape list reports every shape added and removed, and shapes changed in place are reported
+ * by {@link AlcCanvas#recordShapeChange(AlcShape)}. Each time shapes are committed or an undo group
+ * is finished the changes are handed to a background thread, which appends them to the journal
+ * as a single record. The Swing thread only takes the state of the shapes, which shares their paths,
+ * so committing stays quick however fast the drawing.
+ * <p>
+ * Records that arrive together are forced to disk together, once the writing thread has caught up.
+ * Each record carries a checksum, so a record cut short is left out when the journal is replayed
+ * and the records before it are kept. Once the journal has grown large it is replaced by a single
+ * record holding the current shapes. The journal is deleted when Alchemy closes normally.
+ */
+class AlcJournal {
+
+    /** Name of the journal file, in the home directory */
+    static final String FILE_NAME = ".alchemy-journal";
+    /** Marks the start of a journal, 'ALCJ' */
+    private static final int MAGIC = 0x414C434A;
+    private static final int VERSION = 1;
+    /** Size of the journal written since it was last replaced before it is replaced again, in bytes */
+    private static final long CHECKPOINT_BYTES = 8L * 1024 * 1024;
+    // Changes within a record
+    private static final byte OP_CLEAR = 0;
+    private static final byte OP_INSERT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CHANGE = 3;
+    /** The journal file */
+    private final File file;
+    /** The shapes journaled */
+    private final List<AlcShape> shapes;
+    /** Single background thread writing the records */
+    private ExecutorService writer;
+    /** Number of records handed over but not yet written */
+    private final AtomicInteger pending = new AtomicInteger();
+    /** Journal being appended to - only used on the writing thread */
+    private FileChannel channel;
+    /** Bytes written since the journal was last replaced - only used on the writing thread */
+    private long written = 0;
+    /** Set by the writing thread when the journal should be replaced */
+    private volatile boolean checkpointDue = false;
+    // The rest is only used on the Swing thread
+    /** The id of each shape in the list */
+    private final IdentityHashMap<AlcShape, Integer> ids = new IdentityHashMap<AlcShape, Integer>();
+    /** The id for the next shape added */
+    private int nextId = 0;
+    /** Changes to the list since the last record */
+    private final ArrayList<Op> ops = new ArrayList<Op>();
+    /** Shapes changed in place since the last record */
+    private final IdentityHashMap<AlcShape, Boolean> changed = new IdentityHashMap<AlcShape, Boolean>();
+
+    /**
+     * Create a journal, nothing is written until it is started
+     * @param file      The journal file
+     * @param shapes    The shapes to journal
+     */
+    AlcJournal(File file, List<AlcShape> shapes) {
+        this.file = file;
+        this.shapes = shapes;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // RECORDING
+    //////////////////////////////////////////////////////////////
+    /** Start a new journal holding the current shapes, replacing any earlier journal */
+    void start() {
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Alchemy Journal");
+                thread.setDaemon(true);
+                // Drawing comes first
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        ids.clear();
+        for (int i = 0; i < shapes.size(); i++) {
+            ids.put(shapes.get(i), nextId++);
+        }
+        checkpoint();
+    }
+
+    /** Record a shape added to the list
+     * @param shape     The shape
+     * @param index     Where it was added
+     */
+    void inserted(AlcShape shape, int index) {
+        int id = nextId++;
+        ids.put(shape, id);
+        ops.add(new Op(OP_INSERT, index, id, shape));
+    }
+
+    /** Record a shape removed from the list
+     * @param shape     The shape
+     * @param index     Where it was removed from
+     */
+    void removed(AlcShape shape, int index) {
+        ids.remove(shape);
+        ops.add(new Op(OP_REMOVE, index, -1, null));
+    }
+
+    /** Record every shape removed from the list */
+    void cleared() {
+        ids.clear();
+        changed.clear();
+        ops.add(new Op(OP_CLEAR, 0, -1, null));
+    }
+
+    /** Record a shape about to be changed in place
+     * @param shape     The shape
+     */
+    void changing(AlcShape shape) {
+        changed.put(shape, Boolean.TRUE);
+    }
+
+    /** Hand the changes since the last record to the writing thread */
+    void commit() {
+        if (writer == null) {
+            return;
+        }
+        if (checkpointDue) {
+            checkpoint();
+            return;
+        }
+        if (ops.isEmpty() && changed.isEmpty()) {
+            return;
+        }
+        Record record = new Record(ops.size() + changed.size());
+        IdentityHashMap<AlcShape, Boolean> inserted = new IdentityHashMap<AlcShape, Boolean>();
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            record.add(op);
+            if (op.shape != null) {
+                inserted.put(op.shape, Boolean.TRUE);
+            }
+        }
+        // Shapes added in this record already have their latest state
+        for (AlcShape shape : changed.keySet()) {
+            Integer id = ids.get(shape);
+            if (id != null && !inserted.containsKey(shape)) {
+                record.add(new Op(OP_CHANGE, 0, id, shape));
+            }
+        }
+        ops.clear();
+        changed.clear();
+        submit(record, false);
+    }
+
+    /** Replace the journal with a single record holding the current shapes */
+    private void checkpoint() {
+        Record record = new Record(shapes.size() + 1);
+        record.add(new Op(OP_CLEAR, 0, -1, null));
+        for (int i = 0; i < shapes.size(); i++) {
+            AlcShape shape = shapes.get(i);
+            Integer id = ids.get(shape);
+            if (id == null) {
+                id = nextId++;
+                ids.put(shape, id);
+            }
+            record.add(new Op(OP_INSERT, i, id, shape));
+        }
+        ops.clear();
+        changed.clear();
+        checkpointDue = false;
+        submit(record, true);
+    }
+
+    /** Write a record on the writing thread */
+    private void submit(final Record record, final boolean replace) {
+        pending.incrementAndGet();
+        writer.execute(new Runnable() {
+
+            public void run() {
+                try {
+                    byte[] data = record.encode();
+                    if (replace) {
+                        replace(data);
+                    } else {
+                        append(data);
+                    }
+                    // Force the records that arrived together to disk together
+                    if (pending.get() == 1 && channel != null) {
+                        channel.force(false);
+                    }
+                } catch (IOException ex) {
+                    System.err.println(ex);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /** Append a record to the journal - on the writing thread */
+    private void append(byte[] data) throws IOException {
+        if (channel == null) {
+            // Try to start a new journal with the next record
+            checkpointDue = true;
+            throw new IOException("Journal not open: " + file.getPath());
+        }
+        writeFully(channel, ByteBuffer.wrap(data));
+        written += data.length;
+        if (written > CHECKPOINT_BYTES) {
+            checkpointDue = true;
+        }
+    }
+
+    /** Write a new journal holding a single record, then put it in place of the old one - on the writing thread */
+    private void replace(byte[] data) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            FileChannel tempChannel = output.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.flip();
+            writeFully(tempChannel, header);
+            writeFully(tempChannel, ByteBuffer.wrap(data));
+            tempChannel.force(false);
+        } finally {
+            output.close();
+        }
+        closeChannel();
+        // Atomic, so a crash leaves either the old journal or the new one
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = new FileOutputStream(file, true).getChannel();
+        written = 0;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** Stop journaling once the records waiting have been written, then delete the journal.
+     *  Called when Alchemy closes normally */
+    void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.execute(new Runnable() {
+
+            public void run() {
+                try {
+                    closeChannel();
+                } catch (IOException ex) {
+                    System.err.println(ex);
+                }
+                file.delete();
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /** A single change to the list */
+    private static class Op {
+
+        final byte type;
+        final int index,  id;
+        /** The shape added or changed, otherwise null */
+        final AlcShape shape;
+
+        Op(byte type, int index, int id, AlcShape shape) {
+            this.type = type;
+            this.index = index;
+            this.id = id;
+            this.shape = shape;
+        }
+    }
+
+    /** The changes written together, taken on the Swing thread and encoded on the writing thread */
+    private static class Record {
+
+        final ArrayList<Op> ops;
+        /** State of each shape added or changed, in order */
+        final ArrayList<AlcShape.State> states;
+        final ArrayList<Boolean> pens;
+
+        Record(int capacity) {
+            ops = new ArrayList<Op>(capacity);
+            states = new ArrayList<AlcShape.State>(capacity);
+            pens = new ArrayList<Boolean>(capacity);
+        }
+
+        void add(Op op) {
+            ops.add(op);
+            if (op.shape != null) {
+                // The state shares the path and spine, copied only if the shape changes them later
+                states.add(op.shape.getState());
+                pens.add(op.shape.isPenShape());
+            }
+        }
+
+        /** Encode as the record length, checksum, then the changes followed by the shapes */
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(0);
+            data.writeInt(0);
+            data.writeInt(ops.size());
+            for (int i = 0; i < ops.size(); i++) {
+                Op op = ops.get(i);
+                data.writeByte(op.type);
+                switch (op.type) {
+                    case OP_INSERT:
+                        data.writeInt(op.index);
+                        data.writeInt(op.id);
+                        break;
+                    case OP_REMOVE:
+                        data.writeInt(op.index);
+                        break;
+                    case OP_CHANGE:
+                        data.writeInt(op.id);
+                        break;
+                }
+            }
+            data.write(AlcDocument.encodeShapes(states, pens));
+            data.close();
+
+            byte[] record = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(record, 8, record.length - 8);
+            ByteBuffer header = ByteBuffer.wrap(record, 0, 8);
+            header.putInt(record.length - 8);
+            header.putInt((int) crc.getValue());
+            return record;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // REPLAY
+    //////////////////////////////////////////////////////////////
+    /**
+     * Read back the shapes in the journal, as they were when the last complete record was written
+     * @return  The shapes, empty if there is no journal
+     */
+    List<AlcShape> replay() {
+        ArrayList<AlcShape> replayed = new ArrayList<AlcShape>();
+        if (!file.exists()) {
+            return replayed;
+        }
+        HashMap<Integer, AlcShape> byId = new HashMap<Integer, AlcShape>();
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return replayed;
+            }
+            long remaining = file.length() - 8;
+            while (remaining >= 8) {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                remaining -= 8;
+                if (length < 4 || length > remaining) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                input.readFully(record);
+                remaining -= length;
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum || !apply(record, replayed, byId)) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            // Keep the records read so far
+            System.err.println(ex);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ex) {
+                    System.err.println(ex);
+                }
+            }
+        }
+        return replayed;
+    }
+
+    /** Apply a record to the shapes read back so far
+     * @return  True if the record was applied, false if it is damaged
+     */
+    private static boolean apply(byte[] record, ArrayList<AlcShape> replayed, HashMap<Integer, AlcShape> byId) {
+        ArrayList<Op> recordOps = new ArrayList<Op>();
+        AlcShape[] recordShapes;
+        try {
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                byte type = data.readByte();
+                switch (type) {
+                    case OP_CLEAR:
+                        recordOps.add(new Op(type, 0, -1, null));
+                        break;
+                    case OP_INSERT:
+                        recordOps.add(new Op(type, data.readInt(), data.readInt(), null));
+                        break;
+                    case OP_REMOVE:
+                        recordOps.add(new Op(type, data.readInt(), -1, null));
+                        break;
+                    case OP_CHANGE:
+                        recordOps.add(new Op(type, 0, data.readInt(), null));
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            int offset = record.length - data.available();
+            recordShapes = AlcDocument.decodeShapes(ByteBuffer.wrap(record, offset, record.length - offset));
+        } catch (IOException ex) {
+            return false;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+
+        // Only change the shapes once the whole record has been read
+        int next = 0;
+        for (int i = 0; i < recordOps.size(); i++) {
+            Op op = recordOps.get(i);
+            switch (op.type) {
+                case OP_CLEAR:
+                    replayed.clear();
+                    byId.clear();
+                    break;
+                case OP_INSERT:
+                    if (next < recordShapes.length) {
+                        AlcShape shape = recordShapes[next++];
+                        replayed.add(Math.max(0, Math.min(op.index, replayed.size())), shape);
+                        byId.put(op.id, shape);
+                    }
+                    break;
+                case OP_REMOVE:
+                    if (op.index >= 0 && op.index < replayed.size()) {
+                        replayed.remove(op.index);
+                    }
+                    break;
+                case OP_CHANGE:
+                    if (next < recordShapes.length) {
+                        AlcShape shape = recordShapes[next++];
+                        AlcShape existing = byId.get(op.id);
+                        if (existing != null) {
+                            existing.setState(shape.getState());
+                            existing.setPenShape(shape.isPenShape());
+                        }
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+}
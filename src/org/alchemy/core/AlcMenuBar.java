@@ -102,6 +102,33 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         newItem.setup(newTitle, newKey);
         fileMenu.add(newItem);
 
+        // Open
+        AbstractAction openAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                File file = AlcUtil.showFileChooser(new File(Alchemy.preferences.exportDirectory), false);
+                if (file != null && file.exists()) {
+                    if (!Alchemy.session.openDocument(file)) {
+                        AlcUtil.showConfirmDialogFromBundle("openErrorDialogTitle", "openErrorDialogMessage");
+                    }
+                }
+            }
+        };
+        AlcMenuItem openItem = new AlcMenuItem(openAction);
+        openItem.setup(getS("openTitle"));
+        fileMenu.add(openItem);
+
+        // Save
+        AbstractAction saveAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                saveDocument();
+            }
+        };
+        AlcMenuItem saveItem = new AlcMenuItem(saveAction);
+        saveItem.setup(getS("saveTitle"));
+        fileMenu.add(saveItem);
+
         fileMenu.add(new JSeparator());
 
         // Export
@@ -171,6 +198,20 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
 
         AlcMenu editMenu = new AlcMenu(getS("editTitle"));
 
+        // Redo
+        String redoTitle = getS("redoTitle");
+        AbstractAction redoAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                Alchemy.canvas.redo();
+            }
+        };
+        AlcMenuItem redoItem = new AlcMenuItem(redoAction);
+        // Shortcut - Modifier y
+        int redoKey = Alchemy.shortcuts.setShortcut(redoItem, KeyEvent.VK_Y, "redoTitle", redoAction, KEY_MODIFIER);
+        redoItem.setup(redoTitle, redoKey);
+        editMenu.add(redoItem);
+
         // Copy
         String copyTitle = getS("copyTitle");
         AbstractAction copyAction = new AbstractAction() {
@@ -437,6 +478,21 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         autoClearItem.setState(Alchemy.preferences.sessionAutoClear);
         sessionMenu.add(autoClearItem);
 
+        // Vector Log
+        AbstractAction vectorLogAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                AlcCheckBoxMenuItem source = (AlcCheckBoxMenuItem) e.getSource();
+                Alchemy.preferences.sessionVectorLog = source.getState();
+                // Start a new session file in the new format
+                Alchemy.session.restartSession();
+            }
+        };
+        AlcCheckBoxMenuItem vectorLogItem = new AlcCheckBoxMenuItem(vectorLogAction);
+        vectorLogItem.setup(getS("vectorLogTitle"));
+        vectorLogItem.setState(Alchemy.preferences.sessionVectorLog);
+        sessionMenu.add(vectorLogItem);
+
         sessionMenu.add(new JSeparator());
 
         // Load Session PDF
@@ -535,6 +591,17 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         restartItem.setup(restartTitle);
         sessionMenu.add(restartItem);
 
+        // Export Vector Log
+        AbstractAction exportLogAction = new AbstractAction() {
+
+            public void actionPerformed(ActionEvent e) {
+                exportLog();
+            }
+        };
+        AlcMenuItem exportLogItem = new AlcMenuItem(exportLogAction);
+        exportLogItem.setup(getS("exportLogTitle"));
+        sessionMenu.add(exportLogItem);
+
         this.add(sessionMenu);
 
 
@@ -874,6 +941,58 @@ class AlcMenuBar extends JMenuBar implements AlcConstants {
         }
     }
 
+    /** Ask for a path to save the canvas to as a document */
+    private void saveDocument() {
+
+        final AlcFileChooser fc = new AlcFileChooser(Alchemy.preferences.exportDirectory);
+        fc.setDialogTitle(Alchemy.bundle.getString("saveTitle"));
+        fc.setAcceptAllFileFilterUsed(false);
+        fc.setFileFilter(new ExportFileFilter("ALC"));
+        fc.setSelectedFile(new File(Alchemy.bundle.getString("defaultFileName")));
+
+        int returnVal = fc.showSaveDialog(this);
+        if (returnVal == AlcFileChooser.APPROVE_OPTION) {
+
+            File file = fc.getSelectedFile();
+            String parent = file.getParent();
+            if (parent != null) {
+                Alchemy.preferences.exportDirectory = parent;
+            }
+            Alchemy.session.saveDocument(file);
+        }
+    }
+
+    /** Ask for a session log, then a path and format to export its frames to */
+    private void exportLog() {
+        File log = AlcUtil.showFileChooser(new File(Alchemy.preferences.sessionPath), false);
+        if (log == null || !log.exists()) {
+            return;
+        }
+
+        final AlcFileChooser fc = new AlcFileChooser(Alchemy.preferences.exportDirectory);
+        fc.setDialogTitle(Alchemy.bundle.getString("exportFileTitle"));
+        fc.setAcceptAllFileFilterUsed(false);
+        fc.setFileFilter(new ExportFileFilter("PNG"));
+        fc.setFileFilter(new ExportFileFilter("SVG"));
+        fc.setFileFilter(new ExportFileFilter("PDF"));
+        String name = log.getName();
+        if (name.endsWith(AlcFrameLog.EXTENSION)) {
+            name = name.substring(0, name.length() - AlcFrameLog.EXTENSION.length());
+        }
+        fc.setSelectedFile(new File(name));
+
+        int returnVal = fc.showSaveDialog(this);
+        if (returnVal == AlcFileChooser.APPROVE_OPTION) {
+
+            File file = fc.getSelectedFile();
+            String parent = file.getParent();
+            if (parent != null) {
+                Alchemy.preferences.exportDirectory = parent;
+            }
+            Alchemy.session.exportLog(log, file, fc.getFileFilter().getDescription());
+        }
+    }
+
     /** Copy the canvas to the clipboard as an image */
     private void copy() {
         // TODO - Implement Vector clipboard copy function
@@ -0,0 +1,424 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.geom.PathIterator;
+
+/**
+ * Simplifies the path of a finished shape <br>
+ * Each subpath is flattened to a polyline and thinned out with the
+ * Ramer-Douglas-Peucker algorithm to find the corners of the path.
+ * The points between corners are then refitted with cubic Bezier curves
+ * following Philip Schneider's 'An Algorithm for Automatically Fitting Digitized Curves'
+ * from Graphics Gems, keeping every point within the tolerance of the curves.
+ */
+class AlcPathSimplifier {
+
+    /** Turns sharper than this (in radians) are kept as corners rather than smoothed over */
+    private static final double CORNER_ANGLE = Math.PI / 2;
+    /** Number of times the curve parameters are refined before splitting a curve */
+    private static final int MAX_ITERATIONS = 4;
+    /** Largest allowed distance from the original path */
+    private final double tolerance;
+    /** Squared tolerance */
+    private final double fitError;
+    /** Points of the subpath being simplified */
+    private double[] xs = new double[64],  ys = new double[64];
+    private int size;
+    /** The current subpath has lines, even if they all end on the same point */
+    private boolean hasLines;
+    /** Indices of the points kept by the RDP step */
+    private int[] kept = new int[64];
+    private int keptSize;
+    /** Working arrays for the curve fitting */
+    private double[] px = new double[64],  py = new double[64],  u = new double[64];
+    /** The simplified path */
+    private AlcGeometry result;
+    /** Start of the last closed subpath, where a subpath without a move of its own begins */
+    private double closedX,  closedY;
+    private boolean hasClosed;
+
+    /**
+     * @param tolerance     Largest allowed distance from the original path in pixels
+     */
+    AlcPathSimplifier(float tolerance) {
+        this.tolerance = tolerance;
+        this.fitError = tolerance * tolerance;
+    }
+
+    /** Simplify a path
+     * @param geometry  The path to simplify, left unchanged
+     * @return          The simplified path, or null if it would not have fewer segments
+     */
+    AlcGeometry simplify(AlcGeometry geometry) {
+        result = new AlcGeometry(AlcGeometry.DEFAULT_CAPACITY);
+        size = 0;
+        hasClosed = false;
+        float[] segment = new float[6];
+        PathIterator pi = geometry.getPathIterator(null, tolerance / 4);
+        while (!pi.isDone()) {
+            switch (pi.currentSegment(segment)) {
+                case PathIterator.SEG_MOVETO:
+                    flush(false);
+                    hasClosed = false;
+                    addPoint(segment[0], segment[1]);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    if (size == 0 && hasClosed) {
+                        addPoint(closedX, closedY);
+                    }
+                    addPoint(segment[0], segment[1]);
+                    hasLines = true;
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    flush(true);
+                    break;
+            }
+            pi.next();
+        }
+        flush(false);
+        AlcGeometry simplified = result;
+        result = null;
+        if (simplified.getSegmentCount() >= geometry.getSegmentCount()) {
+            return null;
+        }
+        simplified.trimToSize();
+        return simplified;
+    }
+
+    /** Add a point to the current subpath, dropping repeats */
+    private void addPoint(double x, double y) {
+        if (size > 0 && xs[size - 1] == x && ys[size - 1] == y) {
+            return;
+        }
+        if (size == xs.length) {
+            xs = grow(xs);
+            ys = grow(ys);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /** Simplify the current subpath and add it to the result */
+    private void flush(boolean closed) {
+        if (size == 0) {
+            if (closed) {
+                result.closePath();
+            }
+            return;
+        }
+        result.moveTo((float) xs[0], (float) ys[0]);
+        if (size == 1 && hasLines) {
+            // Keep a dot as a line to the same point so it is still drawn
+            result.lineTo((float) xs[0], (float) ys[0]);
+        } else if (size > 1) {
+            reduce();
+            // Fit curves between the corners
+            int start = 0;
+            for (int i = 1; i < keptSize; i++) {
+                if (i == keptSize - 1 || isCorner(kept[i - 1], kept[i], kept[i + 1])) {
+                    fitSection(start, i);
+                    start = i;
+                }
+            }
+        }
+        if (closed) {
+            result.closePath();
+            closedX = xs[0];
+            closedY = ys[0];
+            hasClosed = true;
+        }
+        size = 0;
+        hasLines = false;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // RAMER-DOUGLAS-PEUCKER
+    //////////////////////////////////////////////////////////////
+    /** Keep only the points needed to stay within the tolerance of the subpath */
+    private void reduce() {
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        double maxDistance = fitError;
+        // Work through the sections with a stack rather than recursion, strokes can be long
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double furthest = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSq(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (d > furthest) {
+                    furthest = d;
+                    index = i;
+                }
+            }
+            if (index >= 0 && furthest > maxDistance) {
+                keep[index] = true;
+                if (top + 4 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, top);
+                    stack = grown;
+                }
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        if (kept.length < size) {
+            kept = new int[size];
+        }
+        keptSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                kept[keptSize++] = i;
+            }
+        }
+    }
+
+    /** Check if all the points between two points lie on the line between them */
+    private boolean isStraight(int first, int last) {
+        for (int i = first + 1; i < last; i++) {
+            if (segmentDistanceSq(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]) > fitError / 16) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Check if the path turns sharply at point b */
+    private boolean isCorner(int a, int b, int c) {
+        double ax = xs[b] - xs[a], ay = ys[b] - ys[a];
+        double bx = xs[c] - xs[b], by = ys[c] - ys[b];
+        double angle = Math.abs(Math.atan2(ax * by - ay * bx, ax * bx + ay * by));
+        return angle > CORNER_ANGLE;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // CURVE FITTING
+    //////////////////////////////////////////////////////////////
+    /** Fit curves to all of the points between two kept points */
+    private void fitSection(int from, int to) {
+        int start = kept[from];
+        int n = kept[to] - start + 1;
+        if (px.length < n) {
+            px = new double[n];
+            py = new double[n];
+            u = new double[n];
+        }
+        System.arraycopy(xs, start, px, 0, n);
+        System.arraycopy(ys, start, py, 0, n);
+        // Straight sections stay as lines
+        if (to - from == 1 && isStraight(start, start + n - 1)) {
+            result.lineTo((float) px[1], (float) py[1]);
+            return;
+        }
+        double[] tan1 = normalize(px[1] - px[0], py[1] - py[0]);
+        double[] tan2 = normalize(px[n - 2] - px[n - 1], py[n - 2] - py[n - 1]);
+        fitCubic(0, n - 1, tan1, tan2);
+    }
+
+    /** Fit a cubic curve to the points first to last, splitting it where the fit is not close enough */
+    private void fitCubic(int first, int last, double[] tan1, double[] tan2) {
+        if (last - first == 1) {
+            // Two points, place the control points a third of the way along the tangents
+            double dist = Math.hypot(px[last] - px[first], py[last] - py[first]) / 3;
+            addCurve(px[first], py[first],
+                    px[first] + tan1[0] * dist, py[first] + tan1[1] * dist,
+                    px[last] + tan2[0] * dist, py[last] + tan2[1] * dist,
+                    px[last], py[last]);
+            return;
+        }
+        chordLengthParameterize(first, last);
+        double[] bezier = generateBezier(first, last, tan1, tan2);
+        int[] split = new int[1];
+        double error = computeMaxError(first, last, bezier, split);
+        if (error < fitError) {
+            addCurve(bezier);
+            return;
+        }
+        // Close to fitting, try improving the parameters
+        if (error < fitError * 4) {
+            for (int i = 0; i < MAX_ITERATIONS; i++) {
+                reparameterize(first, last, bezier);
+                bezier = generateBezier(first, last, tan1, tan2);
+                error = computeMaxError(first, last, bezier, split);
+                if (error < fitError) {
+                    addCurve(bezier);
+                    return;
+                }
+            }
+        }
+        // Split at the point of most error and fit each half
+        int middle = split[0];
+        double[] center = normalize(px[middle - 1] - px[middle + 1], py[middle - 1] - py[middle + 1]);
+        fitCubic(first, middle, tan1, center);
+        fitCubic(middle, last, new double[]{-center[0], -center[1]}, tan2);
+    }
+
+    /** Least squares fit of the control points along the given tangents */
+    private double[] generateBezier(int first, int last, double[] tan1, double[] tan2) {
+        double c00 = 0, c01 = 0, c11 = 0, x0 = 0, x1 = 0;
+        double fx = px[first], fy = py[first], lx = px[last], ly = py[last];
+        for (int i = first; i <= last; i++) {
+            double t = u[i];
+            double b0 = bernstein0(t), b1 = bernstein1(t), b2 = bernstein2(t), b3 = bernstein3(t);
+            double a1x = tan1[0] * b1, a1y = tan1[1] * b1;
+            double a2x = tan2[0] * b2, a2y = tan2[1] * b2;
+            c00 += a1x * a1x + a1y * a1y;
+            c01 += a1x * a2x + a1y * a2y;
+            c11 += a2x * a2x + a2y * a2y;
+            double tx = px[i] - (fx * (b0 + b1) + lx * (b2 + b3));
+            double ty = py[i] - (fy * (b0 + b1) + ly * (b2 + b3));
+            x0 += a1x * tx + a1y * ty;
+            x1 += a2x * tx + a2y * ty;
+        }
+        double det = c00 * c11 - c01 * c01;
+        double alpha1 = 0, alpha2 = 0;
+        if (det != 0) {
+            alpha1 = (x0 * c11 - c01 * x1) / det;
+            alpha2 = (c00 * x1 - c01 * x0) / det;
+        }
+        double segmentLength = Math.hypot(lx - fx, ly - fy);
+        double epsilon = 1.0e-6 * segmentLength;
+        // Fall back to the simple heuristic if the fit is degenerate
+        if (alpha1 < epsilon || alpha2 < epsilon) {
+            alpha1 = alpha2 = segmentLength / 3;
+        }
+        return new double[]{fx, fy,
+                    fx + tan1[0] * alpha1, fy + tan1[1] * alpha1,
+                    lx + tan2[0] * alpha2, ly + tan2[1] * alpha2,
+                    lx, ly};
+    }
+
+    /** Improve the curve parameter of each point with a Newton-Raphson step */
+    private void reparameterize(int first, int last, double[] bezier) {
+        for (int i = first; i <= last; i++) {
+            double t = u[i];
+            double s = 1 - t;
+            // Point, first and second derivative of the curve at t
+            double qx = pointAt(bezier, 0, t), qy = pointAt(bezier, 1, t);
+            double d1x = 3 * (s * s * (bezier[2] - bezier[0]) + 2 * s * t * (bezier[4] - bezier[2]) + t * t * (bezier[6] - bezier[4]));
+            double d1y = 3 * (s * s * (bezier[3] - bezier[1]) + 2 * s * t * (bezier[5] - bezier[3]) + t * t * (bezier[7] - bezier[5]));
+            double d2x = 6 * (s * (bezier[4] - 2 * bezier[2] + bezier[0]) + t * (bezier[6] - 2 * bezier[4] + bezier[2]));
+            double d2y = 6 * (s * (bezier[5] - 2 * bezier[3] + bezier[1]) + t * (bezier[7] - 2 * bezier[5] + bezier[3]));
+            double numerator = (qx - px[i]) * d1x + (qy - py[i]) * d1y;
+            double denominator = d1x * d1x + d1y * d1y + (qx - px[i]) * d2x + (qy - py[i]) * d2y;
+            if (denominator != 0) {
+                u[i] = Math.max(0, Math.min(1, t - numerator / denominator));
+            }
+        }
+    }
+
+    /** Find the point furthest from the curve
+     * @return  The squared distance of the furthest point
+     */
+    private double computeMaxError(int first, int last, double[] bezier, int[] split) {
+        double maxDistance = 0;
+        split[0] = (first + last) / 2;
+        for (int i = first + 1; i < last; i++) {
+            double dx = pointAt(bezier, 0, u[i]) - px[i];
+            double dy = pointAt(bezier, 1, u[i]) - py[i];
+            double distance = dx * dx + dy * dy;
+            if (distance >= maxDistance) {
+                maxDistance = distance;
+                split[0] = i;
+            }
+        }
+        return maxDistance;
+    }
+
+    /** Set the curve parameter of each point from its distance along the polyline */
+    private void chordLengthParameterize(int first, int last) {
+        u[first] = 0;
+        for (int i = first + 1; i <= last; i++) {
+            u[i] = u[i - 1] + Math.hypot(px[i] - px[i - 1], py[i] - py[i - 1]);
+        }
+        double length = u[last];
+        for (int i = first + 1; i <= last; i++) {
+            u[i] = length == 0 ? 1 : u[i] / length;
+        }
+    }
+
+    private void addCurve(double[] b) {
+        addCurve(b[0], b[1], b[2], b[3], b[4], b[5], b[6], b[7]);
+    }
+
+    private void addCurve(double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3) {
+        result.curveTo((float) x1, (float) y1, (float) x2, (float) y2, (float) x3, (float) y3);
+    }
+
+    //////////////////////////////////////////////////////////////
+    // UTILITIES
+    //////////////////////////////////////////////////////////////
+    /** Get the x (axis 0) or y (axis 1) coordinate of a cubic curve at t */
+    private static double pointAt(double[] b, int axis, double t) {
+        return bernstein0(t) * b[axis] + bernstein1(t) * b[axis + 2] + bernstein2(t) * b[axis + 4] + bernstein3(t) * b[axis + 6];
+    }
+
+    private static double bernstein0(double t) {
+        double s = 1 - t;
+        return s * s * s;
+    }
+
+    private static double bernstein1(double t) {
+        double s = 1 - t;
+        return 3 * t * s * s;
+    }
+
+    private static double bernstein2(double t) {
+        return 3 * t * t * (1 - t);
+    }
+
+    private static double bernstein3(double t) {
+        return t * t * t;
+    }
+
+    /** Squared distance from point p to the line segment a-b */
+    private static double segmentDistanceSq(double x, double y, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        double ex = ax + t * dx - x, ey = ay + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    private static double[] normalize(double x, double y) {
+        double length = Math.hypot(x, y);
+        if (length == 0) {
+            return new double[]{0, 0};
+        }
+        return new double[]{x / length, y / length};
+    }
+
+    private static double[] grow(double[] array) {
+        double[] grown = new double[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
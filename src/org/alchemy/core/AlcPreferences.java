@@ -76,6 +76,7 @@ class AlcPreferences implements AlcConstants {
     private AlcToggleButton generalTabButton;
     private JComboBox interfaceBox;
     private JComboBox undoDepthBox;
+    private JComboBox renderingBox;
     private JComboBox localeBox;
     private JCheckBox recordOnStartUp;
     private JTextField sessionDirectoryTextField;
@@ -109,6 +110,8 @@ class AlcPreferences implements AlcConstants {
     boolean sessionAutoClear;
     /** Link to current setting */
     boolean sessionLink;
+    /** Record the changes to the shapes into a log rather than drawing PDF pages */
+    boolean sessionVectorLog;
     /** The start section of the session file name */
     String sessionFilePreName;
     /** Date format for the session pdf */
@@ -158,6 +161,12 @@ class AlcPreferences implements AlcConstants {
     /** Color */
     int color;
     int undoDepth;
+    /** Target canvas frame rate */
+    int frameRate;
+    /** Draw at draft quality while drawing */
+    boolean interactiveQuality;
+    /** Largest distance in pixels committed shapes may be moved by simplifying them, 0 for off */
+    float simplifyTolerance;
     String locale;
     //////////////////////////////////////////////////////////////
     // GENERAL
@@ -181,6 +190,7 @@ class AlcPreferences implements AlcConstants {
         sessionRecordingInterval = prefs.getInt("Recording Interval", 30000);
         sessionAutoClear = prefs.getBoolean("Auto Clear Canvas", false);
         sessionLink = prefs.getBoolean("Link to Current Session", true);
+        sessionVectorLog = prefs.getBoolean("Record Vector Log", false);
         sessionFilePreName = prefs.get("Session File Pre Name", defaultSessionFilePreName);
         sessionFileDateFormat = prefs.get("Session File Date Format", defaultSessionFileDateFormat);
 
@@ -204,6 +214,9 @@ class AlcPreferences implements AlcConstants {
         
         exportDirectory = prefs.get("Export Directory", DIR_DESKTOP);
         undoDepth = prefs.getInt("Undo Depth", 0);
+        frameRate = prefs.getInt("Frame Rate", 60);
+        interactiveQuality = prefs.getBoolean("Interactive Quality", false);
+        simplifyTolerance = prefs.getFloat("Simplify Tolerance", 0F);
         locale = prefs.get("Locale", "system");
 
     }
@@ -219,6 +232,7 @@ class AlcPreferences implements AlcConstants {
         prefs.putInt("Recording Interval", sessionRecordingInterval);
         prefs.putBoolean("Auto Clear Canvas", sessionAutoClear);
         prefs.putBoolean("Link to Current Session", sessionLink);
+        prefs.putBoolean("Record Vector Log", sessionVectorLog);
         prefs.put("Session File Pre Name", sessionFilePreName);
         prefs.put("Session File Date Format", sessionFileDateFormat);
 
@@ -236,6 +250,9 @@ class AlcPreferences implements AlcConstants {
         prefs.put("Export Directory", exportDirectory);
         
         prefs.putInt("Undo Depth", undoDepth);
+        prefs.putInt("Frame Rate", Alchemy.canvas.getFrameRate());
+        prefs.putBoolean("Interactive Quality", interactiveQuality);
+        prefs.putFloat("Simplify Tolerance", Alchemy.canvas.getSimplifyTolerance());
         prefs.put("Locale", locale);
         
         if (switchVectorApp != null) {
@@ -425,6 +442,7 @@ class AlcPreferences implements AlcConstants {
         } else {
             interfaceBox.setSelectedIndex(0);
         }
+        renderingBox.setSelectedIndex(interactiveQuality ? 1 : 0);
         if (currentTab == SESSION) {
             bgPanel.remove(sessionPanel);
             bgPanel.add(generalPanel, BorderLayout.PAGE_START);
@@ -595,6 +613,20 @@ class AlcPreferences implements AlcConstants {
         undoDepthSelector.add(undoDepthBox);
         //undoDepthSelector.add(restart);
         gp.add(undoDepthSelector);
+
+
+        // Rendering Quality SELECTOR
+        JPanel renderingSelector = new JPanel(new FlowLayout(FlowLayout.CENTER, 2, 2));
+        renderingSelector.setOpaque(false);
+        renderingSelector.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+        renderingSelector.add(new JLabel(Alchemy.bundle.getString("rendering") + ": "));
+
+        String[] renderingString = {Alchemy.bundle.getString("fullQuality"),
+                                    Alchemy.bundle.getString("interactiveQuality")};
+        renderingBox = new JComboBox(renderingString);
+        renderingBox.setSelectedIndex(interactiveQuality ? 1 : 0);
+        renderingSelector.add(renderingBox);
+        gp.add(renderingSelector);
         
         
         // Locale Selector
@@ -836,6 +868,7 @@ class AlcPreferences implements AlcConstants {
                 recordOnStartUp.setSelected(sessionRecordingState);
                 interfaceBox.setSelectedIndex(0);
                 undoDepthBox.setSelectedIndex(0);
+                renderingBox.setSelectedIndex(0);
                 localeBox.setSelectedIndex(0);
             }
         });
@@ -866,6 +899,8 @@ class AlcPreferences implements AlcConstants {
                         // Set the interface to simple or not
                         Alchemy.preferences.simpleToolBar = (interfaceBox.getSelectedIndex() == 1) ? true : false;
                         Alchemy.preferences.undoDepth=(undoDepthBox.getSelectedIndex());
+                        interactiveQuality = (renderingBox.getSelectedIndex() == 1);
+                        Alchemy.canvas.setInteractiveQuality(interactiveQuality);
                         Alchemy.preferences.locale=(localeIntToString(localeBox.getSelectedIndex()));
                         // If the session file name has changed
                         if (!sessionFileRenamePre.getText().equals(sessionFilePreName) || !sessionFileRenameDate.getText().equals(sessionFileDateFormat)) {
@@ -27,6 +27,18 @@ import eu.medsea.util.MimeUtil;
 import java.awt.Graphics2D;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
 import com.lowagie.text.*;
 import com.lowagie.text.pdf.*;
 import com.lowagie.text.xml.xmp.*;
@@ -42,15 +54,26 @@ import org.w3c.dom.DOMImplementation;
 /**
  * Class to control Alchemy 'sessions'
  * Timing, recording, loading of PDF drawing sessions 
+ * <p>
+ * Pages are recorded by taking a snapshot of the canvas on the Swing thread,
+ * then writing it to the session PDF on a background thread.
  */
 class AlcSession implements ActionListener, AlcConstants {
 
+    /** Most pages that may wait to be written, further manual saves are refused */
+    private static final int MAX_PENDING_PAGES = 2;
     /** Recording Timer */
     private javax.swing.Timer timer;
     /** Recording on or off */
     private boolean recordState;
-    /** PDF write file */
-    private File pdfWriteFile;
+    /** Writer for the session being recorded, null until the first page */
+    private AlcSessionWriter sessionWriter;
+    /** Log of the session being recorded as a vector log, null until the first frame */
+    private AlcFrameLog frameLog;
+    /** Single background thread writing the pages */
+    private final ExecutorService pageWriter;
+    /** Number of pages captured but not yet written - only used on the Swing thread */
+    private int pendingPages = 0;
     /** Record Indicator Timer */
     private javax.swing.Timer indicatorTimer;
     /** PDF read file */
@@ -61,8 +84,19 @@ class AlcSession implements ActionListener, AlcConstants {
     private int currentPdfReadPage = 1;
     /** Number of pages of the read PDF */
     private int maxPdfReadPage;
+    /** The document last saved or opened, so saving it again only writes what has changed */
+    private AlcDocument savedDocument;
 
     AlcSession() {
+        pageWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Alchemy Session Writer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
     }
 
     //////////////////////////////////////////////////////////////
@@ -153,21 +187,62 @@ class AlcSession implements ActionListener, AlcConstants {
         }
     }
 
-    /** Restart the session */
+    /** Restart the session, finishing the session file so the next page starts a new one */
     void restartSession() {
-        pdfWriteFile = null;
+        finishWriter();
+    }
+
+    /** Restart the session and wait until the session file has been written */
+    void finishSession() {
+        Future<?> finished = finishWriter();
+        if (finished != null) {
+            try {
+                finished.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /** Finish the session file once the pages waiting have been written
+     * @return  Completes when the file is finished, or null if there is no session
+     */
+    private Future<?> finishWriter() {
+        if (sessionWriter == null && frameLog == null) {
+            return null;
+        }
+        final AlcSessionWriter writer = sessionWriter;
+        final AlcFrameLog log = frameLog;
+        sessionWriter = null;
+        frameLog = null;
+        return pageWriter.submit(new Runnable() {
+
+            public void run() {
+                if (writer != null) {
+                    writer.finish();
+                }
+                if (log != null) {
+                    log.close();
+                }
+            }
+        });
     }
     //////////////////////////////////////////////////////////////
     // SAVE PDF 
     //////////////////////////////////////////////////////////////
     /** Return the current file being created by the pdf */
     File getCurrentPdfPath() {
-        return pdfWriteFile;
+        return sessionWriter == null ? null : sessionWriter.getFile();
     }
 
     /** Manually save a pdf page then restart the timer */
     void manualSavePage() {
-        savePage();
+        if (!savePage()) {
+            TOOLKIT.beep();
+            return;
+        }
         restartTimer();
         progressPage();
     }
@@ -178,42 +253,93 @@ class AlcSession implements ActionListener, AlcConstants {
         restartTimer();
     }
 
-    /** Save a single pdf page to the current pdf being created */
+    /** Save a single pdf page to the current pdf being created
+     * @return  True if the page will be saved, false if too many pages are waiting to be written
+     */
     boolean savePage() {
-        // If this is the first time or if the file is not actually there
-        if (pdfWriteFile == null || !pdfWriteFile.exists()) {
-            String fileName = Alchemy.preferences.sessionFilePreName + AlcUtil.dateStamp(Alchemy.preferences.sessionFileDateFormat) + ".pdf";
-            pdfWriteFile = new File(Alchemy.preferences.sessionPath, fileName);
-            System.out.println("Current PDF file: " + pdfWriteFile.getPath());
-            return saveSinglePdf(pdfWriteFile);
-
-        // Else save a temp file then join the two together
+        return savePage(MAX_PENDING_PAGES, false);
+    }
+
+    /** Take a snapshot of the canvas and queue it to be written to the current pdf,
+     *  or when recording a vector log, the changes since the last frame
+     *
+     * @param maxPending        Do not save if this many pages are waiting to be written
+     * @param showIndicator     Show the record indicator once the page is written
+     * @return                  True if the page will be saved, otherwise false
+     */
+    private boolean savePage(int maxPending, final boolean showIndicator) {
+        if (pendingPages >= maxPending) {
+            return false;
+        }
+        final Callable<Boolean> write;
+        if (Alchemy.preferences.sessionVectorLog) {
+            // If this is the first time start a new session log
+            if (frameLog == null) {
+                frameLog = new AlcFrameLog(getNewSessionFile(AlcFrameLog.EXTENSION));
+            }
+            final AlcFrameLog log = frameLog;
+            final AlcFrameLog.Frame frame = log.captureFrame(Alchemy.canvas);
+            write = new Callable<Boolean>() {
+
+                public Boolean call() {
+                    return log.writeFrame(frame);
+                }
+            };
         } else {
+            // If this is the first time start a new session file
+            if (sessionWriter == null) {
+                sessionWriter = new AlcSessionWriter(getNewSessionFile(".pdf"));
+            }
+            final AlcSessionWriter writer = sessionWriter;
+            final AlcCanvasSnapshot snapshot = new AlcCanvasSnapshot(Alchemy.canvas);
+            write = new Callable<Boolean>() {
 
-            try {
-                File temp = File.createTempFile("AlchemyPage", ".pdf");
-                // Delete temp file when program exits.
-                //temp.deleteOnExit();
-                // Make the temp pdf
-                saveSinglePdf(temp);
-                boolean jointUp = addPageToPdf(pdfWriteFile, temp);
-                if (jointUp) {
-                    //System.out.println("Pdf files joint");
-                    temp.delete();
-                    return true;
+                public Boolean call() {
+                    return writer.addPage(snapshot);
+                }
+            };
+        }
+        pendingPages++;
+
+        pageWriter.execute(new Runnable() {
+
+            public void run() {
+                boolean written = false;
+                try {
+                    written = write.call();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
                 }
+                final boolean saved = written;
+                SwingUtilities.invokeLater(new Runnable() {
 
-            } catch (IOException e) {
-                e.printStackTrace();
+                    public void run() {
+                        pendingPages--;
+                        if (saved && showIndicator) {
+                            showRecordIndicator();
+                        }
+                    }
+                });
             }
+        });
+        return true;
+    }
 
-        }
-        return false;
+    /** Get a new session file named after the current date
+     * @param extension     Extension of the file
+     * @return              The file in the session directory
+     */
+    private File getNewSessionFile(String extension) {
+        String fileName = Alchemy.preferences.sessionFilePreName + AlcUtil.dateStamp(Alchemy.preferences.sessionFileDateFormat) + extension;
+        return new File(Alchemy.preferences.sessionPath, fileName);
     }
 
     /** Save a single pdfReadPage to the current pdf being created, then clear the canvas */
     void saveClearPage() {
-        savePage();
+        if (!savePage()) {
+            TOOLKIT.beep();
+            return;
+        }
         Alchemy.canvas.clear();
         progressPage();
     }
@@ -293,11 +419,21 @@ class AlcSession implements ActionListener, AlcConstants {
      * @return      True if save worked, otherwise false
      */
     boolean saveSVG(File file) {
+        return saveSVG(file, new AlcCanvasSnapshot(Alchemy.canvas));
+    }
+
+    /** Save a snapshot of the canvas to a single paged SVG file
+     *
+     * @param file      The file object to save the svg to
+     * @param snapshot  The canvas to save
+     * @return          True if save worked, otherwise false
+     */
+    private static boolean saveSVG(File file, AlcCanvasSnapshot snapshot) {
         boolean noError = true;
         System.out.println("Save SVG Called: " + file.toString());
 
         // Get the current 'real' size of the canvas without margins/borders
-        java.awt.Rectangle bounds = Alchemy.canvas.getVisibleRect();
+        java.awt.Rectangle bounds = snapshot.getBounds();
         // Get a DOMImplementation.
         DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
         // Create an instance of org.w3c.dom.Document.
@@ -312,19 +448,16 @@ class AlcSession implements ActionListener, AlcConstants {
 
         //set the canvas size
         svgGenerator.setSVGCanvasSize(new Dimension(bounds.width, bounds.height));
-        // Ask vectorCanvas to render into the SVG Graphics2D implementation.
-        Alchemy.canvas.setGuide(false);
-        Alchemy.canvas.vectorCanvas.paintComponent(svgGenerator);
-        Alchemy.canvas.setGuide(true);
-        svgGenerator.dispose();
+        // Render the snapshot into the SVG Graphics2D implementation.
+        snapshot.paint(svgGenerator);
             
         boolean useCSS = true; // we want to use CSS style attributes
 
         //Write to the file
-        FileWriter out;
         try {
-            out = new FileWriter(file);
+            Writer out = new FileWriter(file);
             svgGenerator.stream(out, useCSS);
+            out.close();
         } catch (IOException ex) {
             System.err.println(ex);
             noError = false;
@@ -333,94 +466,156 @@ class AlcSession implements ActionListener, AlcConstants {
         return noError;
     }
 
-    /** Adds a pdfReadPage to an existing pdf file
-     * 
-     * @param mainPdf   The main pdf with multiple pages.
-     *                  Also used as the destination file.
-     * @param tempPdf   The 'new' pdf with one pdfReadPage to be added to the main pdf
-     * @return
+    /** Save a snapshot of the canvas to a PNG file
+     *
+     * @param file      The file object to save the png to
+     * @param snapshot  The canvas to save
+     * @return          True if save worked, otherwise false
      */
-    boolean addPageToPdf(File mainPdf, File tempPdf) {
+    private static boolean savePNG(File file, AlcCanvasSnapshot snapshot) {
+        java.awt.Rectangle bounds = snapshot.getBounds();
+        BufferedImage image = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height), BufferedImage.TYPE_INT_RGB);
+        snapshot.paint(image.createGraphics());
         try {
-            // Destination file created in the temp dir then we will move it
-            File dest = new File(DIR_TEMP, "Alchemy.pdf");
-            OutputStream output = new FileOutputStream(dest);
-
-            PdfReader reader = new PdfReader(mainPdf.getPath());
-            PdfReader newPdf = new PdfReader(tempPdf.getPath());
-
-            // See if the size of the canvas has increased
-            // Size of the most recent temp PDF
-            com.lowagie.text.Rectangle currentSize = newPdf.getPageSizeWithRotation(1);
-            // Size of the session pdf at present
-            com.lowagie.text.Rectangle oldSize = reader.getPageSizeWithRotation(1);
-            // Sizes to be used from now on
-            float pdfWidth = oldSize.getWidth();
-            float pdfHeight = oldSize.getHeight();
-            if (currentSize.getWidth() > pdfWidth) {
-                pdfWidth = currentSize.getWidth();
-            }
-            if (currentSize.getHeight() > pdfHeight) {
-                pdfHeight = currentSize.getHeight();
-            }
+            return ImageIO.write(image, "png", file);
+        } catch (IOException ex) {
+            System.err.println(ex);
+            return false;
+        }
+    }
 
-            // Use the new bigger canvas size if required
-            com.lowagie.text.Document document = new com.lowagie.text.Document(new com.lowagie.text.Rectangle(pdfWidth, pdfHeight), 0, 0, 0, 0);
-            PdfCopy copy = new PdfCopy(document, output);
+    //////////////////////////////////////////////////////////////
+    // EXPORT VECTOR LOG
+    //////////////////////////////////////////////////////////////
+    /** Draw each frame of a session log to a file, on a background thread
+     *
+     * @param log       The session log
+     * @param file      The file to export to, numbered for each frame when exporting SVG or PNG
+     * @param format    PDF, SVG or PNG
+     */
+    void exportLog(final File log, final File file, final String format) {
+        Thread export = new Thread(new Runnable() {
 
-            // Copy the meta data
-            document.addTitle("Alchemy Session");
-            document.addAuthor(USER_NAME);
-            document.addCreator("Alchemy <http://al.chemy.org>");
-            copy.setXmpMetadata(reader.getMetadata());
-            document.open();
+            public void run() {
+                if (exportFrames(log, file, format)) {
+                    System.out.println("Session log exported: " + file.getPath());
+                } else {
+                    System.err.println("Error exporting session log: " + log.getPath());
+                }
+            }
+        }, "Alchemy Log Export");
+        export.setPriority(Thread.NORM_PRIORITY - 1);
+        export.start();
+    }
 
-            // Holds the PDF
-            PdfContentByte cb = copy.getDirectContent();
+    /** Draw each frame of a session log to a file
+     * @return  True if every frame was exported, otherwise false
+     */
+    private static boolean exportFrames(File log, File file, final String format) {
+        AlcFrameLog.Reader reader;
+        try {
+            reader = new AlcFrameLog.Reader(log);
+        } catch (IOException ex) {
+            System.err.println(ex);
+            return false;
+        }
+        try {
+            AlcCanvasSnapshot frame;
+            // The frames go one after another into a single PDF
+            if (format.equals("PDF")) {
+                AlcSessionWriter writer = new AlcSessionWriter(file);
+                boolean noError = true;
+                while (noError && (frame = reader.next()) != null) {
+                    noError = writer.addPage(frame);
+                }
+                return writer.finish() && noError;
+            }
 
-            // Add each page from the main PDF
-            for (int i = 0; i < reader.getNumberOfPages();) {
-                ++i;
-                document.newPage();
-                cb.setDefaultColorspace(PdfName.CS, PdfName.DEVICERGB);
-                PdfImportedPage page = copy.getImportedPage(reader, i);
-                copy.addPage(page);
+            // Otherwise each frame is a file of its own, drawn several at a time
+            String name = file.getName();
+            if (name.lastIndexOf('.') > 0) {
+                name = name.substring(0, name.lastIndexOf('.'));
             }
-            // Add the last (new) page
-            document.newPage();
-            PdfImportedPage lastPage = copy.getImportedPage(newPdf, 1);
-            copy.addPage(lastPage);
-            output.flush();
-            document.close();
-            output.close();
-
-            if (dest.exists()) {
-                // Save the location of the main pdf
-                String mainPdfPath = mainPdf.getPath();
-                // Delete the old file
-                if (mainPdf.exists()) {
-                    mainPdf.delete();
-                }
-                // The final joined up pdf file
-                File joinPdf = new File(mainPdfPath);
-                // Rename the file
-                boolean success = dest.renameTo(joinPdf);
-                if (!success) {
-                    System.err.println("Error moving Pdf");
-                    return false;
+            String extension = format.toLowerCase();
+            int threads = Runtime.getRuntime().availableProcessors();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            // Only read a few frames ahead of those being drawn
+            final Semaphore queued = new Semaphore(threads * 2);
+            final AtomicBoolean noError = new AtomicBoolean(true);
+            int number = 0;
+            try {
+                while (noError.get() && (frame = reader.next()) != null) {
+                    final AlcCanvasSnapshot snapshot = frame;
+                    final File frameFile = new File(file.getParentFile(), name + "-" + String.format("%04d", ++number) + "." + extension);
+                    queued.acquire();
+                    pool.execute(new Runnable() {
+
+                        public void run() {
+                            boolean saved = false;
+                            try {
+                                saved = format.equals("SVG") ? saveSVG(frameFile, snapshot) : savePNG(frameFile, snapshot);
+                            } finally {
+                                if (!saved) {
+                                    noError.set(false);
+                                }
+                                queued.release();
+                            }
+                        }
+                    });
                 }
-
-            } else {
-                System.err.println("File does not exist?!: " + dest.getAbsolutePath());
-                return false;
+            } finally {
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
             }
-            return true;
+            return noError.get() && number > 0;
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+        } catch (IOException ex) {
+            System.err.println(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reader.close();
         }
+        return false;
     }
+
+    //////////////////////////////////////////////////////////////
+    // DOCUMENTS
+    //////////////////////////////////////////////////////////////
+    /** Save the shapes on the canvas to a document
+     *
+     * @param file  The document file
+     * @return      True if save worked, otherwise false
+     */
+    boolean saveDocument(File file) {
+        if (savedDocument == null || !savedDocument.getFile().equals(file)) {
+            savedDocument = new AlcDocument(file);
+        }
+        return savedDocument.save(Alchemy.canvas.shapes, Alchemy.canvas.getBackgroundColor());
+    }
+
+    /** Open a document, replacing the shapes on the canvas
+     *
+     * @param file  The document file
+     * @return      True if the document was opened, otherwise false
+     */
+    boolean openDocument(File file) {
+        try {
+            AlcDocument document = AlcDocument.open(file);
+            // Every chunk was checked when opened, so a damaged document has already left the canvas alone
+            // and the shapes are decoded a chunk at a time as the canvas takes them
+            Alchemy.canvas.setBackgroundColor(document.getBackgroundColor());
+            Alchemy.canvas.loadShapes(document.getShapes());
+            savedDocument = document;
+            return true;
+        } catch (IOException ex) {
+            System.err.println(ex);
+        } catch (IllegalStateException ex) {
+            System.err.println(ex);
+        }
+        return false;
+    }
+
     //////////////////////////////////////////////////////////////
     // LOAD PDF
     //////////////////////////////////////////////////////////////
@@ -437,12 +632,17 @@ class AlcSession implements ActionListener, AlcConstants {
             }
 
             // First make sure we are not loading the current session file
-            if (file.equals(pdfWriteFile)) {
+            if (sessionWriter != null && sessionWriter.isSessionFile(file)) {
 
                 boolean result = AlcUtil.showConfirmDialogFromBundle("loadSessionPDFDialogTitle", "loadSessionPDFDialogMessage");
 
                 if (result) {
-                    restartSession();
+                    File sessionFile = getCurrentPdfPath();
+                    finishSession();
+                    // The session parts have been joined into the session file
+                    if (!file.exists()) {
+                        file = sessionFile;
+                    }
                 } else {
                     return false;
                 }
@@ -469,7 +669,7 @@ class AlcSession implements ActionListener, AlcConstants {
             pdfReadFile = new PDFFile(buf);
             currentPdfReadPage = 1;
             maxPdfReadPage = pdfReadFile.getNumPages();
-            pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
+            pdfReadPage = AlcUnderlayCache.getPDFPage(pdfReadFile, currentPdfReadPage);
             Alchemy.canvas.redraw(true);
             return true;
 
@@ -488,7 +688,7 @@ class AlcSession implements ActionListener, AlcConstants {
             if (currentPdfReadPage + 1 <= maxPdfReadPage) {
                 currentPdfReadPage++;
                 //System.out.println(currentPdfReadPage + " " + maxPdfReadPage);
-                pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
+                pdfReadPage = AlcUnderlayCache.getPDFPage(pdfReadFile, currentPdfReadPage);
                 Alchemy.canvas.redraw(true);
             } else {
                 TOOLKIT.beep();
@@ -502,7 +702,7 @@ class AlcSession implements ActionListener, AlcConstants {
             if (currentPdfReadPage - 1 >= 1) {
                 currentPdfReadPage--;
                 //System.out.println(currentPdfReadPage + " " + maxPdfReadPage);
-                pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
+                pdfReadPage = AlcUnderlayCache.getPDFPage(pdfReadFile, currentPdfReadPage);
                 Alchemy.canvas.redraw(true);
             } else {
                 TOOLKIT.beep();
@@ -510,6 +710,27 @@ class AlcSession implements ActionListener, AlcConstants {
         }
     }
 
+    /** Get the loaded session file
+     * @return  The session PDF or null if none is loaded
+     */
+    PDFFile getReadFile() {
+        return pdfReadFile;
+    }
+
+    /** Get the number of the current page of the loaded session file
+     * @return  The page number
+     */
+    int getReadPageNumber() {
+        return currentPdfReadPage;
+    }
+
+    /** Get the number of pages in the loaded session file
+     * @return  The number of pages
+     */
+    int getReadPageCount() {
+        return maxPdfReadPage;
+    }
+
     /** Unload the session file and redraw the canvas */
     void unloadSessionFile() {
         pdfReadFile = null;
@@ -526,48 +747,50 @@ class AlcSession implements ActionListener, AlcConstants {
             if (currentPdfReadPage + 1 <= maxPdfReadPage) {
                 currentPdfReadPage++;
                 //System.out.println(currentPdfReadPage + " " + maxPdfReadPage);
-                pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
+                pdfReadPage = AlcUnderlayCache.getPDFPage(pdfReadFile, currentPdfReadPage);
                 Alchemy.canvas.redraw(true);
             } else {
                 currentPdfReadPage = 0;
-                pdfReadPage = pdfReadFile.getPage(currentPdfReadPage);
+                pdfReadPage = AlcUnderlayCache.getPDFPage(pdfReadFile, currentPdfReadPage);
                 Alchemy.canvas.redraw(true);
             }
         }
     }
 
-// Called by the timer
-    public void actionPerformed(ActionEvent e) {
-        // If the canvas has changed
-        if (Alchemy.canvas.canvasChanged()) {
+    /** Show the record indicator on the canvas for a moment */
+    private void showRecordIndicator() {
+        // Show this with a small red circle on the canvas
+        Alchemy.canvas.setRecordIndicator(true);
 
-            // If the pdfReadPage has been saved
-            if (savePage()) {
-                // Show this with a small red circle on the canvas
-                Alchemy.canvas.setRecordIndicator(true);
-
-                if (indicatorTimer == null) {
-                    indicatorTimer = new javax.swing.Timer(500, new ActionListener() {
-
-                        public void actionPerformed(ActionEvent e) {
-                            //System.out.println("indicatorTimer action called");
-                            Alchemy.canvas.setRecordIndicator(false);
-                            Alchemy.canvas.redraw();
-                            indicatorTimer.stop();
-                            indicatorTimer = null;
-                            Alchemy.canvas.resetCanvasChanged();
-                        }
-                    });
-                    indicatorTimer.start();
+        if (indicatorTimer == null) {
+            indicatorTimer = new javax.swing.Timer(500, new ActionListener() {
+
+                public void actionPerformed(ActionEvent e) {
+                    //System.out.println("indicatorTimer action called");
+                    Alchemy.canvas.setRecordIndicator(false);
+                    Alchemy.canvas.redraw();
+                    indicatorTimer.stop();
+                    indicatorTimer = null;
                 }
+            });
+            indicatorTimer.start();
+        }
+
+        Alchemy.canvas.redraw();
+    }
 
-                Alchemy.canvas.redraw();
+    // Called by the timer
+    public void actionPerformed(ActionEvent e) {
+        // If the canvas has changed
+        if (Alchemy.canvas.canvasChanged()) {
 
+            // Skip this tick if the last page is still being written
+            if (savePage(1, true)) {
                 if (Alchemy.preferences.sessionAutoClear) {
                     Alchemy.canvas.clear();
                 }
                 progressPage();
-                // This may not be needed, because of the 
+                // Changes from now on go on the next page
                 Alchemy.canvas.resetCanvasChanged();
             }
         }
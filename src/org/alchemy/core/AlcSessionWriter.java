@@ -0,0 +1,267 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.io.*;
+import java.util.ArrayList;
+import com.lowagie.text.*;
+import com.lowagie.text.pdf.*;
+import com.lowagie.text.xml.xmp.*;
+
+/**
+ * Writes the pages of a recording session into a multi-page PDF <br>
+ * A single PdfWriter stays open and each page is appended to it as it is recorded,
+ * rather than copying every page recorded so far into a new file each time.
+ * <p>
+ * A PDF can only be read once it is closed, so every {@link #CHECKPOINT_PAGES} pages
+ * the open part is closed and a new part started. If Alchemy stops unexpectedly
+ * the closed parts are readable PDF files, next to where the session file would be.
+ * {@link #finish()} joins the parts into the session file in a single pass.
+ * <p>
+ * Pages are written away from the Swing thread, so the writer only works from
+ * snapshots of the canvas and must only be used from one thread at a time.
+ */
+class AlcSessionWriter implements AlcConstants {
+
+    /** Number of pages written into each part before it is closed */
+    static final int CHECKPOINT_PAGES = 10;
+    /** The session file, created when the writer is finished */
+    private final File file;
+    /** Name of the session file without the extension, used to name the parts */
+    private final String baseName;
+    /** The parts written so far, the last one may still be open */
+    private final ArrayList<File> parts = new ArrayList<File>();
+    /** The document of the open part, null when no part is open */
+    private com.lowagie.text.Document document;
+    /** Writer for the open part */
+    private PdfWriter writer;
+    /** Number of pages in the open part */
+    private int partPages = 0;
+
+    /**
+     * Create a writer, nothing is written until the first page is added
+     * @param file  The session file
+     */
+    AlcSessionWriter(File file) {
+        this.file = file;
+        String name = file.getName();
+        if (name.toLowerCase().endsWith(".pdf")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        baseName = name;
+    }
+
+    /**
+     * Get the session file
+     * @return  The file the session is written to when finished
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Check if a file is the session file or one of its parts
+     * @param test  The file to check
+     * @return      True if the file belongs to this session
+     */
+    boolean isSessionFile(File test) {
+        if (test.equals(file)) {
+            return true;
+        }
+        // Check the name rather than the parts, which are changed by the writing thread
+        String name = test.getName();
+        return name.startsWith(baseName + "-") && name.substring(baseName.length() + 1).matches("\\d+\\.pdf") &&
+                test.equals(new File(file.getParentFile(), name));
+    }
+
+    //////////////////////////////////////////////////////////////
+    // PAGES
+    //////////////////////////////////////////////////////////////
+    /**
+     * Add a snapshot of the canvas as a new page
+     * @param snapshot  The canvas to record
+     * @return          True if the page was written, otherwise false
+     */
+    boolean addPage(AlcCanvasSnapshot snapshot) {
+        java.awt.Rectangle bounds = snapshot.getBounds();
+        com.lowagie.text.Rectangle pageSize = new com.lowagie.text.Rectangle(bounds.width, bounds.height);
+        try {
+            if (document == null) {
+                openPart(pageSize);
+            } else {
+                // Each page takes the size of the canvas when it was recorded
+                document.setPageSize(pageSize);
+                document.newPage();
+            }
+
+            // To avoid transparent colurs being converted from RGB>CMYK>RGB
+            // We have to add everything to a transparency group
+            PdfTransparencyGroup transGroup = new PdfTransparencyGroup();
+            transGroup.put(PdfName.CS, PdfName.DEVICERGB);
+            writer.setGroup(transGroup);
+
+            PdfContentByte cb = writer.getDirectContent();
+            // Make sure the color space is Device RGB
+            cb.setDefaultColorspace(PdfName.CS, PdfName.DEVICERGB);
+            PdfTemplate tp = cb.createTemplate(bounds.width, bounds.height);
+
+            // Draw into the template and add it to the PDF
+            snapshot.paint(tp.createGraphics(bounds.width, bounds.height));
+            cb.addTemplate(tp, 0, 0);
+
+            partPages++;
+            if (partPages >= CHECKPOINT_PAGES) {
+                closePart();
+            } else {
+                // Push the finished pages out to the file
+                writer.flush();
+            }
+            return true;
+
+        } catch (DocumentException ex) {
+            System.err.println(ex);
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+        return false;
+    }
+
+    /** Start a new part with its first page */
+    private void openPart(com.lowagie.text.Rectangle pageSize) throws DocumentException, IOException {
+        File part = getPartFile(parts.size() + 1);
+        System.out.println("Current PDF file: " + part.getPath());
+        document = new com.lowagie.text.Document(pageSize, 0, 0, 0, 0);
+        writer = PdfWriter.getInstance(document, new FileOutputStream(part));
+        parts.add(part);
+        partPages = 0;
+
+        document.addTitle("Alchemy Session");
+        document.addAuthor(USER_NAME);
+        document.addCreator("Alchemy <http://al.chemy.org>");
+
+        // Add metadata and open the document
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        XmpWriter xmp = new XmpWriter(os);
+        PdfSchema pdf = new PdfSchema();
+        pdf.setProperty(PdfSchema.KEYWORDS, "Alchemy <http://al.chemy.org>");
+        xmp.addRdfDescription(pdf);
+        xmp.close();
+        writer.setXmpMetadata(os.toByteArray());
+
+        document.open();
+    }
+
+    /** Close the open part, leaving it a complete PDF */
+    private void closePart() {
+        if (document != null) {
+            document.close();
+            document = null;
+            writer = null;
+        }
+    }
+
+    /** Get the file for a part, named after the session file */
+    private File getPartFile(int number) {
+        return new File(file.getParentFile(), baseName + "-" + number + ".pdf");
+    }
+
+    //////////////////////////////////////////////////////////////
+    // FINISH
+    //////////////////////////////////////////////////////////////
+    /**
+     * Close the session and join its parts into the session file.
+     * If joining fails the parts are left as they are
+     * @return  True if the session file was written, otherwise false
+     */
+    boolean finish() {
+        closePart();
+        if (parts.isEmpty()) {
+            return false;
+        }
+        if (parts.size() == 1 && parts.get(0).renameTo(file)) {
+            parts.clear();
+            return true;
+        }
+        return joinParts();
+    }
+
+    /** Copy the pages of every part into the session file, then delete the parts */
+    private boolean joinParts() {
+        // Written in the temp dir then moved, so a failure leaves the parts alone
+        File dest = new File(DIR_TEMP, "Alchemy.pdf");
+        com.lowagie.text.Document joined = null;
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(dest);
+            PdfCopy copy = null;
+            for (int i = 0; i < parts.size(); i++) {
+                PdfReader reader = new PdfReader(parts.get(i).getPath());
+                if (copy == null) {
+                    joined = new com.lowagie.text.Document(reader.getPageSizeWithRotation(1), 0, 0, 0, 0);
+                    copy = new PdfCopy(joined, output);
+                    // Copy the meta data
+                    joined.addTitle("Alchemy Session");
+                    joined.addAuthor(USER_NAME);
+                    joined.addCreator("Alchemy <http://al.chemy.org>");
+                    copy.setXmpMetadata(reader.getMetadata());
+                    joined.open();
+                }
+                for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                    copy.addPage(copy.getImportedPage(reader, page));
+                }
+                copy.freeReader(reader);
+                reader.close();
+            }
+            joined.close();
+            joined = null;
+
+            if (file.exists()) {
+                file.delete();
+            }
+            // The temp dir may be on another disk, so copy if it can not be moved
+            if (!dest.renameTo(file)) {
+                AlcUtil.copyFile(new FileInputStream(dest), file);
+                dest.delete();
+            }
+            for (int i = 0; i < parts.size(); i++) {
+                parts.get(i).delete();
+            }
+            parts.clear();
+            return true;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (joined != null && joined.isOpen()) {
+                joined.close();
+            }
+            return false;
+
+        } finally {
+            // Closing the document closes the stream, but not if it was never opened
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
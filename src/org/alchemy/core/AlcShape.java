@@ -26,7 +26,7 @@ import java.util.ArrayList;
 
 /**
  * A shape class used by Alchemy<br>
- * The main shape is stored as a {@link GeneralPath} object
+ * The main shape is stored as an {@link AlcGeometry} object
  * with other variables defining the color, style, alpha etc...
  */
 public class AlcShape implements AlcConstants, Cloneable, Serializable {
@@ -34,8 +34,8 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     //////////////////////////////////////////////////////////////
     // SHAPE ATTRIBUTES
     //////////////////////////////////////////////////////////////
-    /** The main path stored as a GeneralPath */
-    GeneralPath path;
+    /** The main path stored as float coordinates */
+    AlcGeometry path;
     /** Color of this shape */
     Color color;
     /** Alpha of this shape */
@@ -49,19 +49,45 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     /** Line smoothing global setting */
     private static boolean lineSmoothing = true;
     /** The last point */
-    private Point2D.Float lastPoint;
+    private float lastX,  lastY;
+    /** If a last point has been set */
+    private boolean hasLastPoint = false;
     /** If the path has been closed or not */
     private boolean pathClosed = false;
     /** If this shape has been created with pen strokes or not */
     private boolean penShape = false;
     /** Keep track of the number of points added */
     private int totalPoints = 0;
-    /** For shapes drawn as a line with a variable width, this is the spine of the shape */
-    private ArrayList<Point2D.Float> spine;
-    /** For shapes drawn as a line with a variable width, this is the width of the shape */
-    private ArrayList<Float> spineWidth;
+    /** For shapes drawn as a line with a variable width, this is the spine of the shape as x,y pairs */
+    private float[] spine;
+    /** For shapes drawn as a line with a variable width, this is the width of the shape at each spine point */
+    private float[] spineWidth;
+    /** Number of spine points */
+    private int spineSize = 0;
+    /** The spine arrays are shared with a saved state, so are copied before they are changed */
+    private boolean spineShared = false;
+    /** The outer side of the outline of the spine, built up as points are added */
+    private transient OutlineSide outerOutline;
+    /** The inner side of the outline of the spine, built up from the start of the spine */
+    private transient OutlineSide innerOutline;
+    /** The outline sides have changed since they were last joined into the path */
+    private transient boolean outlineStale = false;
+    /** Transform from move, scale and rotate calls not yet applied to the path, null if there is none */
+    private AffineTransform pendingTransform;
+    /** Shape drawing the path with the pending transform applied, used for painting */
+    private transient Shape paintShape;
     /** Utility variable used for storing the sort index of an array of AlcShapes */
     private int sortIndex = 0;
+    /** Cached bounds of the path, null when the path has changed */
+    private transient Rectangle boundsCache;
+    /** The path the bounds were cached for */
+    private transient AlcGeometry boundsPath;
+    /** Cached flattened path used for hit testing, null when the path has changed */
+    private transient AlcFlatPath flatCache;
+    /** The path the flattened path was cached for */
+    private transient AlcGeometry flatPath;
+    /** The committed shape list indexing this shape, told when the bounds change */
+    transient AlcShapeList shapeList;
     //////////////////////////////////////////////////////////////
     // SHAPE PREFERENCES
     //////////////////////////////////////////////////////////////
@@ -71,6 +97,8 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     private final int minDistance = 5;
     /** Minimum distance until spine points are added */
     private final int minDistanceSpine = 3;
+    /** Number of spine points a new spine has room for, it grows as required */
+    private static final int SPINE_CAPACITY = 16;
 
     //////////////////////////////////////////////////////////////
     // CONSTRUCTORS
@@ -124,7 +152,17 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      */
     public AlcShape() {
         // Create an empty shape
-        path = new GeneralPath(GeneralPath.WIND_NON_ZERO, 1000);
+        path = new AlcGeometry(AlcGeometry.DEFAULT_CAPACITY);
+        setup();
+    }
+
+    /**
+     * Creates a new instance of AlcShape with the default values
+     * @param geometry  The geometry, used directly rather than copied
+     */
+    public AlcShape(AlcGeometry geometry) {
+        this.path = geometry;
+        recalculateTotalPoints();
         setup();
     }
 
@@ -150,6 +188,20 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
         setup(color, alpha, style, lineWidth);
     }
 
+    /**
+     * Creates a new instance of AlcShape with defined values
+     * @param geometry  The geometry, used directly rather than copied
+     * @param color     Color of the shape
+     * @param alpha     Alpha value of the shape
+     * @param style     Style of the shape - (1) LINE or (2) SOLID FILL 
+     * @param lineWidth Line width of the shape
+     */
+    public AlcShape(AlcGeometry geometry, Color color, int alpha, int style, float lineWidth) {
+        this.path = geometry;
+        recalculateTotalPoints();
+        setup(color, alpha, style, lineWidth);
+    }
+
     //////////////////////////////////////////////////////////////
     // SHAPE INITILISATION
     //////////////////////////////////////////////////////////////
@@ -159,16 +211,15 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
 
     private void setup(Point2D.Float p) {
         // Create the path and move to the first point
-        path = new GeneralPath(GeneralPath.WIND_NON_ZERO, 1000);
+        path = new AlcGeometry(AlcGeometry.DEFAULT_CAPACITY);
         path.moveTo(p.x, p.y);
         totalPoints++;
-        savePoints(p);
+        savePoints(p.x, p.y);
     }
 
     private void setup(GeneralPath path) {
-        // Add the path
-        this.path = path;
-        path.setWindingRule(GeneralPath.WIND_NON_ZERO);
+        // Copy the path
+        this.path = new AlcGeometry(path);
         recalculateTotalPoints();
     }
 
@@ -218,42 +269,44 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p Point to curve to
      */
     public void curveTo(Point2D.Float p) {
+        curveTo(p.x, p.y);
+    }
+
+    /** 
+     * Add a curve point to the shape 
+     * @param x     x coordinate of the point to curve to
+     * @param y     y coordinate of the point to curve to
+     */
+    private void curveTo(float x, float y) {
         if (lineSmoothing) {
 
             // Filter out repeats
-            if (!p.equals(lastPoint)) {
+            if (!isLastPoint(x, y)) {
 
                 // At the start just draw lines so smaller marks can be made
                 if (totalPoints < startPoints) {
 
-                    path.lineTo(p.x, p.y);
-                    savePoints(p);
+                    geometry().lineTo(x, y);
+                    savePoints(x, y);
 
                 } else {
 
                     // Movement since the last point was drawn
-                    double movement = p.distance(lastPoint);
-                    //System.out.println(p.x + " " + lastPt.x);
+                    double movement = Point2D.distance(x, y, lastX, lastY);
 
                     // Test to see if this point has moved far enough
                     if (movement > minDistance) {
 
-                        // New control point value
-                        Point2D.Float pt = new Point2D.Float();
-
-                        // Average the points
-                        pt.x = (lastPoint.x + p.x) / 2F;
-                        pt.y = (lastPoint.y + p.y) / 2F;
-
                         // Add the Quadratic curve - control point x1, y1 and actual point x2, y2
-                        path.quadTo(lastPoint.x, lastPoint.y, pt.x, pt.y);
-                        savePoints(p);
+                        // The end point is the average of the last and the new point
+                        geometry().quadTo(lastX, lastY, (lastX + x) / 2F, (lastY + y) / 2F);
+                        savePoints(x, y);
 
                     }
                 }
             }
         } else {
-            lineTo(p);
+            lineTo(x, y);
         }
     }
 
@@ -270,28 +323,52 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p Point to draw a line to
      */
     public void lineTo(Point2D.Float p) {
+        lineTo(p.x, p.y);
+    }
+
+    /**
+     * Add a straight line point to the shape
+     * @param x     x coordinate of the point to draw a line to
+     * @param y     y coordinate of the point to draw a line to
+     */
+    private void lineTo(float x, float y) {
         // Filter out repeats
-        if (!p.equals(lastPoint)) {
+        if (!isLastPoint(x, y)) {
             // At the start just draw lines so smaller marks can be made
             if (totalPoints < startPoints) {
 
-                path.lineTo(p.x, p.y);
-                savePoints(p);
+                geometry().lineTo(x, y);
+                savePoints(x, y);
 
             } else {
 
                 // Movement since the last point was drawn
-                double movement = p.distance(lastPoint);
+                double movement = Point2D.distance(x, y, lastX, lastY);
 
                 // Test to see if this point has moved far enough
                 if (movement > minDistance) {
-                    path.lineTo(p.x, p.y);
-                    savePoints(p);
+                    geometry().lineTo(x, y);
+                    savePoints(x, y);
                 }
             }
         }
     }
 
+    /**
+     * Add a quadratic curve to the shape without any smoothing or filtering
+     * @param control   The control point
+     * @param p         The end point
+     */
+    public void quadTo(Point2D.Float control, Point2D.Float p) {
+        geometry().quadTo(control.x, control.y, p.x, p.y);
+        savePoints(p.x, p.y);
+    }
+
+    /** Check if the given point is the same as the last point */
+    private boolean isLastPoint(float x, float y) {
+        return hasLastPoint && x == lastX && y == lastY;
+    }
+
     /** 
      * Add a spine point for variable width lines
      * @param p     The point to add
@@ -300,57 +377,231 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     public void spineTo(Point2D.Float p, float width) {
         this.penShape = true;
         if (spine == null) {
-            spine = new ArrayList<Point2D.Float>(1000);
-        }
-        if (spineWidth == null) {
-            spineWidth = new ArrayList<Float>(1000);
+            spine = new float[SPINE_CAPACITY * 2];
+            spineWidth = new float[SPINE_CAPACITY];
+            spineSize = 0;
+            spineShared = false;
         }
 
         // Check that the pen location has changed
         if (Alchemy.canvas.isPenLocationChanged()) {
             // If this is the first point then add it
-            if (spine.size() == 0) {
-                spine.add(p);
-                spineWidth.add(width);
+            if (spineSize == 0) {
+                addSpinePoint(p.x, p.y, width);
 
             // If this is the second point onwards
             // Then check there has been enough movement    
             } else {
-                Point2D.Float lastPt = spine.get(spine.size() - 1);
-                double distance = p.distance(lastPt);
+                double distance = Point2D.distance(p.x, p.y, spine[spineSize * 2 - 2], spine[spineSize * 2 - 1]);
                 if (distance > minDistanceSpine) {
-                    spine.add(p);
-                    spineWidth.add(width);
-                    createSpine();
+                    addSpinePoint(p.x, p.y, width);
+                    // Only the new part of the outline needs adding
+                    if (outerOutline == null) {
+                        createSpine();
+                    } else {
+                        extendOutline(spineSize - 1);
+                        outlineStale = true;
+                        // The outline is built from the spine, which is never transformed
+                        pendingTransform = null;
+                    }
                 }
             }
         }
     }
 
+    /** Add a point to the end of the spine, growing the arrays as required */
+    private void addSpinePoint(float x, float y, float width) {
+        if (spineSize == spineWidth.length) {
+            int capacity = spineWidth.length + (spineWidth.length >> 1) + 1;
+            float[] grownSpine = new float[capacity * 2];
+            float[] grownWidth = new float[capacity];
+            System.arraycopy(spine, 0, grownSpine, 0, spineSize * 2);
+            System.arraycopy(spineWidth, 0, grownWidth, 0, spineSize);
+            spine = grownSpine;
+            spineWidth = grownWidth;
+            spineShared = false;
+        } else {
+            unshareSpine();
+        }
+        spine[spineSize * 2] = x;
+        spine[spineSize * 2 + 1] = y;
+        spineWidth[spineSize] = width;
+        spineSize++;
+    }
+
+    /** Copy the spine arrays if they are shared with a saved state, before changing them */
+    private void unshareSpine() {
+        if (spineShared) {
+            spine = spine.clone();
+            spineWidth = spineWidth.clone();
+            spineShared = false;
+        }
+    }
+
     /** Create the spine - redraws the variable width line based on the spine points */
     public void createSpine() {
-        if (spine.size() > 0) {
-            // Reset the shape and create the first point
-            setPoint(spine.get(0));
-            // Draw the outer points
-            for (int i = 1; i < spine.size(); i++) {
-                Point2D.Float p2 = spine.get(i - 1);
-                Point2D.Float p1 = spine.get(i);
-                float level = (spineWidth.get(i)).floatValue();
-                Point2D.Float pOut = rightAngle(p1, p2, level);
-                curveTo(pOut);
+        if (spineSize > 0) {
+            // Start both sides of the outline at the first point
+            outerOutline = new OutlineSide(spine[0], spine[1], spineSize);
+            innerOutline = new OutlineSide(spine[0], spine[1], spineSize);
+            for (int i = 1; i < spineSize; i++) {
+                extendOutline(i);
+            }
+            outlineStale = true;
+            pendingTransform = null;
+        }
+    }
+
+    /** Add the outline points for a spine point to both sides of the outline
+     * @param i     Index of the spine point, from 1 onwards
+     */
+    private void extendOutline(int i) {
+        float x0 = spine[i * 2 - 2];
+        float y0 = spine[i * 2 - 1];
+        float x1 = spine[i * 2];
+        float y1 = spine[i * 2 + 1];
+        float width = spineWidth[i];
+        // Calculate the angle at a right angle to the spine
+        double angle = Math.atan2(y1 - y0, x1 - x0) - MATH_HALF_PI;
+        float dx = (float) (width * Math.cos(angle));
+        float dy = (float) (width * Math.sin(angle));
+        // Outer point to one side of the new point,
+        // inner point to the other side of the previous point
+        outlineTo(outerOutline, x1 + dx, y1 + dy);
+        outlineTo(innerOutline, x0 - dx, y0 - dy);
+    }
+
+    /** Add a point to one side of the outline, with the same smoothing as {@link #curveTo(Point2D.Float)}
+     * @param side  The side of the outline
+     * @param x     x coordinate of the point
+     * @param y     y coordinate of the point
+     */
+    private void outlineTo(OutlineSide side, float x, float y) {
+        // Filter out repeats
+        if (x == side.lastX && y == side.lastY) {
+            return;
+        }
+        // At the start just draw lines so smaller marks can be made
+        if (side.points < startPoints) {
+            side.geometry.lineTo(x, y);
+        } else {
+            // Test to see if this point has moved far enough
+            if (Point2D.distance(x, y, side.lastX, side.lastY) <= minDistance) {
+                return;
+            }
+            if (lineSmoothing) {
+                side.geometry.quadTo(side.lastX, side.lastY, (side.lastX + x) / 2F, (side.lastY + y) / 2F);
+            } else {
+                side.geometry.lineTo(x, y);
+            }
+        }
+        side.lastX = x;
+        side.lastY = y;
+        side.points++;
+    }
+
+    /** Get the path with any pending transform applied to it
+     * @return  The up to date path
+     */
+    private AlcGeometry geometry() {
+        outline();
+        if (pendingTransform != null) {
+            // Copied first if the path is shared with clones
+            path.transform(pendingTransform);
+            invalidateBounds();
+            pendingTransform = null;
+        }
+        return path;
+    }
+
+    /** Get the path without the pending transform,
+     *  first joining the two sides of a spine outline if they have changed
+     * @return  The path
+     */
+    private AlcGeometry outline() {
+        if (outlineStale) {
+            outlineStale = false;
+            AlcGeometry outer = outerOutline.geometry;
+            AlcGeometry inner = innerOutline.geometry;
+            AlcGeometry outline = new AlcGeometry(outer.getSegmentCount() + inner.getSegmentCount() + 1);
+            // Along the outer side, back along the inner side, then close
+            outline.append(outer);
+            outline.appendReverse(inner);
+            outline.closePath();
+            path = outline;
+            pathClosed = true;
+            totalPoints = outerOutline.points + innerOutline.points;
+            lastX = innerOutline.lastX;
+            lastY = innerOutline.lastY;
+            hasLastPoint = true;
+        }
+        return path;
+    }
+
+    /** The path drawn through the pending transform, without copying it */
+    private class PaintShape implements Shape {
+
+        public Rectangle getBounds() {
+            return getCachedBounds().getBounds();
+        }
+
+        public Rectangle2D getBounds2D() {
+            return path.getBounds2D(pendingTransform);
+        }
+
+        public boolean contains(double x, double y) {
+            return Path2D.contains(getPathIterator(null), x, y);
+        }
+
+        public boolean contains(Point2D p) {
+            return Path2D.contains(getPathIterator(null), p);
+        }
+
+        public boolean intersects(double x, double y, double w, double h) {
+            return Path2D.intersects(getPathIterator(null), x, y, w, h);
+        }
+
+        public boolean intersects(Rectangle2D r) {
+            return Path2D.intersects(getPathIterator(null), r);
+        }
+
+        public boolean contains(double x, double y, double w, double h) {
+            return Path2D.contains(getPathIterator(null), x, y, w, h);
+        }
+
+        public boolean contains(Rectangle2D r) {
+            return Path2D.contains(getPathIterator(null), r);
+        }
+
+        public PathIterator getPathIterator(AffineTransform at) {
+            if (pendingTransform == null) {
+                return path.getPathIterator(at);
             }
-            // Draw the inner points
-            for (int j = 1; j < spine.size(); j++) {
-                int index = (spine.size() - j);
-                Point2D.Float p2 = spine.get(index);
-                Point2D.Float p1 = spine.get(index - 1);
-                float level = (spineWidth.get(index)).floatValue();
-                Point2D.Float pIn = rightAngle(p1, p2, level);
-                curveTo(pIn);
+            if (at == null) {
+                return path.getPathIterator(pendingTransform);
             }
-            // Close the shape
-            closePath();
+            AffineTransform transform = new AffineTransform(pendingTransform);
+            transform.preConcatenate(at);
+            return path.getPathIterator(transform);
+        }
+
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return new FlatteningPathIterator(getPathIterator(at), flatness);
+        }
+    }
+
+    /** One side of the outline of a variable width line */
+    private static class OutlineSide {
+
+        final AlcGeometry geometry;
+        float lastX,  lastY;
+        int points = 1;
+
+        OutlineSide(float x, float y, int capacity) {
+            geometry = new AlcGeometry(capacity);
+            geometry.moveTo(x, y);
+            lastX = x;
+            lastY = y;
         }
     }
 
@@ -360,19 +611,24 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param connect   Connect the two paths together or not
      */
     public void append(GeneralPath newPath, boolean connect) {
-        this.path.append(newPath, connect);
+        geometry().append(newPath.getPathIterator(null), connect);
+        invalidateBounds();
     }
 
     /** 
      * Save the points to keep track of the total number of points
      * along with setting the last point
-     * @param p     Point to be saved
+     * @param x     x coordinate of the point to be saved
+     * @param y     y coordinate of the point to be saved
      */
-    private void savePoints(Point2D.Float p) {
+    private void savePoints(float x, float y) {
         // Increment the total number of points
         totalPoints++;
+        invalidateBounds();
         // Set the current point to the (original) last point value - not the altered pt value
-        lastPoint = new Point2D.Float(p.x, p.y);
+        lastX = x;
+        lastY = y;
+        hasLastPoint = true;
         penShape = true;
     }
 
@@ -380,22 +636,25 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p Point to draw a line to
      */
     public void moveTo(Point p) {
-        path.moveTo(p.x, p.y);
+        geometry().moveTo(p.x, p.y);
+        invalidateBounds();
     }
 
     /** Move to the given Point
      * @param p Point to draw a line to
      */
     public void moveTo(Point2D.Float p) {
-        path.moveTo(p.x, p.y);
+        geometry().moveTo(p.x, p.y);
+        invalidateBounds();
     }
 
     /**
      *  Closes the current subpath by drawing a straight line back to the coordinates of the last moveTo
      */
     public void closePath() {
-        path.closePath();
+        geometry().closePath();
         pathClosed = true;
+        invalidateBounds();
     }
 
     //////////////////////////////////////////////////////////////
@@ -407,9 +666,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param y     y distance
      */
     public void move(double x, double y) {
-        AffineTransform move = AffineTransform.getTranslateInstance(x, y);
-        GeneralPath transformedPath = (GeneralPath) path.createTransformedShape(move);
-        this.path = transformedPath;
+        addTransform(AffineTransform.getTranslateInstance(x, y));
     }
 
     /** Scale the shape by a certain factor
@@ -418,9 +675,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param sy    Y scale factor
      */
     public void scale(double sx, double sy) {
-        AffineTransform scale = AffineTransform.getScaleInstance(sx, sy);
-        GeneralPath transformedPath = (GeneralPath) path.createTransformedShape(scale);
-        this.path = transformedPath;
+        addTransform(AffineTransform.getScaleInstance(sx, sy));
     }
 
     /** Rotate the shape using the shapes centre as the anchor point
@@ -428,7 +683,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param theta     The angle of rotation in radians
      */
     public void rotate(double theta) {
-        Rectangle bounds = this.path.getBounds();
+        Rectangle bounds = getCachedBounds();
         int x = bounds.x + bounds.width / 2;
         int y = bounds.y + bounds.height / 2;
         rotate(theta, x, y);
@@ -441,20 +696,214 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param y         The coordinates of the y anchor point
      */
     public void rotate(double theta, double x, double y) {
-        AffineTransform rotate = AffineTransform.getRotateInstance(theta, x, y);
-        GeneralPath transformedPath = (GeneralPath) path.createTransformedShape(rotate);
-        this.path = transformedPath;
+        addTransform(AffineTransform.getRotateInstance(theta, x, y));
+    }
+
+    /** Add a transform after any already pending.
+     *  The path is only transformed when its points are next needed,
+     *  so a series of transforms costs a single copy of the path
+     * @param transform     The transform to add
+     */
+    private void addTransform(AffineTransform transform) {
+        if (pendingTransform == null) {
+            pendingTransform = transform;
+        } else {
+            pendingTransform.preConcatenate(transform);
+        }
+        invalidateBounds();
+    }
+
+    /** Replace the path with a simplified version, once the shape is committed
+     * @param simplifier    The simplifier to use
+     * @return              True if the path was simplified
+     */
+    boolean simplify(AlcPathSimplifier simplifier) {
+        AlcGeometry simplified = simplifier.simplify(geometry());
+        if (simplified == null) {
+            return false;
+        }
+        path = simplified;
+        recalculateTotalPoints();
+        invalidateBounds();
+        return true;
+    }
+
+    /** Give another shape this path and pending transform, sharing the path
+     * @param target    The shape to share the path with
+     */
+    void sharePath(AlcShape target) {
+        target.path = outline().share();
+        target.outlineStale = false;
+        target.pendingTransform = pendingTransform == null ? null : new AffineTransform(pendingTransform);
+        target.invalidateBounds();
+    }
+
+    /** Get the state of this shape, so that changes to it can be undone.
+     *  The path and spine are shared, so this costs no copying until the shape changes them
+     * @return  The state
+     */
+    State getState() {
+        return new State(this);
+    }
+
+    /** Put this shape back to an earlier state
+     * @param state     The state to restore, with no path to keep the current path
+     */
+    void setState(State state) {
+        if (state.path != null) {
+            path = state.path.share();
+            outlineStale = false;
+        }
+        pendingTransform = state.pendingTransform == null ? null : new AffineTransform(state.pendingTransform);
+        // Shared until either side changes them
+        spine = state.spine;
+        spineWidth = state.spineWidth;
+        spineSize = state.spineSize;
+        spineShared = spine != null;
+        color = state.color;
+        alpha = state.alpha;
+        style = state.style;
+        lineWidth = state.lineWidth;
+        gradientPaint = state.gradientPaint;
+        totalPoints = state.totalPoints;
+        pathClosed = state.pathClosed;
+        invalidateBounds();
+    }
+
+    /** A saved state of a shape, see {@link #getState()} */
+    static class State {
+
+        /** The shared path, set to null once replaced by a difference */
+        AlcGeometry path;
+        final AffineTransform pendingTransform;
+        final float[] spine,  spineWidth;
+        final int spineSize;
+        final Color color;
+        final int alpha,  style;
+        final float lineWidth;
+        final GradientPaint gradientPaint;
+        final int totalPoints;
+        final boolean pathClosed;
+
+        private State(AlcShape shape) {
+            path = shape.outline().share();
+            pendingTransform = shape.pendingTransform == null ? null : new AffineTransform(shape.pendingTransform);
+            // The spine is shared like the path, the shape copies it before changing it
+            spine = shape.spine;
+            spineWidth = shape.spineWidth;
+            spineSize = shape.spineSize;
+            shape.spineShared = spine != null;
+            color = shape.color;
+            alpha = shape.alpha;
+            style = shape.style;
+            lineWidth = shape.lineWidth;
+            gradientPaint = shape.gradientPaint;
+            totalPoints = shape.totalPoints;
+            pathClosed = shape.pathClosed;
+        }
+
+        /** Create a state from its parts, as read back from a document */
+        State(AlcGeometry path, AffineTransform pendingTransform, float[] spine, float[] spineWidth, int spineSize,
+                Color color, int alpha, int style, float lineWidth, GradientPaint gradientPaint, int totalPoints,
+                boolean pathClosed) {
+            this.path = path;
+            this.pendingTransform = pendingTransform;
+            this.spine = spine;
+            this.spineWidth = spineWidth;
+            this.spineSize = spineSize;
+            this.color = color;
+            this.alpha = alpha;
+            this.style = style;
+            this.lineWidth = lineWidth;
+            this.gradientPaint = gradientPaint;
+            this.totalPoints = totalPoints;
+            this.pathClosed = pathClosed;
+        }
+
+        /** Estimate the memory used by this state, in bytes */
+        long getSize() {
+            long size = 64;
+            if (path != null) {
+                size += path.getCoordCount() * 4 + path.getSegmentCount();
+            }
+            if (spine != null) {
+                size += (spine.length + spineWidth.length) * 4;
+            }
+            return size;
+        }
+    }
+
+    /** Get the path without any pending transform applied, without copying
+     * @return  The path
+     */
+    AlcGeometry getUntransformedGeometry() {
+        return outline();
+    }
+
+    /** Get the transform not yet applied to the path, do not change it
+     * @return  The pending transform or null if there is none
+     */
+    AffineTransform getPendingTransform() {
+        return pendingTransform;
+    }
+
+    /** Get a copy of the path as it is painted, for drawing away from the Swing thread. <br>
+     *  Without a pending transform the path is shared rather than copied
+     * @return  The path with any pending transform applied
+     */
+    AlcGeometry sharePaintGeometry() {
+        AlcGeometry geometry = outline();
+        if (pendingTransform == null) {
+            return geometry.share();
+        }
+        return geometry.createTransformedGeometry(pendingTransform);
+    }
+
+    /** Get the shape to paint. <br>
+     *  Unlike {@link #getGeometry()} this does not apply a pending transform to the path,
+     *  the transform is applied as the shape is drawn
+     * @return  The shape to paint, only valid until the shape is next changed
+     */
+    Shape getPaintShape() {
+        AlcGeometry geometry = outline();
+        if (pendingTransform == null) {
+            return geometry;
+        }
+        if (paintShape == null) {
+            paintShape = new PaintShape();
+        }
+        return paintShape;
+    }
+
+    /** Change the points of the path in place, without allocating
+     * @param mapper    Called with the points of each segment in turn
+     */
+    public void mapPoints(AlcGeometry.PointMapper mapper) {
+        geometry().mapPoints(mapper);
+        invalidateBounds();
+    }
+
+    /** Change the points of the spine in place, without allocating.
+     *  Call {@link #createSpine()} afterwards to rebuild the outline from the spine
+     * @param mapper    Called once with all of the spine points, as a line segment
+     */
+    public void mapSpine(AlcGeometry.PointMapper mapper) {
+        if (spineSize > 0) {
+            unshareSpine();
+            mapper.mapPoints(PathIterator.SEG_LINETO, spine, 0, spineSize);
+        }
     }
 
     //////////////////////////////////////////////////////////////
     // ALCSHAPE GETTERS/SETTERS
     //////////////////////////////////////////////////////////////
     /** 
-     * Return the GeneralPath path
+     * Return a copy of the path as a GeneralPath.
+     * Changes to the returned path do not change this shape, use {@link #setPath(GeneralPath)} to apply them
      * @return GeneralPath path
      */
     public GeneralPath getPath() {
-        return path;
+        return geometry().toGeneralPath();
     }
 
     /**
@@ -462,7 +911,61 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param path
      */
     public void setPath(GeneralPath path) {
-        this.path = path;
+        this.path = new AlcGeometry(path);
+        outlineStale = false;
+        pendingTransform = null;
+        invalidateBounds();
+    }
+
+    /**
+     * Set the path to a transformed version of the path of another shape.
+     * The path is shared until either shape changes it, so this costs no copying
+     * @param source        The shape with the path to use
+     * @param transform     The transform to apply to the path, or null for none
+     */
+    public void setPath(AlcShape source, AffineTransform transform) {
+        this.path = source.geometry().share();
+        outlineStale = false;
+        pendingTransform = transform == null ? null : new AffineTransform(transform);
+        invalidateBounds();
+    }
+
+    /** 
+     * Return the geometry of this shape without copying.
+     * Call {@link #invalidateBounds()} after changing the geometry directly
+     * @return The geometry
+     */
+    public AlcGeometry getGeometry() {
+        return geometry();
+    }
+
+    /**
+     * Check if a point is inside this shape
+     * @param p     The point
+     * @return      True if the point is inside the shape
+     */
+    public boolean contains(Point2D p) {
+        // Tested through any pending transform, to avoid applying it just for this
+        return getCachedBounds().contains(p) && getFlatPath().contains(p.getX(), p.getY());
+    }
+
+    /**
+     * Get the point on the outline of this shape closest to a point.
+     * Curves are flattened, so the result is one of the points of the flattened outline
+     * @param p     The point
+     * @return      The closest point, or null if the shape has no points
+     */
+    public Point2D.Float getNearestPoint(Point2D p) {
+        return getFlatPath().getNearestVertex(p.getX(), p.getY());
+    }
+
+    /**
+     * Get the distance from a point to the outline of this shape
+     * @param p     The point
+     * @return      The distance, or Double.MAX_VALUE if the shape has no points
+     */
+    public double getOutlineDistance(Point2D p) {
+        return getFlatPath().getOutlineDistance(p.getX(), p.getY());
     }
 
     /**
@@ -478,8 +981,17 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param p
      */
     public void setPoint(Point2D.Float p) {
-        path = new GeneralPath(GeneralPath.WIND_NON_ZERO, 1000);
-        path.moveTo(p.x, p.y);
+        setPoint(p.x, p.y, AlcGeometry.DEFAULT_CAPACITY);
+    }
+
+    /** Reset the shape with a single point
+     * @param capacity  The number of segments expected in the new path
+     */
+    private void setPoint(float x, float y, int capacity) {
+        outlineStale = false;
+        pendingTransform = null;
+        path = new AlcGeometry(capacity);
+        path.moveTo(x, y);
         totalPoints = 1;
     }
 
@@ -505,13 +1017,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * Useful when shapes have been merged together
      */
     public void recalculateTotalPoints() {
-        PathIterator count = path.getPathIterator(null);
-        int numberOfPoints = 0;
-        while (!count.isDone()) {
-            numberOfPoints++;
-            count.next();
-        }
-        this.totalPoints = numberOfPoints;
+        this.totalPoints = geometry().getSegmentCount();
     }
 
     /** 
@@ -519,7 +1025,7 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @return The last point
      */
     public Point2D.Float getLastPoint() {
-        return lastPoint;
+        return hasLastPoint ? new Point2D.Float(lastX, lastY) : null;
     }
 
     /** 
@@ -528,7 +1034,11 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param lastPt   The last point
      */
     public void setLastPoint(Point2D.Float lastPt) {
-        this.lastPoint = lastPt;
+        hasLastPoint = (lastPt != null);
+        if (hasLastPoint) {
+            lastX = lastPt.x;
+            lastY = lastPt.y;
+        }
     }
 
     /**
@@ -653,7 +1163,85 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @return Rectangle representing the shapes bounds
      */
     public Rectangle getBounds() {
-        return this.path.getBounds();
+        return new Rectangle(getCachedBounds());
+    }
+
+    /** 
+     * Get the cached bounds of the path, recalculating them if the path has changed
+     * @return The shared bounds rectangle - must not be modified
+     */
+    private Rectangle getCachedBounds() {
+        outline();
+        if (boundsCache == null || boundsPath != path) {
+            boundsCache = path.getBounds2D(pendingTransform).getBounds();
+            boundsPath = path;
+        }
+        return boundsCache;
+    }
+
+    /** 
+     * Get the cached flattened path, flattening it again if the path has changed
+     * @return The flattened path with any pending transform applied
+     */
+    private AlcFlatPath getFlatPath() {
+        outline();
+        if (flatCache == null || flatPath != path) {
+            flatCache = new AlcFlatPath(path, pendingTransform);
+            flatPath = path;
+        }
+        return flatCache;
+    }
+
+    /** 
+     * Discard the cached bounds and flattened path of this shape.
+     * The AlcShape methods do this automatically, only call this after
+     * changing the GeneralPath returned by {@link #getPath()} directly
+     */
+    public void invalidateBounds() {
+        boundsCache = null;
+        flatCache = null;
+        if (shapeList != null) {
+            shapeList.shapeChanged(this);
+        }
+    }
+
+    /** 
+     * Get the margin added around the path when it is painted
+     * @return The margin in pixels
+     */
+    private int getPaintMargin() {
+        int margin = 2;
+        if (style == STYLE_STROKE) {
+            margin += (int) Math.ceil(lineWidth / 2);
+        }
+        return margin;
+    }
+
+    /** 
+     * Check if any part of this shape is painted within the given area.
+     * Used to skip shapes outside of the visible area without allocating
+     * @param area  The area to test, in the same coordinates as the shape
+     * @return      True if the painted shape may touch the area
+     */
+    public boolean intersectsPaintBounds(Rectangle area) {
+        Rectangle bounds = getCachedBounds();
+        int margin = getPaintMargin();
+        return bounds.x - margin < area.x + area.width &&
+                bounds.y - margin < area.y + area.height &&
+                bounds.x + bounds.width + margin > area.x &&
+                bounds.y + bounds.height + margin > area.y;
+    }
+
+    /** 
+     * Get the area of the canvas covered when this shape is drawn.
+     * Unlike {@link #getBounds()} this includes the line width and a margin for antialiasing
+     * @return Rectangle representing the painted area of the shape
+     */
+    public Rectangle getPaintBounds() {
+        Rectangle bounds = new Rectangle(getCachedBounds());
+        int margin = getPaintMargin();
+        bounds.grow(margin, margin);
+        return bounds;
     }
 
     /**
@@ -689,11 +1277,19 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     }
 
     /** 
-     * Get the spine (used for variable width lines) of this shape
+     * Get a copy of the spine (used for variable width lines) of this shape.
+     * Use {@link #setSpinePoint(int, float, float)} to change the spine in place
      * @return  An arraylist containing the spine
      */
     public ArrayList<Point2D.Float> getSpine() {
-        return spine;
+        if (spine == null) {
+            return null;
+        }
+        ArrayList<Point2D.Float> list = new ArrayList<Point2D.Float>(spineSize);
+        for (int i = 0; i < spineSize; i++) {
+            list.add(new Point2D.Float(spine[i * 2], spine[i * 2 + 1]));
+        }
+        return list;
     }
 
     /** 
@@ -701,23 +1297,126 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @param spine  An arraylist containing the new spine
      */
     public void setSpine(ArrayList<Point2D.Float> spine) {
-        this.spine = spine;
+        if (spine == null) {
+            this.spine = null;
+            this.spineWidth = null;
+            this.spineSize = 0;
+            this.spineShared = false;
+            return;
+        }
+        int size = spine.size();
+        float[] newSpine = new float[Math.max(1, size) * 2];
+        for (int i = 0; i < size; i++) {
+            Point2D.Float p = spine.get(i);
+            newSpine[i * 2] = p.x;
+            newSpine[i * 2 + 1] = p.y;
+        }
+        // Keep any widths already set
+        float[] newWidth = new float[Math.max(1, size)];
+        if (this.spineWidth != null) {
+            System.arraycopy(this.spineWidth, 0, newWidth, 0, Math.min(size, this.spineSize));
+        }
+        this.spine = newSpine;
+        this.spineWidth = newWidth;
+        this.spineSize = size;
+        this.spineShared = false;
     }
 
     /** 
-     * Get the spine width (used for variable width lines) of this shape
+     * Get a copy of the spine width (used for variable width lines) of this shape
      * @return  An arraylist containing the spine width
      */
     public ArrayList<Float> getSpineWidth() {
-        return spineWidth;
+        if (spine == null) {
+            return null;
+        }
+        ArrayList<Float> list = new ArrayList<Float>(spineSize);
+        for (int i = 0; i < spineSize; i++) {
+            list.add(spineWidth[i]);
+        }
+        return list;
     }
 
     /** 
-     * Set the spine width (used for variable width lines) of this shape
+     * Set the spine width (used for variable width lines) of this shape.
+     * The spine should be set first
      * @param spineWidth  An arraylist containing the new spine width
      */
     public void setSpineWidth(ArrayList<Float> spineWidth) {
-        this.spineWidth = spineWidth;
+        if (spine == null || spineWidth == null) {
+            return;
+        }
+        unshareSpine();
+        for (int i = 0; i < Math.min(spineSize, spineWidth.size()); i++) {
+            this.spineWidth[i] = spineWidth.get(i).floatValue();
+        }
+    }
+
+    /** 
+     * Get the number of points in the spine
+     * @return  The number of spine points
+     */
+    public int getSpineSize() {
+        return spineSize;
+    }
+
+    /** 
+     * Get the x coordinate of a spine point
+     * @param index     Index of the spine point
+     * @return          The x coordinate
+     */
+    public float getSpineX(int index) {
+        return spine[index * 2];
+    }
+
+    /** 
+     * Get the y coordinate of a spine point
+     * @param index     Index of the spine point
+     * @return          The y coordinate
+     */
+    public float getSpineY(int index) {
+        return spine[index * 2 + 1];
+    }
+
+    /** 
+     * Get the width of the spine at a spine point
+     * @param index     Index of the spine point
+     * @return          The width
+     */
+    public float getSpineWidth(int index) {
+        return spineWidth[index];
+    }
+
+    /** 
+     * Move a spine point, call {@link #createSpine()} afterwards to update the shape
+     * @param index     Index of the spine point
+     * @param x         The new x coordinate
+     * @param y         The new y coordinate
+     */
+    public void setSpinePoint(int index, float x, float y) {
+        unshareSpine();
+        spine[index * 2] = x;
+        spine[index * 2 + 1] = y;
+    }
+
+    /** 
+     * Release any unused room in the geometry and spine.
+     * Called when the shape is committed and will not grow any further
+     */
+    public void trimToSize() {
+        geometry().trimToSize();
+        // The outline is rebuilt from the spine if it is ever needed again
+        outerOutline = null;
+        innerOutline = null;
+        if (spine != null && spineWidth.length > spineSize) {
+            float[] trimmedSpine = new float[Math.max(1, spineSize) * 2];
+            float[] trimmedWidth = new float[Math.max(1, spineSize)];
+            System.arraycopy(spine, 0, trimmedSpine, 0, spineSize * 2);
+            System.arraycopy(spineWidth, 0, trimmedWidth, 0, spineSize);
+            spine = trimmedSpine;
+            spineWidth = trimmedWidth;
+            spineShared = false;
+        }
     }
 
     /**
@@ -725,28 +1424,15 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
      * @return  ArrayList<Point2D.Float> containing x,y points
      */
     public ArrayList<Point2D.Float> getPoints() {
-        PathIterator pathIterator = path.getPathIterator(null);
-        float[] points = new float[6];
-        int allocate = (totalPoints > 0) ? totalPoints : 1000;
-        ArrayList<Point2D.Float> list = new ArrayList<Point2D.Float>(allocate);
-
-        while (!pathIterator.isDone()) {
-
-            switch (pathIterator.currentSegment(points)) {
-                case PathIterator.SEG_MOVETO:
-                    list.add(new Point2D.Float(points[0], points[1]));
-                    break;
-                case PathIterator.SEG_LINETO:
-                    list.add(new Point2D.Float(points[0], points[1]));
-                    break;
-                case PathIterator.SEG_QUADTO:
-                    list.add(new Point2D.Float(points[2], points[3]));
-                    break;
-                case PathIterator.SEG_CUBICTO:
-                    list.add(new Point2D.Float(points[4], points[5]));
-                    break;
+        AlcGeometry geometry = geometry();
+        ArrayList<Point2D.Float> list = new ArrayList<Point2D.Float>(geometry.getSegmentCount());
+        AlcGeometry.Cursor cursor = geometry.cursor();
+        while (cursor.next()) {
+            // Use the end point of each segment
+            int points = cursor.getPointCount();
+            if (points > 0) {
+                list.add(new Point2D.Float(cursor.getX(points - 1), cursor.getY(points - 1)));
             }
-            pathIterator.next();
         }
         return list;
     }
@@ -786,13 +1472,17 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     // CLONE STUFF
     //////////////////////////////////////////////////////////////
     /**
-     * 'Deep' Clone this object using the existing style/color etc.. values
+     * Clone this object using the existing style/color etc.. values.
+     * The path is shared and only copied when one of the shapes changes it
      * @return An new cloned object of this shape
      */
     @Override
     public Object clone() {
-        //Deep copy
-        AlcShape tempShape = new AlcShape(this.path, this.color, this.alpha, this.style, this.lineWidth);
+        AlcShape tempShape = new AlcShape(outline().share(), this.color, this.alpha, this.style, this.lineWidth);
+        // Share the path and carry over the transform still to be applied
+        if (pendingTransform != null) {
+            tempShape.pendingTransform = new AffineTransform(pendingTransform);
+        }
         cloneAttributes(tempShape);
         return tempShape;
     }
@@ -812,6 +1502,22 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
         return tempShape;
     }
 
+    /**
+     * Clone the shape with a transformed version of its path,
+     * while keeping all of the style infomation.
+     * The path is shared rather than copied, the transform is applied as the shape is drawn.
+     * Note that this function does not clone the spine.
+     *
+     * @param transform The transform to apply to the path
+     * @return          The cloned shape
+     */
+    public AlcShape customClone(AffineTransform transform) {
+        AlcShape tempShape = new AlcShape();
+        tempShape.setPath(this, transform);
+        cloneAttributes(tempShape);
+        return tempShape;
+    }
+
     /** 
      * A custom clone that adds a new spine (variable width line) to the shape the creates the path 
      * while keeping all of the style infomation.
@@ -831,17 +1537,17 @@ public class AlcShape implements AlcConstants, Cloneable, Serializable {
     }
 
     /** Clone other attributes of this shape */
-    private void cloneAttributes(AlcShape tempShape) {
+    void cloneAttributes(AlcShape tempShape) {
         tempShape.setAlpha(this.alpha);
         tempShape.setStyle(this.style);
         tempShape.setLineWidth(this.lineWidth);
         tempShape.setTotalPoints(this.totalPoints);
-        tempShape.setLastPoint(this.lastPoint);
+        tempShape.lastX = this.lastX;
+        tempShape.lastY = this.lastY;
+        tempShape.hasLastPoint = this.hasLastPoint;
         tempShape.setPathClosed(this.pathClosed);
         tempShape.setPenShape(this.penShape);
-        if (this.gradientPaint != null) {
-            GradientPaint gp = new GradientPaint(this.gradientPaint.getPoint1(), this.gradientPaint.getColor1(), this.gradientPaint.getPoint2(), this.gradientPaint.getColor2());
-            tempShape.setGradientPaint(gp);
-        }
+        // GradientPaint can not be changed so it is shared
+        tempShape.setGradientPaint(this.gradientPaint);
     }
 }
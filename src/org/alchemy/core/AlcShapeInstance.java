@@ -0,0 +1,118 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+
+/**
+ * A placement of the path of another shape <br>
+ * The instance shares the path of its source shape and places it with its own transform,
+ * color and alpha, so many stamps of the same shape cost no more than one path.
+ * As an {@link AlcShape} it is drawn, exported and hit tested like any other shape.
+ * Instances placed with the same scale and rotation are drawn on screen from a single cached sprite.
+ * <p>
+ * The transform methods {@link #move(double, double)}, {@link #scale(double, double)}
+ * and {@link #rotate(double)} add to the transform of the instance.
+ * Asking for the path or changing it gives the instance its own copy.
+ */
+public class AlcShapeInstance extends AlcShape {
+
+    /** The shape this is an instance of */
+    private final AlcShape source;
+
+    /**
+     * Creates an instance in the same place and with the same style as the source shape
+     * @param source    The shape to make an instance of
+     */
+    public AlcShapeInstance(AlcShape source) {
+        this(source, null);
+    }
+
+    /**
+     * Creates an instance with the same style as the source shape
+     * @param source    The shape to make an instance of
+     * @param transform The transform placing the instance, or null to place it over the source
+     */
+    public AlcShapeInstance(AlcShape source, AffineTransform transform) {
+        this.source = source;
+        setPath(source, transform);
+        source.cloneAttributes(this);
+        setAlphaColor(source.getColor());
+    }
+
+    /**
+     * Creates an instance with the same style as the source shape and a color of its own
+     * @param source    The shape to make an instance of
+     * @param transform The transform placing the instance, or null to place it over the source
+     * @param color     Color of the instance
+     * @param alpha     Alpha value of the instance
+     */
+    public AlcShapeInstance(AlcShape source, AffineTransform transform, Color color, int alpha) {
+        this(source, transform);
+        setAlpha(alpha);
+        setColor(color);
+    }
+
+    /**
+     * Get the shape this is an instance of
+     * @return  The source shape
+     */
+    public AlcShape getSource() {
+        return source;
+    }
+
+    /**
+     * Get the transform placing this instance
+     * @return  A copy of the transform, the identity if the instance has not been placed
+     */
+    public AffineTransform getInstanceTransform() {
+        AffineTransform transform = getPendingTransform();
+        return transform == null ? new AffineTransform() : new AffineTransform(transform);
+    }
+
+    /**
+     * The path belongs to the source shape and is left as it is,
+     * so committing an instance keeps it shared
+     */
+    @Override
+    public void trimToSize() {
+    }
+
+    /** The path belongs to the source shape so is not simplified */
+    @Override
+    boolean simplify(AlcPathSimplifier simplifier) {
+        return false;
+    }
+
+    /**
+     * Clone this instance, the clone is an instance of the same source
+     * @return  A new instance with the same placement and style
+     */
+    @Override
+    public Object clone() {
+        AlcShapeInstance tempShape = new AlcShapeInstance(source);
+        // Keep the path actually drawn, it may have been changed since
+        sharePath(tempShape);
+        cloneAttributes(tempShape);
+        tempShape.setAlphaColor(getColor());
+        return tempShape;
+    }
+}
@@ -0,0 +1,525 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.RandomAccess;
+
+/**
+ * The list of committed shapes, with a grid index of where each shape is <br>
+ * The shapes are kept in a ring, so shapes are added to and removed from either end
+ * without moving the others. Removing the oldest shapes costs the same however many there are.
+ * Modules change {@link AlcCanvas#shapes} directly, so the list keeps the index up to date
+ * as shapes are added and removed. Shapes tell the list when their bounds change and
+ * are placed in the grid again the next time it is asked.
+ * Finding the shapes under a point only looks at the shapes in the grid cell of the point
+ * rather than every shape on the canvas.
+ * Must only be used from the Swing thread.
+ */
+class AlcShapeList extends AbstractList<AlcShape> implements RandomAccess {
+
+    /** The shapes in a ring, the length is always a power of two */
+    private AlcShape[] elements;
+    /** Position in the ring of the bottom shape */
+    private int head = 0;
+    /** Number of shapes */
+    private int size = 0;
+    /** Records the shapes added and removed, null if there is no undo */
+    AlcUndoLog undoLog;
+    /** Records the shapes added and removed to survive a crash, null until the journal is started */
+    AlcJournal journal;
+    /** Width and height of a grid cell in pixels */
+    private static final int CELL_SIZE = 128;
+    /** The shapes in each grid cell, keyed by the column and row of the cell */
+    private HashMap<Long, ArrayList<Entry>> cells;
+    /** The entry of each shape in the list */
+    private IdentityHashMap<AlcShape, Entry> entries;
+    /** Entries whose shapes have changed since they were placed in the grid */
+    private ArrayList<Entry> stale;
+    /** Order given to the lowest and highest shapes, used to find the top shape */
+    private long bottom,  top;
+    /** Sorts entries from the bottom shape to the top */
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+
+        public int compare(Entry a, Entry b) {
+            return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+        }
+    };
+
+    AlcShapeList(int initialCapacity) {
+        int capacity = 16;
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+        elements = new AlcShape[capacity];
+    }
+
+    //////////////////////////////////////////////////////////////
+    // QUERIES
+    //////////////////////////////////////////////////////////////
+    /**
+     * Get the top shape containing a point
+     * @param p     The point
+     * @return      The shape, or null if there is no shape at the point
+     */
+    AlcShape getShapeAt(Point2D p) {
+        ArrayList<Entry> cell = getIndex().get(key(cell(p.getX()), cell(p.getY())));
+        if (cell == null) {
+            return null;
+        }
+        Entry found = null;
+        for (int i = 0; i < cell.size(); i++) {
+            Entry entry = cell.get(i);
+            if ((found == null || entry.order > found.order) && entry.shape.contains(p)) {
+                found = entry;
+            }
+        }
+        return found == null ? null : found.shape;
+    }
+
+    /**
+     * Get the shapes with bounds that intersect an area
+     * @param area  The area
+     * @return      The shapes, from the bottom to the top
+     */
+    ArrayList<AlcShape> getShapesIn(Rectangle area) {
+        HashMap<Long, ArrayList<Entry>> index = getIndex();
+        ArrayList<Entry> found = new ArrayList<Entry>();
+        IdentityHashMap<Entry, Entry> seen = new IdentityHashMap<Entry, Entry>();
+        int firstColumn = cell(area.x);
+        int lastColumn = cell(area.x + area.width);
+        int firstRow = cell(area.y);
+        int lastRow = cell(area.y + area.height);
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                ArrayList<Entry> cell = index.get(key(column, row));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    Entry entry = cell.get(i);
+                    if (seen.put(entry, entry) == null && entry.shape.getBounds().intersects(area)) {
+                        found.add(entry);
+                    }
+                }
+            }
+        }
+        Collections.sort(found, ORDER);
+        ArrayList<AlcShape> shapes = new ArrayList<AlcShape>(found.size());
+        for (int i = 0; i < found.size(); i++) {
+            shapes.add(found.get(i).shape);
+        }
+        return shapes;
+    }
+
+    /** Called by a shape in the list when its bounds change */
+    void shapeChanged(AlcShape shape) {
+        if (entries == null) {
+            return;
+        }
+        Entry entry = entries.get(shape);
+        if (entry != null && !entry.stale) {
+            entry.stale = true;
+            stale.add(entry);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // INDEX
+    //////////////////////////////////////////////////////////////
+    /** Get the grid with every shape in its current place, building it the first time */
+    private HashMap<Long, ArrayList<Entry>> getIndex() {
+        if (cells == null) {
+            rebuild();
+        }
+        for (int i = 0; i < stale.size(); i++) {
+            Entry entry = stale.get(i);
+            if (entries.get(entry.shape) == entry) {
+                unplace(entry);
+                place(entry);
+            }
+            entry.stale = false;
+        }
+        stale.clear();
+        return cells;
+    }
+
+    /** Index every shape again, in the order of the list */
+    private void rebuild() {
+        if (entries != null) {
+            for (AlcShape shape : entries.keySet()) {
+                shape.shapeList = null;
+            }
+        }
+        cells = new HashMap<Long, ArrayList<Entry>>();
+        entries = new IdentityHashMap<AlcShape, Entry>();
+        stale = new ArrayList<Entry>();
+        bottom = 0;
+        top = -1;
+        for (int i = 0; i < size(); i++) {
+            index(get(i), ++top);
+        }
+    }
+
+    /** Drop the index, it is built again when next needed */
+    private void invalidate() {
+        if (entries != null) {
+            for (AlcShape shape : entries.keySet()) {
+                shape.shapeList = null;
+            }
+        }
+        cells = null;
+        entries = null;
+        stale = null;
+    }
+
+    /** Add a shape to the index */
+    private void index(AlcShape shape, long order) {
+        Entry entry = entries.get(shape);
+        if (entry != null) {
+            // A shape in the list twice is indexed once, with its top place
+            entry.count++;
+            entry.order = Math.max(entry.order, order);
+            return;
+        }
+        entry = new Entry(shape, order);
+        entries.put(shape, entry);
+        shape.shapeList = this;
+        place(entry);
+    }
+
+    /** Remove a shape from the index once it is no longer in the list */
+    private void unindex(AlcShape shape) {
+        Entry entry = entries.get(shape);
+        if (entry == null) {
+            return;
+        }
+        if (--entry.count == 0) {
+            entries.remove(shape);
+            unplace(entry);
+            shape.shapeList = null;
+        } else {
+            // Still in the list, the top place may have been the one removed
+            invalidate();
+        }
+    }
+
+    /** Add an entry to the cells covering its shape */
+    private void place(Entry entry) {
+        Rectangle bounds = entry.shape.getBounds();
+        entry.firstColumn = cell(bounds.x);
+        entry.lastColumn = cell(bounds.x + bounds.width);
+        entry.firstRow = cell(bounds.y);
+        entry.lastRow = cell(bounds.y + bounds.height);
+        entry.slots = new int[(entry.lastColumn - entry.firstColumn + 1) * (entry.lastRow - entry.firstRow + 1)];
+        for (int column = entry.firstColumn; column <= entry.lastColumn; column++) {
+            for (int row = entry.firstRow; row <= entry.lastRow; row++) {
+                Long key = key(column, row);
+                ArrayList<Entry> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Entry>(4);
+                    cells.put(key, cell);
+                }
+                entry.slots[entry.slot(column, row)] = cell.size();
+                cell.add(entry);
+            }
+        }
+    }
+
+    /** Remove an entry from the cells it was placed in */
+    private void unplace(Entry entry) {
+        for (int column = entry.firstColumn; column <= entry.lastColumn; column++) {
+            for (int row = entry.firstRow; row <= entry.lastRow; row++) {
+                Long key = key(column, row);
+                ArrayList<Entry> cell = cells.get(key);
+                if (cell != null) {
+                    // Move the last entry into the gap, the order within a cell does not matter
+                    int slot = entry.slots[entry.slot(column, row)];
+                    Entry last = cell.remove(cell.size() - 1);
+                    if (last != entry) {
+                        cell.set(slot, last);
+                        last.slots[last.slot(column, row)] = slot;
+                    }
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cell(double coord) {
+        return (int) Math.floor(coord / CELL_SIZE);
+    }
+
+    private static Long key(int column, int row) {
+        return Long.valueOf(((long) column << 32) | (row & 0xFFFFFFFFL));
+    }
+
+    /** A shape in the index and the cells it is placed in */
+    private static class Entry {
+
+        final AlcShape shape;
+        long order;
+        /** Number of times the shape is in the list */
+        int count = 1;
+        int firstColumn,  lastColumn,  firstRow,  lastRow;
+        /** Where the entry is within each of its cells, column by column */
+        int[] slots;
+        boolean stale = false;
+
+        Entry(AlcShape shape, long order) {
+            this.shape = shape;
+            this.order = order;
+        }
+
+        /** Get where a cell's position is kept in the slots */
+        int slot(int column, int row) {
+            return (column - firstColumn) * (lastRow - firstRow + 1) + row - firstRow;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // LIST
+    //////////////////////////////////////////////////////////////
+    /** Get the position of a shape in the ring */
+    private int slot(int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+    private void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /** Double the size of the ring, unrolling it to start at 0 */
+    private void grow() {
+        AlcShape[] newElements = new AlcShape[elements.length * 2];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[slot(i)];
+        }
+        elements = newElements;
+        head = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public AlcShape get(int index) {
+        checkIndex(index, size);
+        return elements[slot(index)];
+    }
+
+    @Override
+    public AlcShape set(int index, AlcShape shape) {
+        checkIndex(index, size);
+        int slot = slot(index);
+        AlcShape old = elements[slot];
+        elements[slot] = shape;
+        if (undoLog != null) {
+            undoLog.removed(old, index);
+            undoLog.inserted(shape, index);
+        }
+        if (journal != null) {
+            journal.removed(old, index);
+            journal.inserted(shape, index);
+        }
+        if (entries != null) {
+            Entry entry = entries.get(old);
+            long order = entry == null ? ++top : entry.order;
+            unindex(old);
+            if (entries != null) {
+                index(shape, order);
+            }
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, AlcShape shape) {
+        checkIndex(index, size + 1);
+        if (size == elements.length) {
+            grow();
+        }
+        if (index == 0) {
+            head = (head - 1) & (elements.length - 1);
+        } else {
+            // Move the shapes above up one
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+        elements[slot(index)] = shape;
+        size++;
+        modCount++;
+        if (undoLog != null) {
+            undoLog.inserted(shape, index);
+        }
+        if (journal != null) {
+            journal.inserted(shape, index);
+        }
+        if (entries != null) {
+            if (index == 0) {
+                index(shape, --bottom);
+            } else if (index == size - 1) {
+                index(shape, ++top);
+            } else {
+                invalidate();
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends AlcShape> c) {
+        if (index != 0) {
+            return super.addAll(index, c);
+        }
+        // Add to the bottom one at a time from the last, without moving the other shapes
+        Object[] added = c.toArray();
+        for (int i = added.length - 1; i >= 0; i--) {
+            add(0, (AlcShape) added[i]);
+        }
+        return added.length > 0;
+    }
+
+    @Override
+    public AlcShape remove(int index) {
+        checkIndex(index, size);
+        AlcShape old = elements[slot(index)];
+        if (index == 0) {
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+        } else {
+            // Move the shapes above down one
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+        size--;
+        modCount++;
+        if (undoLog != null) {
+            undoLog.removed(old, index);
+        }
+        if (journal != null) {
+            journal.removed(old, index);
+        }
+        if (entries != null) {
+            unindex(old);
+        }
+        return old;
+    }
+
+    /**
+     * Remove the oldest shapes from the bottom of the list.
+     * Each shape costs the same to remove however many shapes there are.
+     * The shapes are evicted rather than removed: undo will not bring them back,
+     * though the journal still records them so a recovered document matches
+     * @param count     The number of shapes to remove
+     */
+    void removeOldest(int count) {
+        count = Math.min(count, size);
+        removeShapes(0, count, false);
+        if (undoLog != null && count > 0) {
+            undoLog.evicted(count);
+        }
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        removeShapes(fromIndex, toIndex, true);
+    }
+
+    /** Remove a range of shapes
+     * @param fromIndex The first shape to remove
+     * @param toIndex   The shape after the last to remove
+     * @param undoable  True to record the removal for undo
+     */
+    private void removeShapes(int fromIndex, int toIndex, boolean undoable) {
+        int count = toIndex - fromIndex;
+        if (count <= 0) {
+            return;
+        }
+        AlcShape[] removed = new AlcShape[count];
+        for (int i = 0; i < count; i++) {
+            removed[i] = elements[slot(fromIndex + i)];
+        }
+        if (fromIndex == 0) {
+            // Just move the start of the ring past the removed shapes
+            for (int i = 0; i < count; i++) {
+                elements[slot(i)] = null;
+            }
+            head = slot(count);
+        } else {
+            for (int i = fromIndex; i < size - count; i++) {
+                elements[slot(i)] = elements[slot(i + count)];
+            }
+            for (int i = size - count; i < size; i++) {
+                elements[slot(i)] = null;
+            }
+        }
+        size -= count;
+        modCount++;
+        if (undoLog != null && undoable) {
+            // As if removed one at a time from the bottom of the range
+            for (int i = 0; i < count; i++) {
+                undoLog.removed(removed[i], fromIndex);
+            }
+        }
+        if (journal != null) {
+            for (int i = 0; i < count; i++) {
+                journal.removed(removed[i], fromIndex);
+            }
+        }
+        for (int i = 0; i < count && entries != null; i++) {
+            unindex(removed[i]);
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (undoLog != null) {
+            for (int i = 0; i < size; i++) {
+                undoLog.removed(elements[slot(i)], 0);
+            }
+        }
+        if (journal != null) {
+            journal.cleared();
+        }
+        invalidate();
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+}
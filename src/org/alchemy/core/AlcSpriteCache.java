@@ -0,0 +1,207 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of rasterized {@link AlcShapeInstance} shapes <br>
+ * Instances placed with the same scale and rotation differ only in where they are drawn,
+ * so the shape is rasterized once into a sprite and the sprite is drawn for each instance.
+ * Sprites are matched on the shared geometry, the scale and rotation, and the style,
+ * the least recently used is dropped first.
+ * A sprite is only made the second time it is asked for, so one-off placements stay as vectors.
+ * Used for the screen only, exports always draw the shapes as vectors.
+ * Safe to use from the Swing thread and the canvas renderer thread.
+ */
+class AlcSpriteCache implements AlcConstants {
+
+    /** Maximum number of sprites kept */
+    private static final int MAX_SPRITES = 64;
+    /** Shapes larger than this many pixels across are drawn as vectors */
+    private static final int MAX_SPRITE_SIZE = 256;
+    /** Stands in for the sprite of a shape too large to rasterize */
+    private static final Sprite TOO_LARGE = new Sprite(null, 0, 0);
+    /** The cached sprites in order of use, null for placements seen only once */
+    private final LinkedHashMap<Key, Sprite> sprites = new LinkedHashMap<Key, Sprite>(MAX_SPRITES + 1, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Sprite> eldest) {
+            return size() > MAX_SPRITES;
+        }
+    };
+
+    /** Draw a shape as a sprite if it is an instance that can be drawn that way
+     * @param g2        Graphics with the document to view transform applied
+     * @param shape     The shape to draw
+     * @return          True if the shape was drawn, false if it must be drawn as a vector
+     */
+    boolean draw(Graphics2D g2, AlcShape shape) {
+        if (!(shape instanceof AlcShapeInstance)) {
+            return false;
+        }
+        Paint paint = shape.getPaint();
+        if (!(paint instanceof Color)) {
+            return false;
+        }
+        return draw(g2, shape.getUntransformedGeometry(), shape.getPendingTransform(), (Color) paint, shape.style, shape.lineWidth);
+    }
+
+    /** Draw a geometry as a sprite
+     * @param g2            Graphics with the document to view transform applied
+     * @param geometry      The untransformed geometry
+     * @param transform     The transform of the instance, or null for none
+     * @param color         Color of the shape
+     * @param style         Style of the shape
+     * @param lineWidth     Line width of the shape
+     * @return              True if the shape was drawn, false if it must be drawn as a vector
+     */
+    boolean draw(Graphics2D g2, AlcGeometry geometry, AffineTransform transform, Color color, int style, float lineWidth) {
+        AffineTransform view = g2.getTransform();
+        AffineTransform full = new AffineTransform(view);
+        if (transform != null) {
+            full.concatenate(transform);
+        }
+        boolean smoothing = g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON;
+        Key key = new Key(geometry, full, color, style, lineWidth, smoothing);
+        Sprite sprite;
+        synchronized (sprites) {
+            sprite = sprites.get(key);
+            if (sprite == null && !sprites.containsKey(key)) {
+                // Wait until the placement is used again
+                sprites.put(key, null);
+                return false;
+            }
+        }
+        if (sprite == null) {
+            sprite = render(geometry, key);
+            synchronized (sprites) {
+                sprites.put(key, sprite);
+            }
+        }
+        if (sprite == TOO_LARGE) {
+            return false;
+        }
+        // Draw the sprite in device space where the instance is placed
+        g2.setTransform(new AffineTransform());
+        g2.drawImage(sprite.image,
+                (int) Math.round(full.getTranslateX()) + sprite.x,
+                (int) Math.round(full.getTranslateY()) + sprite.y, null);
+        g2.setTransform(view);
+        return true;
+    }
+
+    /** Rasterize a geometry with the scale and rotation of the key
+     * @return  The sprite or TOO_LARGE if the shape is too large
+     */
+    private static Sprite render(AlcGeometry geometry, Key key) {
+        AffineTransform scale = new AffineTransform(key.m00, key.m10, key.m01, key.m11, 0, 0);
+        BasicStroke stroke = new BasicStroke(key.lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL);
+        Shape outline = key.style == STYLE_STROKE ? stroke.createStrokedShape(geometry) : geometry;
+        Rectangle bounds = scale.createTransformedShape(outline).getBounds();
+        // Leave a pixel around the edge for antialiasing
+        bounds.grow(1, 1);
+        if (bounds.width > MAX_SPRITE_SIZE || bounds.height > MAX_SPRITE_SIZE) {
+            return TOO_LARGE;
+        }
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        BufferedImage image = gc.createCompatibleImage(Math.max(1, bounds.width), Math.max(1, bounds.height), Transparency.TRANSLUCENT);
+        Graphics2D g2 = image.createGraphics();
+        if (key.smoothing) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        g2.translate(-bounds.x, -bounds.y);
+        g2.transform(scale);
+        g2.setColor(key.color);
+        if (key.style == STYLE_STROKE) {
+            g2.setStroke(stroke);
+            g2.draw(geometry);
+        } else {
+            g2.fill(geometry);
+        }
+        g2.dispose();
+        return new Sprite(image, bounds.x, bounds.y);
+    }
+
+    /** A rasterized shape and the offset of the image from the origin of the shape */
+    private static class Sprite {
+
+        final BufferedImage image;
+        final int x,  y;
+
+        Sprite(BufferedImage image, int x, int y) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /** Identifies a sprite. <br>
+     *  Shared geometries are compared by their storage,
+     *  which can only be added to so the segment counts are enough to tell them apart
+     */
+    private static class Key {
+
+        final Object storage;
+        final int segments,  coords;
+        final double m00,  m10,  m01,  m11;
+        final Color color;
+        final int style;
+        final float lineWidth;
+        final boolean smoothing;
+
+        Key(AlcGeometry geometry, AffineTransform transform, Color color, int style, float lineWidth, boolean smoothing) {
+            this.storage = geometry.getStorage();
+            this.segments = geometry.getSegmentCount();
+            this.coords = geometry.getCoordCount();
+            this.m00 = transform.getScaleX();
+            this.m10 = transform.getShearY();
+            this.m01 = transform.getShearX();
+            this.m11 = transform.getScaleY();
+            this.color = color;
+            this.style = style;
+            this.lineWidth = lineWidth;
+            this.smoothing = smoothing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return storage == other.storage && segments == other.segments && coords == other.coords &&
+                    m00 == other.m00 && m10 == other.m10 && m01 == other.m01 && m11 == other.m11 &&
+                    color.equals(other.color) && style == other.style && lineWidth == other.lineWidth &&
+                    smoothing == other.smoothing;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(m00) + 31 * Double.doubleToLongBits(m11) +
+                    961 * (Double.doubleToLongBits(m01) + 31 * Double.doubleToLongBits(m10));
+            return ((System.identityHashCode(storage) * 31 + segments) * 31 + (int) (bits ^ (bits >>> 32))) * 31 + color.hashCode();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import com.sun.pdfview.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+
+/**
+ * Cache of the session PDF pages rasterized for display as the canvas underlay <br>
+ * Pages are kept by page number and zoom scale only. The pan and flips of the view
+ * are applied as the raster is drawn, so panning or flipping the canvas never
+ * interprets the PDF again. A page too large to keep whole at the current scale
+ * is rasterized only where it is visible.
+ * The pages either side of the current page are rendered in the background
+ * so that moving through the session is instant, prefetches no longer wanted
+ * by the time they are reached are skipped.
+ * Only a few pages are kept, the least recently used is dropped first.
+ * Exports still draw the page as vectors.
+ */
+class AlcUnderlayCache implements AlcConstants {
+
+    /** Maximum number of rasterized pages kept */
+    private static final int MAX_PAGES = 5;
+    /** Largest page raster kept whole, in canvas areas */
+    private static final int MAX_CANVAS_AREAS = 4;
+    /** The cached pages, in order of use */
+    private final LinkedHashMap<Key, BufferedImage> pages = new LinkedHashMap<Key, BufferedImage>(MAX_PAGES + 1, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    /** Pages queued for the background thread */
+    private final HashSet<Key> pending = new HashSet<Key>();
+    /** Pages the last draw asked to be prefetched, shared with the background thread */
+    private final HashSet<Key> wanted = new HashSet<Key>();
+    /** The PDF the cached pages belong to */
+    private PDFFile file;
+    /** Incremented when the cache is cleared, background renders from before are dropped */
+    private int generation = 0;
+    /** Single background thread used for prefetching */
+    private ExecutorService executor;
+
+    /** Draw the underlay raster of a page, rendering it now if it is not cached.
+     *  Must be called on the Swing thread.
+     *
+     * @param g2            Graphics of the canvas, without the view transform
+     * @param pdfFile       The session PDF
+     * @param pageNumber    The number of the page
+     * @param page          The page
+     * @param pageCount     The number of pages in the PDF
+     * @param transform     The document to view transform of the canvas
+     * @param width         Width of the canvas
+     * @param height        Height of the canvas
+     */
+    void draw(Graphics2D g2, PDFFile pdfFile, int pageNumber, PDFPage page, int pageCount, AffineTransform transform, int width, int height) {
+        if (pdfFile != file) {
+            clear();
+            file = pdfFile;
+        }
+        // The view only zooms, pans and flips, so splits into a scale and a placement
+        double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+        if (scale == 0) {
+            return;
+        }
+        AffineTransform placement = new AffineTransform(transform);
+        placement.scale(1 / scale, 1 / scale);
+        // Keep the raster on whole pixels so it is drawn unfiltered
+        placement = new AffineTransform(placement.getScaleX(), placement.getShearY(), placement.getShearX(), placement.getScaleY(),
+                Math.round(placement.getTranslateX()), Math.round(placement.getTranslateY()));
+        Rectangle region = getRegion(page, scale, placement, width, height);
+        if (region.isEmpty()) {
+            return;
+        }
+
+        Key key = new Key(pageNumber, scale, region);
+        BufferedImage image = pages.get(key);
+        if (image == null) {
+            image = render(page, scale, region, Alchemy.canvas.getBackgroundColor());
+            pages.put(key, image);
+        }
+        // Get the neighbours ready, session pages share the size of the canvas so share the region
+        synchronized (wanted) {
+            wanted.clear();
+            if (pageNumber > 1) {
+                prefetch(new Key(pageNumber - 1, scale, region));
+            }
+            if (pageNumber < pageCount) {
+                prefetch(new Key(pageNumber + 1, scale, region));
+            }
+        }
+
+        AffineTransform blit = new AffineTransform(placement);
+        blit.translate(region.x, region.y);
+        g2.drawImage(image, blit, null);
+    }
+
+    /** Drop all cached pages, for example when the background color changes */
+    void clear() {
+        pages.clear();
+        pending.clear();
+        synchronized (wanted) {
+            wanted.clear();
+        }
+        generation++;
+    }
+
+    /** Get the part of a page to rasterize at a scale
+     * @return  The whole page, or only the visible part if the page is too large to keep whole
+     */
+    private static Rectangle getRegion(PDFPage page, double scale, AffineTransform placement, int width, int height) {
+        Rectangle pageArea = new Rectangle(0, 0, (int) Math.ceil(page.getWidth() * scale), (int) Math.ceil(page.getHeight() * scale));
+        if ((long) pageArea.width * pageArea.height <= (long) MAX_CANVAS_AREAS * width * height) {
+            return pageArea;
+        }
+        try {
+            Rectangle visible = placement.createInverse().createTransformedShape(new Rectangle(0, 0, width, height)).getBounds();
+            return visible.intersection(pageArea);
+        } catch (NoninvertibleTransformException ex) {
+            return pageArea;
+        }
+    }
+
+    /** Render a page in the background if it is not already cached or on the way.
+     *  Must be called holding the wanted lock */
+    private void prefetch(final Key key) {
+        wanted.add(key);
+        if (pages.containsKey(key) || pending.contains(key)) {
+            return;
+        }
+        pending.add(key);
+        final PDFFile pdfFile = file;
+        final Color bgColor = Alchemy.canvas.getBackgroundColor();
+        final int requestGeneration = generation;
+
+        getExecutor().execute(new Runnable() {
+
+            public void run() {
+                // Skip the page if the view has moved on since it was queued
+                final BufferedImage image = isWanted(key) ? render(getPDFPage(pdfFile, key.pageNumber), key.scale, key.region, bgColor) : null;
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    public void run() {
+                        // Drop the page if the cache has been cleared since
+                        if (requestGeneration == generation) {
+                            pending.remove(key);
+                            if (image != null) {
+                                pages.put(key, image);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** Check if the last draw still wants a page prefetched */
+    private boolean isWanted(Key key) {
+        synchronized (wanted) {
+            return wanted.contains(key);
+        }
+    }
+
+    /** Get the prefetch thread, creating it the first time */
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Alchemy Underlay Prefetch");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /** Get a page from a PDF. <br>
+     *  The PDF is shared with the prefetch thread, so all access goes through here.
+     *
+     * @param pdfFile       The PDF
+     * @param pageNumber    The number of the page
+     * @return              The page or null if it could not be read
+     */
+    static PDFPage getPDFPage(PDFFile pdfFile, int pageNumber) {
+        synchronized (pdfFile) {
+            return pdfFile.getPage(pageNumber);
+        }
+    }
+
+    /** Draw a page as vectors
+     * @param g2        Graphics to draw the page on
+     * @param page      The page to draw
+     * @param bgColor   Background color of the page
+     */
+    static void drawPage(Graphics2D g2, PDFPage page, Color bgColor) {
+        // Remember the old transform settings
+        AffineTransform at = g2.getTransform();
+
+        int pageWidth = (int) page.getWidth();
+        int pageHeight = (int) page.getHeight();
+        PDFRenderer renderer = new PDFRenderer(page, g2, new Rectangle(0, 0, pageWidth, pageHeight), null, bgColor);
+        try {
+            page.waitForFinish();
+            renderer.run();
+        } catch (InterruptedException ex) {
+            ex.printStackTrace();
+        }
+
+        // Revert to the old transform settings
+        g2.setTransform(at);
+    }
+
+    /** Rasterize part of a page
+     * @param page      The page
+     * @param scale     The zoom scale
+     * @param region    The part of the page to rasterize, in scaled page pixels
+     * @param bgColor   Background color of the page
+     * @return          The rasterized page, or null if there is no page
+     */
+    private static BufferedImage render(PDFPage page, double scale, Rectangle region, Color bgColor) {
+        if (page == null) {
+            return null;
+        }
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        BufferedImage image = gc.createCompatibleImage(region.width, region.height, Transparency.TRANSLUCENT);
+        Graphics2D g2 = image.createGraphics();
+        g2.translate(-region.x, -region.y);
+        g2.scale(scale, scale);
+        drawPage(g2, page, bgColor);
+        g2.dispose();
+        return image;
+    }
+
+    /** Identifies a rasterized page */
+    private static class Key {
+
+        final int pageNumber;
+        final double scale;
+        /** The part of the page rasterized, in scaled page pixels */
+        final Rectangle region;
+
+        Key(int pageNumber, double scale, Rectangle region) {
+            this.pageNumber = pageNumber;
+            this.scale = scale;
+            this.region = new Rectangle(region);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return pageNumber == other.pageNumber && Double.compare(scale, other.scale) == 0 && region.equals(other.region);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(scale);
+            return ((pageNumber * 31 + (int) (bits ^ (bits >>> 32))) * 31) + region.hashCode();
+        }
+    }
+}
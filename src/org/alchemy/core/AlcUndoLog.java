@@ -0,0 +1,463 @@
+/*
+ *  This file is part of the Alchemy project - http://al.chemy.org
+ *
+ *  Copyright (c) 2007-2010 Karl D.D. Willis
+ *
+ *  Alchemy is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Alchemy is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Alchemy.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.alchemy.core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Log of the changes made to the committed shapes, for undo and redo <br>
+ * The shape list records every shape added and removed, and shapes changed in place
+ * are recorded by {@link AlcCanvas#recordShapeChange(AlcShape)} before they are changed.
+ * Changes are collected into groups, one for each mouse press, and undone a group at a time.
+ * Changes made with the pen up, by hovering or on a timer, are grouped a frame at a time,
+ * A group is always undone whole: older groups are dropped to make room for the open group,
+ * and a group too large for the memory budget is dropped whole along with the groups before it.
+ * Changes to the points of a shape only keep the points that changed.
+ * Shapes evicted over the shape limit are not recorded and can not be brought back,
+ * the indices recorded before an eviction are moved down by the number evicted.
+ * <p>
+ * The undo depth sets how much is kept: nothing, the last group,
+ * or as many groups as fit within a memory budget, dropping the oldest first.
+ * Must only be used from the Swing thread.
+ */
+class AlcUndoLog {
+
+    /** Undo depth with undo turned off */
+    static final int DEPTH_DISABLED = 0;
+    /** Undo depth keeping only the last group */
+    static final int DEPTH_SINGLE = 1;
+    /** Estimated memory the log may use when the undo depth is unlimited, in bytes */
+    private static final long MEMORY_BUDGET = 32L * 1024 * 1024;
+    /** The shapes the log applies to */
+    private final AlcShapeList shapes;
+    /** Groups that can be undone, the most recent last */
+    private final ArrayList<Group> undoGroups = new ArrayList<Group>();
+    /** Groups that can be redone, the most recently undone last */
+    private final ArrayList<Group> redoGroups = new ArrayList<Group>();
+    /** The group changes are being recorded into, null until the first change */
+    private Group openGroup;
+    /** Estimated memory used by all of the groups, in bytes */
+    private long memory = 0;
+    /** The undo depth, from the preferences */
+    private int depth;
+    /** Changes are being undone or redone, so are not recorded */
+    private boolean applying = false;
+    /** The number of shapes evicted from the bottom of the list so far */
+    private long evictions = 0;
+
+    AlcUndoLog(AlcShapeList shapes, int depth) {
+        this.shapes = shapes;
+        this.depth = depth;
+    }
+
+    /** Set how much is kept, dropping any groups that no longer fit
+     * @param depth     0 for nothing, 1 for the last group, 2 for as many as fit in memory
+     */
+    void setDepth(int depth) {
+        this.depth = depth;
+        if (depth == DEPTH_DISABLED) {
+            clear();
+        } else {
+            trim();
+        }
+    }
+
+    /** Forget all changes */
+    void clear() {
+        undoGroups.clear();
+        redoGroups.clear();
+        openGroup = null;
+        memory = 0;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // RECORDING
+    //////////////////////////////////////////////////////////////
+    /** Start a new group, changes until the next group are undone together */
+    void startGroup() {
+        closeGroup();
+    }
+
+    /** Close the current group */
+    void finishGroup() {
+        closeGroup();
+    }
+
+    /** Check if changes have been recorded into a group that is not yet closed
+     * @return  True if there is an open group
+     */
+    boolean isGroupOpen() {
+        return openGroup != null;
+    }
+
+    /** Record a shape added to the list
+     * @param shape     The shape
+     * @param index     Where it was added
+     */
+    void inserted(AlcShape shape, int index) {
+        if (isRecording()) {
+            record(new Insert(shape, index));
+        }
+    }
+
+    /** Record a shape removed from the list
+     * @param shape     The shape
+     * @param index     Where it was removed from
+     */
+    void removed(AlcShape shape, int index) {
+        if (isRecording()) {
+            record(new Remove(shape, index));
+        }
+    }
+
+    /** Note shapes evicted from the bottom of the list over the shape limit,
+     *  which are left out of the log
+     * @param count     The number of shapes evicted
+     */
+    void evicted(int count) {
+        evictions += count;
+    }
+
+    /** Record the state of a shape about to be changed in place,
+     *  once for each group
+     * @param shape     The shape
+     */
+    void changing(AlcShape shape) {
+        if (!isRecording()) {
+            return;
+        }
+        if (openGroup != null && openGroup.touched.containsKey(shape)) {
+            return;
+        }
+        record(new Change(shape));
+    }
+
+    private boolean isRecording() {
+        return depth != DEPTH_DISABLED && !applying;
+    }
+
+    private void record(Edit edit) {
+        if (openGroup == null) {
+            openGroup = new Group();
+            // A new change means the undone groups can not be redone
+            for (int i = 0; i < redoGroups.size(); i++) {
+                memory -= redoGroups.get(i).size;
+            }
+            redoGroups.clear();
+        }
+        openGroup.edits.add(edit);
+        openGroup.touched.put(edit.shape, edit);
+        openGroup.size += edit.getOpenSize();
+        // Make room for the open group, it is never split
+        trim();
+    }
+
+    /** Close the open group, adding it to the groups to undo */
+    private void closeGroup() {
+        if (openGroup == null) {
+            return;
+        }
+        Group group = openGroup;
+        openGroup = null;
+        group.close();
+        if (depth != DEPTH_SINGLE && group.size > MEMORY_BUDGET) {
+            // Too large to keep, and the groups before it can not be undone without undoing it first
+            for (int i = 0; i < undoGroups.size(); i++) {
+                memory -= undoGroups.get(i).size;
+            }
+            undoGroups.clear();
+            return;
+        }
+        undoGroups.add(group);
+        memory += group.size;
+        trim();
+    }
+
+    /** Drop the oldest closed groups until the log, including the open group, is within the depth */
+    private void trim() {
+        long open = openGroup == null ? 0 : openGroup.size;
+        while (!undoGroups.isEmpty() && (depth == DEPTH_SINGLE && undoGroups.size() > 1 || memory + open > MEMORY_BUDGET)) {
+            memory -= undoGroups.remove(0).size;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // UNDO AND REDO
+    //////////////////////////////////////////////////////////////
+    /** Check if there is a group to undo
+     * @return  True if there is a group to undo
+     */
+    boolean canUndo() {
+        return openGroup != null || !undoGroups.isEmpty();
+    }
+
+    /** Check if there is a group to redo
+     * @return  True if there is a group to redo
+     */
+    boolean canRedo() {
+        return openGroup == null && !redoGroups.isEmpty();
+    }
+
+    /** Undo the most recent group
+     * @return  The area changed, or null if there was nothing to undo
+     */
+    Rectangle undo() {
+        closeGroup();
+        if (undoGroups.isEmpty()) {
+            return null;
+        }
+        Group group = undoGroups.remove(undoGroups.size() - 1);
+        Rectangle dirtyArea = new Rectangle();
+        applying = true;
+        try {
+            for (int i = group.edits.size() - 1; i >= 0; i--) {
+                group.edits.get(i).undo(dirtyArea);
+            }
+        } finally {
+            applying = false;
+        }
+        redoGroups.add(group);
+        return dirtyArea;
+    }
+
+    /** Redo the most recently undone group
+     * @return  The area changed, or null if there was nothing to redo
+     */
+    Rectangle redo() {
+        if (!canRedo()) {
+            return null;
+        }
+        Group group = redoGroups.remove(redoGroups.size() - 1);
+        Rectangle dirtyArea = new Rectangle();
+        applying = true;
+        try {
+            for (int i = 0; i < group.edits.size(); i++) {
+                group.edits.get(i).redo(dirtyArea);
+            }
+        } finally {
+            applying = false;
+        }
+        undoGroups.add(group);
+        return dirtyArea;
+    }
+
+    /** Add the painted area of a shape to a dirty area */
+    private static void addBounds(Rectangle dirtyArea, AlcShape shape) {
+        Rectangle bounds = shape.getPaintBounds();
+        if (dirtyArea.isEmpty()) {
+            dirtyArea.setBounds(bounds);
+        } else {
+            dirtyArea.add(bounds);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////
+    // EDITS
+    //////////////////////////////////////////////////////////////
+    /** The changes undone together */
+    private static class Group {
+
+        final ArrayList<Edit> edits = new ArrayList<Edit>();
+        /** The shapes with an edit in this group */
+        IdentityHashMap<AlcShape, Edit> touched = new IdentityHashMap<AlcShape, Edit>();
+        /** Estimated memory used, in bytes */
+        long size = 0;
+
+        /** Finish recording, keeping only what is needed to undo and redo the edits */
+        void close() {
+            touched = null;
+            size = 0;
+            for (int i = 0; i < edits.size(); i++) {
+                Edit edit = edits.get(i);
+                edit.close();
+                size += edit.getSize();
+            }
+        }
+    }
+
+    /** A single change to the shapes */
+    private abstract class Edit {
+
+        final AlcShape shape;
+        /** The evictions when the edit was recorded */
+        private final long evictionsBefore = evictions;
+
+        Edit(AlcShape shape) {
+            this.shape = shape;
+        }
+
+        /** Get where a recorded index is now, after the shapes evicted since */
+        int shift(int index) {
+            return (int) Math.max(0, index - (evictions - evictionsBefore));
+        }
+
+        abstract void undo(Rectangle dirtyArea);
+
+        abstract void redo(Rectangle dirtyArea);
+
+        void close() {
+        }
+
+        long getSize() {
+            return 32;
+        }
+
+        /** Get the estimated memory used while the group is still open */
+        long getOpenSize() {
+            return getSize();
+        }
+
+        /** Add a shape at an index, or at the top if the list has changed since */
+        void insert(int index, Rectangle dirtyArea) {
+            shapes.add(Math.min(index, shapes.size()), shape);
+            addBounds(dirtyArea, shape);
+        }
+
+        /** Remove the shape from an index, or from wherever it is if the list has changed since */
+        void remove(int index, Rectangle dirtyArea) {
+            if (index < shapes.size() && shapes.get(index) == shape) {
+                shapes.remove(index);
+            } else {
+                for (int i = shapes.size() - 1; i >= 0; i--) {
+                    if (shapes.get(i) == shape) {
+                        shapes.remove(i);
+                        break;
+                    }
+                }
+            }
+            addBounds(dirtyArea, shape);
+        }
+    }
+
+    /** A shape added to the list */
+    private class Insert extends Edit {
+
+        final int index;
+
+        Insert(AlcShape shape, int index) {
+            super(shape);
+            this.index = index;
+        }
+
+        void undo(Rectangle dirtyArea) {
+            remove(shift(index), dirtyArea);
+        }
+
+        void redo(Rectangle dirtyArea) {
+            insert(shift(index), dirtyArea);
+        }
+    }
+
+    /** A shape removed from the list */
+    private class Remove extends Edit {
+
+        final int index;
+
+        Remove(AlcShape shape, int index) {
+            super(shape);
+            this.index = index;
+        }
+
+        void undo(Rectangle dirtyArea) {
+            insert(shift(index), dirtyArea);
+        }
+
+        void redo(Rectangle dirtyArea) {
+            remove(shift(index), dirtyArea);
+        }
+
+        @Override
+        long getSize() {
+            // The log may now hold the only reference to the shape
+            AlcGeometry path = shape.getUntransformedGeometry();
+            return 32 + path.getCoordCount() * 4 + path.getSegmentCount();
+        }
+    }
+
+    /** A shape changed in place */
+    private class Change extends Edit {
+
+        final AlcShape.State before;
+        AlcShape.State after;
+        /** When only the points changed, the index of each changed coordinate */
+        int[] changed;
+        /** The changed coordinates before and after */
+        float[] oldCoords,  newCoords;
+
+        Change(AlcShape shape) {
+            super(shape);
+            before = shape.getState();
+        }
+
+        @Override
+        void close() {
+            after = shape.getState();
+            if (before.path.hasSameSegments(after.path)) {
+                // Keep only the points that moved
+                changed = after.path.getChangedCoords(before.path);
+                oldCoords = new float[changed.length];
+                newCoords = new float[changed.length];
+                for (int i = 0; i < changed.length; i++) {
+                    oldCoords[i] = before.path.getCoord(changed[i]);
+                    newCoords[i] = after.path.getCoord(changed[i]);
+                }
+                before.path = null;
+                after.path = null;
+            }
+        }
+
+        @Override
+        long getOpenSize() {
+            return 32 + before.getSize();
+        }
+
+        @Override
+        long getSize() {
+            long size = 32 + before.getSize() + after.getSize();
+            if (changed != null) {
+                size += changed.length * 12;
+            }
+            return size;
+        }
+
+        void undo(Rectangle dirtyArea) {
+            apply(before, oldCoords, dirtyArea);
+        }
+
+        void redo(Rectangle dirtyArea) {
+            apply(after, newCoords, dirtyArea);
+        }
+
+        private void apply(AlcShape.State state, float[] coords, Rectangle dirtyArea) {
+            addBounds(dirtyArea, shape);
+            if (shapes.journal != null) {
+                shapes.journal.changing(shape);
+            }
+            shape.setState(state);
+            if (changed != null) {
+                shape.getUntransformedGeometry().setCoords(changed, coords);
+                shape.invalidateBounds();
+            }
+            addBounds(dirtyArea, shape);
+        }
+    }
+}
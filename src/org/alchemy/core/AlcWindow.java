@@ -408,7 +408,6 @@ public class AlcWindow extends JFrame implements AlcConstants, WindowStateListen
                 ex.printStackTrace();
             }
             Alchemy.canvas.setTransparentImage(screenCapture);
-            Alchemy.canvas.updateCanvasImage(true);
             Alchemy.canvas.repaint();
         } catch (Exception e) {
             System.err.println("Error Entering Fullscreen");
@@ -582,6 +581,10 @@ public class AlcWindow extends JFrame implements AlcConstants, WindowStateListen
         if (Alchemy.session.isRecording()) {
             Alchemy.session.setRecording(false);
         }
+        // Finish the session file
+        Alchemy.session.finishSession();
+        // Nothing to recover once closed normally
+        Alchemy.canvas.closeJournal();
         // Save changes to the preferences
         Alchemy.preferences.writeChanges();
 
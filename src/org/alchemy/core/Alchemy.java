@@ -211,6 +211,8 @@ public class Alchemy implements AlcConstants {
         
 
         window.setVisible(true);
+        // Offer to recover the last drawing if Alchemy stopped unexpectedly
+        canvas.startJournal();
 
         
 
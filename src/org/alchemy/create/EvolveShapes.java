@@ -611,7 +611,7 @@ public class EvolveShapes extends AlcModule {
         int rand = (int) math.random(shapes.length);
 
         // Clone the shape
-        AlcShape cloneShape = (AlcShape) shapes[rand].clone();
+        AlcShape cloneShape = new AlcShapeInstance(shapes[rand]);
         // Scale it
         float scaleFactor = canvas.getPenPressure() * 2;
         if(canvas.getPenType() == PEN_CURSOR){
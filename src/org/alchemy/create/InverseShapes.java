@@ -22,8 +22,8 @@ package org.alchemy.create;
 import org.alchemy.core.AlcModule;
 import org.alchemy.core.AlcShape;
 
-import java.awt.Point;
 import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
 
 /**
  * InverseShapes.java
@@ -70,7 +70,7 @@ public class InverseShapes extends AlcModule {
     @Override
     public void mouseMoved(MouseEvent e) {
         if (mouseUp) {
-            Point p = e.getPoint();
+            Point2D.Float p = canvas.getMouseLocation();
             if (moveTo) {
                 canvas.createShapes.add(new AlcShape(p));
                 moveTo = false;
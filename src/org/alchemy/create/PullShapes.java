@@ -273,7 +273,7 @@ public class PullShapes extends AlcModule implements AlcConstants {
         if (shapeLists[folder].size() > 0) {
             AlcShape shape = (AlcShape) shapeLists[folder].get(rand);
             // Clone the shape
-            AlcShape cloneShape = (AlcShape) shape.clone();
+            AlcShape cloneShape = new AlcShapeInstance(shape);
             if (scale) {
                 // Scale it
                 float scaleFactor = math.random(0.1F, size);
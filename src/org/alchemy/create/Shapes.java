@@ -21,12 +21,12 @@ package org.alchemy.create;
 
 import org.alchemy.core.*;
 import java.awt.Color;
-import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
 
 /**
  * Shape.java
@@ -39,7 +39,7 @@ public class Shapes extends AlcModule implements AlcConstants {
     private boolean outlineMode = false;
     private AlcToolBarSubSection subToolBarSection;
     private boolean secondClick;
-    private Point lastPt;
+    private Point2D.Float lastPt;
     private int guideSize = -1;
     private GeneralPath secondPath = null;
     private Color guideColor = new Color(0, 255, 255);
@@ -112,7 +112,7 @@ public class Shapes extends AlcModule implements AlcConstants {
     @Override
     public void mousePressed(MouseEvent e) {
         if (!straightShapes) {
-            Point p = e.getPoint();
+            Point2D.Float p = canvas.getMouseLocation();
             AlcShape shape = new AlcShape(p);
             canvas.createShapes.add(shape);
             if(outlineMode && canvas.getStyle() == STYLE_FILL){
@@ -139,13 +139,14 @@ public class Shapes extends AlcModule implements AlcConstants {
         // then draw a guide line
         if (straightShapes && !firstClick && lastPt != null) {
 
-            GeneralPath line = new GeneralPath(new Line2D.Float(lastPt.x, lastPt.y, e.getX(), e.getY()));
+            Point2D.Float p = canvas.getMouseLocation();
+            GeneralPath line = new GeneralPath(new Line2D.Float(lastPt.x, lastPt.y, p.x, p.y));
             AlcShape guide = new AlcShape(line, guideColor, 100, STYLE_STROKE, 1);
 
             if (guideSize == canvas.guideShapes.size()) {
                 if (secondPath != null) {
                     // If there is a secondPath defined then append it to the new shape
-                    guide.getPath().append(secondPath, false);
+                    guide.append(secondPath, false);
                 }
                 canvas.setCurrentGuideShape(guide);
             } else if (guideSize == -1) {
@@ -165,7 +166,7 @@ public class Shapes extends AlcModule implements AlcConstants {
         if (!straightShapes) {
             
            //System.out.println(canvas.getPenType() + " " + canvas.getPenPressure());
-            Point p = e.getPoint();
+            Point2D.Float p = canvas.getMouseLocation();
             // Need to test if it is null incase the shape has been auto-cleared
             if (canvas.hasCreateShapes()) {
                 canvas.getCurrentCreateShape().curveTo(p);
@@ -180,7 +181,7 @@ public class Shapes extends AlcModule implements AlcConstants {
     @Override
     public void mouseReleased(MouseEvent e) {
         
-        Point p = e.getPoint();
+        Point2D.Float p = canvas.getMouseLocation();
         // Only if this is a single click
         if (e.getClickCount() <= 1) {
             if (straightShapes) {
@@ -106,8 +106,7 @@ public class SplatterShapes extends AlcModule {
             d = 0;
         }
         firstShape.setLineWidth(d);
-        GeneralPath path = firstShape.getPath();
-        path.quadTo(mid.x, mid.y, end.x, end.y);
+        firstShape.quadTo(mid, end);
         canvas.createShapes.add(firstShape);
 
         // splotch
@@ -144,8 +143,8 @@ public class SplatterShapes extends AlcModule {
 
     @Override
     public void mousePressed(MouseEvent e) {
-        start = new Point2D.Float(e.getX(), e.getY());
-        end = new Point2D.Float(e.getX(), e.getY());
+        start = canvas.getMouseLocation();
+        end = canvas.getMouseLocation();
     }
 
     @Override
@@ -156,7 +155,7 @@ public class SplatterShapes extends AlcModule {
                 ((end.y - start.y) * (1F + midPointPush)) + start.y);
 
         start = end;
-        end = new Point2D.Float(e.getX(), e.getY());
+        end = canvas.getMouseLocation();
 
         float distance = (float) Math.sqrt(Math.pow((end.x - start.x), 2) + Math.pow((end.y - start.y), 2));
         // Avoid INFINITY
@@ -53,6 +53,8 @@ public class TypeShapes extends AlcModule implements AlcConstants {
     private Point oldP;
     private float size = 2.5F;
     private boolean keys = false;
+    /** Reused to apply noise to the points of each letter */
+    private final Messer messer = new Messer();
 //    private AlcShape mouseShape;
     // Timing
     private long mouseDelayGap = 50;
@@ -283,7 +285,7 @@ public class TypeShapes extends AlcModule implements AlcConstants {
         // Need to find some hack to stop causing this
         // Allocating more memory using [-ms50m -mx100m] does nothing
         for (int i = 0; i < iterations; i++) {
-            GeneralPath shape = makeTypeShape(f);
+            AlcGeometry shape = makeTypeShape(f);
 
             if (!shape.intersects(union.getBounds2D())) {
 
@@ -333,15 +335,15 @@ public class TypeShapes extends AlcModule implements AlcConstants {
         return gp;
     }
 
-    private GeneralPath makeTypeShape(Font font) {
+    private AlcGeometry makeTypeShape(Font font) {
         return makeTypeShape(font, null, null);
     }
 
-    private GeneralPath makeTypeShape(Font font, String letter) {
+    private AlcGeometry makeTypeShape(Font font, String letter) {
         return makeTypeShape(font, letter, null);
     }
 
-    private GeneralPath makeTypeShape(Font font, String letter, Point location) {
+    private AlcGeometry makeTypeShape(Font font, String letter, Point location) {
         // Make a string from one random char from the letters string
         boolean auto = false;
         if (letter == null) {
@@ -372,13 +374,12 @@ public class TypeShapes extends AlcModule implements AlcConstants {
         //root.println(randomLetter + " " + numberOfSegments);
 
         //if(numberOfSegments > 1){
-        // Make a new shape
-        GeneralPath newShape = new GeneralPath();
+        // Make a new shape from the first segment of the letter
+        AlcGeometry newShape = new AlcGeometry(50);
         PathIterator cut = shp.getPathIterator(null);
         float[] cutPts = new float[6];
         int cutType;
         int segCount = 0;
-        int pointCount = 0;
 //        boolean close = true;
 
         while (!cut.isDone()) {
@@ -391,31 +392,24 @@ public class TypeShapes extends AlcModule implements AlcConstants {
 
             // Only add the first segment
             if (segCount == 1) {
-                if (pointCount < 50) {
+                if (newShape.getSegmentCount() < 50) {
                     switch (cutType) {
                         case PathIterator.SEG_MOVETO:
-                            newShape.moveTo(mess(cutPts[0]), mess(cutPts[1]));
-                            //newShape.moveTo(cutPts[0], cutPts[1]);
+                            newShape.moveTo(cutPts[0], cutPts[1]);
                             break;
                         case PathIterator.SEG_LINETO:
-                            newShape.lineTo(mess(cutPts[0]), mess(cutPts[1]));
-                            //newShape.lineTo(cutPts[0], cutPts[1]);
+                            newShape.lineTo(cutPts[0], cutPts[1]);
                             break;
                         case PathIterator.SEG_QUADTO:
-                            newShape.quadTo(mess(cutPts[0]), mess(cutPts[1]), mess(cutPts[2]), mess(cutPts[3]));
-                            //newShape.quadTo(cutPts[0], cutPts[1], cutPts[2], cutPts[3]);
+                            newShape.quadTo(cutPts[0], cutPts[1], cutPts[2], cutPts[3]);
                             break;
                         case PathIterator.SEG_CUBICTO:
-                            // Randomising the curves tends to generate errors and unresposiveness
-                            //System.out.println("CUBIC " + pointCount);
-                            //newShape.curveTo(mess(cutPts[0]), mess(cutPts[1]), mess(cutPts[2]), mess(cutPts[3]), mess(cutPts[4]), mess(cutPts[5]));
                             newShape.curveTo(cutPts[0], cutPts[1], cutPts[2], cutPts[3], cutPts[4], cutPts[5]);
                             break;
                         case PathIterator.SEG_CLOSE:
                             newShape.closePath();
                             break;
                     }
-                    pointCount++;
                 } else {
                     //System.out.println("BROKE");
                     break;
@@ -425,6 +419,8 @@ public class TypeShapes extends AlcModule implements AlcConstants {
             cut.next();
 
         }
+        // Mess up the points in place
+        newShape.mapPoints(messer);
 
         AffineTransform newTr = new AffineTransform();
         if (location == null) {
@@ -448,10 +444,25 @@ public class TypeShapes extends AlcModule implements AlcConstants {
         // i.e. TWO_PI but we want to make sure it is not in the same position
         newTr.rotate(math.random(0.3F, 6.0F));
         //Area newA = new Area(newShape);
-        return (GeneralPath) newShape.createTransformedShape(newTr);
+        newShape.transform(newTr);
+        return newShape;
 
     }
 
+    /** Applies noise to the points of a letter */
+    private class Messer implements AlcGeometry.PointMapper {
+
+        public void mapPoints(int type, float[] coords, int offset, int points) {
+            // Randomising the curves tends to generate errors and unresposiveness
+            if (type == PathIterator.SEG_CUBICTO) {
+                return;
+            }
+            for (int i = offset; i < offset + points * 2; i++) {
+                coords[i] = mess(coords[i]);
+            }
+        }
+    }
+
     private float mess(float f) {
         noiseScale += noisiness;
         float n = (math.noise(noiseScale) * doubleScale) - scale;